@@ -0,0 +1,48 @@
+package hello.jdbc.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.SchemaInitializer;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+
+/**
+ * 벤치마크용 DataSource - ConnectionConst.URL 을 사용한다
+ * build.gradle 의 jmh 설정이 -Dhello.jdbc.profile=memory 를 넘기므로 네트워크 비용 없이 메모리 DB 로 측정한다
+ * 스키마는 create 에서 SchemaInitializer 로 만든다 (벤치마크 @Setup 에서 호출된다)
+ */
+final class BenchmarkDataSources {
+
+    private BenchmarkDataSources() {
+    }
+
+    /**
+     * @param type     driverManager: 매번 새 커넥션, hikari: 커넥션 풀
+     * @param poolSize hikari 최대 풀 크기 (벤치마크 스레드 수보다 작으면 커넥션 대기 시간이 측정에 포함된다)
+     */
+    static DataSource create(String type, int poolSize) {
+        SchemaInitializer.initializeDefault();
+        return switch (type) {
+            case "driverManager" -> new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+            case "hikari" -> {
+                HikariDataSource hikari = new HikariDataSource();
+                hikari.setJdbcUrl(URL);
+                hikari.setUsername(USERNAME);
+                hikari.setPassword(PASSWORD);
+                hikari.setMaximumPoolSize(poolSize);
+                hikari.setMinimumIdle(poolSize);
+                hikari.setPoolName("BenchmarkPool");
+                yield hikari;
+            }
+            default -> throw new IllegalArgumentException("unknown dataSource type=" + type);
+        };
+    }
+
+    static void close(DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource hikari) {
+            hikari.close();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package hello.jdbc.benchmark;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+
+import javax.sql.DataSource;
+
+/**
+ * 스프링 컨테이너 없이 @Transactional 이 동작하는 서비스 프록시를 만든다
+ */
+final class BenchmarkServices {
+
+    private BenchmarkServices() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T transactional(T target, DataSource dataSource) {
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new TransactionInterceptor(new DataSourceTransactionManager(dataSource),
+                new AnnotationTransactionAttributeSource()));
+        return (T) proxyFactory.getProxy();
+    }
+}
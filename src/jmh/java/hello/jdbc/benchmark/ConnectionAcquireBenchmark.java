@@ -0,0 +1,60 @@
+package hello.jdbc.benchmark;
+
+import hello.jdbc.connection.SimpleConnectionPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+
+/**
+ * 커넥션 얻기 + select 1 + 반납 비교
+ * driverManager: 매번 새 물리 커넥션 (기존 DBConnectionUtil), simple / simpleNoAffinity: SimpleConnectionPool, hikari: HikariCP
+ * 스레드 수를 풀 크기보다 많게 하면 대기 비용도 함께 비교된다
+ *
+ * 실행: ./gradlew jmh -PjmhIncludes=ConnectionAcquireBenchmark -PjmhThreads=8
+ */
+@State(Scope.Benchmark)
+public class ConnectionAcquireBenchmark {
+
+    @Param({"driverManager", "simple", "simpleNoAffinity", "hikari"})
+    public String source;
+
+    private DataSource dataSource;
+    private SimpleConnectionPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams params) {
+        int poolSize = Math.max(10, params.getThreads());
+        switch (source) {
+            case "simple" -> pool = new SimpleConnectionPool(URL, USERNAME, PASSWORD, poolSize, true, Duration.ofSeconds(30));
+            case "simpleNoAffinity" -> pool = new SimpleConnectionPool(URL, USERNAME, PASSWORD, poolSize, false, Duration.ofSeconds(30));
+            default -> dataSource = BenchmarkDataSources.create(source, poolSize);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        } else {
+            BenchmarkDataSources.close(dataSource);
+        }
+    }
+
+    @Benchmark
+    public int selectOne() throws SQLException {
+        try (Connection con = pool != null ? pool.getConnection() : dataSource.getConnection();
+             Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("select 1")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
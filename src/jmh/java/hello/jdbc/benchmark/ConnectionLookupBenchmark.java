@@ -0,0 +1,108 @@
+package hello.jdbc.benchmark;
+
+import hello.jdbc.connection.ConnectionLookup;
+import hello.jdbc.connection.ScopedConnectionContext;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 트랜잭션 커넥션 조회 비용 비교 - ThreadLocal(TransactionSynchronizationManager) vs ScopedValue(ScopedConnectionContext)
+ *
+ * 트랜잭션 하나 = 커넥션 바인딩 + 리포지토리 호출 LOOKUPS 번의 조회/반납 + 바인딩 해제
+ * DB 는 사용하지 않는다. 물리 커넥션 하나를 미리 열어두고 바인딩만 반복해서 조회 비용만 측정한다.
+ *
+ * transaction      : 벤치마크 스레드에서 트랜잭션 하나
+ * virtualThreads   : 가상 스레드 VirtualThreads.count 개를 띄워서 각자 트랜잭션 하나 (ThreadLocalMap 생성 비용이 드러난다)
+ *
+ * 실행: ./gradlew jmh -PjmhIncludes=ConnectionLookupBenchmark
+ * gc 프로파일러의 gc.alloc.rate.norm 으로 트랜잭션당 할당량(메모리)을 비교한다
+ */
+@State(Scope.Benchmark)
+public class ConnectionLookupBenchmark {
+
+    private static final int LOOKUPS = 10;
+
+    @Param({"threadLocal", "scoped"})
+    public String lookup;
+
+    private DataSource ds;
+    private Connection con;
+    private ConnectionLookup connectionLookup;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        ds = BenchmarkDataSources.create("driverManager", 1);
+        con = ds.getConnection();
+        connectionLookup = lookup.equals("scoped") ? ConnectionLookup.SCOPED : ConnectionLookup.SYNCHRONIZATION;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        JdbcUtils.closeConnection(con);
+    }
+
+    @Benchmark
+    public void transaction(Blackhole bh) throws SQLException {
+        inTransaction(bh);
+    }
+
+    /**
+     * virtualThreads 벤치마크만 사용하는 파라메터 (transaction 벤치마크가 같은 결과를 파라메터 수만큼 반복하지 않도록 분리)
+     */
+    @State(Scope.Benchmark)
+    public static class VirtualThreads {
+        @Param({"1000", "100000"})
+        public int count;
+    }
+
+    @Benchmark
+    public void virtualThreads(VirtualThreads threads, Blackhole bh) {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < threads.count; i++) {
+                executor.execute(() -> {
+                    try {
+                        inTransaction(bh);
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 트랜잭션 매니저가 하는 바인딩/해제를 직접 재현한다 (commit, rollback 은 두 방식이 같으므로 제외)
+     */
+    private void inTransaction(Blackhole bh) throws SQLException {
+        if (connectionLookup == ConnectionLookup.SCOPED) {
+            ScopedConnectionContext.withConnection(ds, con, () -> lookups(bh));
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(ds, new ConnectionHolder(con));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            lookups(bh);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+            TransactionSynchronizationManager.unbindResource(ds);
+        }
+    }
+
+    private Void lookups(Blackhole bh) throws SQLException {
+        for (int i = 0; i < LOOKUPS; i++) {
+            Connection found = connectionLookup.getConnection(ds);
+            bh.consume(found);
+            connectionLookup.releaseConnection(found, ds);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,91 @@
+package hello.jdbc.benchmark;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.service.GroupCommitTransferService;
+import hello.jdbc.service.MemberServiceV4;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 이체 1건 = 트랜잭션 1개(direct) vs 그룹 커밋(group:maxBatch:maxWaitMicros)
+ * 처리량(thrpt)과 함께 sample 모드의 p99 로 모으는 시간 만큼 늘어난 지연시간을 비교한다
+ *
+ * 커밋 비용(로그 flush)이 있어야 차이가 드러나므로 파일 DB 로 실행한다
+ * 실행: ./gradlew jmh -PjmhIncludes=GroupCommitBenchmark -PjmhThreads=32 -PjdbcProfile=file
+ */
+@State(Scope.Benchmark)
+public class GroupCommitBenchmark {
+
+    @Param({"direct", "group:16:200", "group:64:1000"})
+    public String mode;
+
+    private DataSource dataSource;
+    private MemberRepository repository;
+    private MemberServiceV4 memberService;
+    private GroupCommitTransferService groupCommit;
+    private final AtomicInteger threadSequence = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams params) {
+        dataSource = BenchmarkDataSources.create("hikari", Math.max(10, params.getThreads()));
+        repository = new MemberRepositoryV5(dataSource);
+        memberService = BenchmarkServices.transactional(new MemberServiceV4(repository), dataSource);
+        if (mode.startsWith("group:")) {
+            String[] knobs = mode.split(":");
+            groupCommit = new GroupCommitTransferService(memberService, Integer.parseInt(knobs[1]),
+                    Duration.ofNanos(Long.parseLong(knobs[2]) * 1000));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (groupCommit != null) {
+            groupCommit.close();
+        }
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    /**
+     * 스레드마다 자신의 계좌 쌍을 사용한다 (row 락 경합 없이 커밋 비용만 비교)
+     */
+    @State(Scope.Thread)
+    public static class Accounts {
+        String fromId;
+        String toId;
+
+        @Setup(Level.Trial)
+        public void setUp(GroupCommitBenchmark benchmark) {
+            int sequence = benchmark.threadSequence.incrementAndGet();
+            fromId = "gf" + sequence;
+            toId = "gt" + sequence;
+            benchmark.repository.delete(fromId);
+            benchmark.repository.delete(toId);
+            benchmark.repository.save(new Member(fromId, Integer.MAX_VALUE / 2));
+            benchmark.repository.save(new Member(toId, 0));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown(GroupCommitBenchmark benchmark) {
+            benchmark.repository.delete(fromId);
+            benchmark.repository.delete(toId);
+        }
+    }
+
+    /**
+     * 호출자 입장의 지연시간 - 그룹 커밋은 future 가 완료될때 까지 기다린다
+     */
+    @Benchmark
+    public void accountTransfer(Accounts accounts) {
+        if (groupCommit == null) {
+            memberService.accountTransfer(accounts.fromId, accounts.toId, 1);
+        } else {
+            groupCommit.accountTransfer(accounts.fromId, accounts.toId, 1).join();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package hello.jdbc.benchmark;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberPage;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import hello.jdbc.repository.MemberRepositoryV5;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 키셋 페이지 vs OFFSET 페이지 - 1 페이지와 10,000 페이지의 지연시간 비교
+ * 키셋(findPage)은 PK 인덱스에서 시작 키를 찾으므로 페이지가 깊어도 일정하고,
+ * OFFSET 은 앞의 row 를 모두 읽고 버리므로 깊은 페이지일수록 느려진다
+ *
+ * keyset : 리포지토리(V4_2, V5)의 findPage
+ * offset : 같은 범위를 limit ? offset ? 으로 조회 (리포지토리에는 OFFSET 조회가 없으므로 JdbcTemplate 으로 실행한다)
+ *
+ * 실행: ./gradlew jmh -PjmhIncludes=MemberPageBenchmark
+ */
+@State(Scope.Benchmark)
+public class MemberPageBenchmark {
+
+    private static final int PAGE_SIZE = 10;
+    private static final int ROWS = PAGE_SIZE * 10_000;
+
+    @Param({"1", "10000"})
+    public int page;
+
+    private DataSource dataSource;
+    private JdbcTemplate template;
+    private String afterKey;
+    private int offset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDataSources.create("hikari", 10);
+        template = new JdbcTemplate(dataSource);
+        template.update("delete from member where member_id like 'pg%'");
+        List<Member> members = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            members.add(new Member(memberId(i), i));
+        }
+        new MemberRepositoryV5(dataSource).saveAll(members);
+
+        offset = PAGE_SIZE * (page - 1);
+        afterKey = page == 1 ? "pg" : memberId(offset - 1); //바로 앞 페이지의 마지막 회원
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        template.update("delete from member where member_id like 'pg%'");
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    /**
+     * keyset 벤치마크만 사용하는 파라메터 (offset 벤치마크가 같은 결과를 파라메터 수만큼 반복하지 않도록 분리)
+     */
+    @State(Scope.Benchmark)
+    public static class Keyset {
+        @Param({"V4_2", "V5"})
+        public String generation;
+
+        MemberRepository repository;
+
+        @Setup(Level.Trial)
+        public void setUp(MemberPageBenchmark benchmark) {
+            repository = switch (generation) {
+                case "V4_2" -> new MemberRepositoryV4_2(benchmark.dataSource);
+                case "V5" -> new MemberRepositoryV5(benchmark.dataSource);
+                default -> throw new IllegalArgumentException("unknown generation=" + generation);
+            };
+        }
+    }
+
+    @Benchmark
+    public MemberPage keyset(Keyset keyset) {
+        return keyset.repository.findPage(afterKey, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Member> offset() {
+        String sql = "select * from member where member_id like 'pg%' order by member_id limit ? offset ?";
+        return template.query(sql, (rs, rowNum) -> new Member(rs.getString("member_id"), rs.getInt("money")), PAGE_SIZE, offset);
+    }
+
+    private static String memberId(int i) {
+        return String.format("pg%06d", i); //member_id 는 varchar(10)
+    }
+}
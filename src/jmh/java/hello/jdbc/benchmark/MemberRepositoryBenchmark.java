@@ -0,0 +1,132 @@
+package hello.jdbc.benchmark;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MemberRepository 세대(V0 ~ V5) 별 save / findById / update 비교
+ * 같은 워크로드를 DataSource 종류(driverManager, hikari) 별로 측정한다.
+ *
+ * 실행: ./gradlew jmh -PjmhIncludes=MemberRepositoryBenchmark -PjmhThreads=8
+ * 처리량(ops/s)과 지연시간 분포(p50, p99)는 build.gradle 의 jmh 설정(thrpt, sample)으로 함께 측정하고,
+ * gc 프로파일러의 gc.alloc.rate.norm 으로 호출당 할당량을 비교한다.
+ *
+ * V0 는 DataSource 를 받지 않고 DBConnectionUtil 로 직접 커넥션을 얻는다 (dataSource 파라메터의 영향을 받지 않는다)
+ * 모든 세대가 같은 ConnectionConst.URL 에 접속한다
+ */
+@State(Scope.Benchmark)
+public class MemberRepositoryBenchmark {
+
+    @Param({"V0", "V1", "V2", "V3", "V4_1", "V4_2", "V5"})
+    public String generation;
+
+    @Param({"driverManager", "hikari"})
+    public String dataSource;
+
+    private DataSource ds;
+    private MemberRepositoryEx repository;
+    private final AtomicInteger threadSequence = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams params) {
+        ds = BenchmarkDataSources.create(dataSource, Math.max(10, params.getThreads()));
+        repository = createRepository(generation, ds);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDataSources.close(ds);
+    }
+
+    /**
+     * 스레드마다 자신의 회원을 사용한다 (행 락 경합 없이 리포지토리 자체의 비용만 측정)
+     * member_id 는 varchar(10) 이다
+     */
+    @State(Scope.Thread)
+    public static class Account {
+        String memberId;
+        String tempId;
+        int money;
+
+        @Setup(Level.Trial)
+        public void setUp(MemberRepositoryBenchmark benchmark) throws SQLException {
+            int sequence = benchmark.threadSequence.incrementAndGet();
+            memberId = "bm" + sequence;
+            tempId = "bt" + sequence;
+            benchmark.repository.delete(memberId);
+            benchmark.repository.delete(tempId);
+            benchmark.repository.save(new Member(memberId, 0));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown(MemberRepositoryBenchmark benchmark) throws SQLException {
+            benchmark.repository.delete(memberId);
+            benchmark.repository.delete(tempId);
+        }
+    }
+
+    @Benchmark
+    public Member findById(Account account) throws SQLException {
+        return repository.findById(account.memberId);
+    }
+
+    @Benchmark
+    public void update(Account account) throws SQLException {
+        repository.update(account.memberId, ++account.money);
+    }
+
+    /**
+     * 같은 회원을 계속 저장할수 없으므로 저장 후 바로 삭제한다 (save + delete 2회 호출)
+     */
+    @Benchmark
+    public void saveAndDelete(Account account) throws SQLException {
+        repository.save(new Member(account.tempId, 0));
+        repository.delete(account.tempId);
+    }
+
+    private static MemberRepositoryEx createRepository(String generation, DataSource dataSource) {
+        return switch (generation) {
+            case "V0" -> new MemberRepositoryV0();
+            case "V1" -> new MemberRepositoryV1(dataSource);
+            case "V2" -> new MemberRepositoryV2(dataSource);
+            case "V3" -> new MemberRepositoryV3(dataSource);
+            case "V4_1" -> adapt(new MemberRepositoryV4_1(dataSource));
+            case "V4_2" -> adapt(new MemberRepositoryV4_2(dataSource));
+            case "V5" -> adapt(new MemberRepositoryV5(dataSource));
+            default -> throw new IllegalArgumentException("unknown generation=" + generation);
+        };
+    }
+
+    /**
+     * V4 부터는 체크 예외를 던지지 않는 MemberRepository 이므로 같은 인터페이스로 맞춘다
+     */
+    private static MemberRepositoryEx adapt(MemberRepository repository) {
+        return new MemberRepositoryEx() {
+            @Override
+            public Member save(Member member) {
+                return repository.save(member);
+            }
+
+            @Override
+            public Member findById(String memberId) {
+                return repository.findById(memberId);
+            }
+
+            @Override
+            public void update(String memberId, int money) {
+                repository.update(memberId, money);
+            }
+
+            @Override
+            public void delete(String memberId) {
+                repository.delete(memberId);
+            }
+        };
+    }
+}
@@ -0,0 +1,86 @@
+package hello.jdbc.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.PoolSizeController;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.service.MemberServiceV4;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 고정 풀 크기(fixed:n) vs PoolSizeController(adaptive:min:max) 의 처리량, 지연시간(sample p99) 비교
+ * 스레드 수를 바꿔가며 실행한다 (밤: 적은 스레드, 낮: 많은 스레드)
+ * adaptive 는 200ms 마다 판단하므로 워밍업 동안 크기가 맞춰진다
+ *
+ * 실행: ./gradlew jmh -PjmhIncludes=PoolSizingBenchmark -PjmhThreads=2
+ *      ./gradlew jmh -PjmhIncludes=PoolSizingBenchmark -PjmhThreads=40
+ */
+@State(Scope.Benchmark)
+public class PoolSizingBenchmark {
+
+    @Param({"fixed:4", "fixed:10", "fixed:40", "adaptive:2:40"})
+    public String pool;
+
+    private HikariDataSource dataSource;
+    private PoolSizeController controller;
+    private MemberRepository repository;
+    private MemberServiceV4 memberService;
+    private final AtomicInteger threadSequence = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] knobs = pool.split(":");
+        int initialSize = knobs[0].equals("fixed") ? Integer.parseInt(knobs[1]) : 10;
+        dataSource = (HikariDataSource) BenchmarkDataSources.create("hikari", initialSize);
+        if (knobs[0].equals("adaptive")) {
+            dataSource.setMinimumIdle(Integer.parseInt(knobs[1]));
+            controller = PoolSizeController.forHikari(dataSource, Integer.parseInt(knobs[1]), Integer.parseInt(knobs[2]));
+            controller.start(Duration.ofMillis(200));
+        }
+        repository = new MemberRepositoryV5(dataSource);
+        memberService = BenchmarkServices.transactional(new MemberServiceV4(repository), dataSource);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (controller != null) {
+            controller.close();
+        }
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    /**
+     * 스레드마다 자신의 계좌 쌍을 사용한다 (row 락 경합 없이 커넥션 대기만 비교)
+     */
+    @State(Scope.Thread)
+    public static class Accounts {
+        String fromId;
+        String toId;
+
+        @Setup(Level.Trial)
+        public void setUp(PoolSizingBenchmark benchmark) {
+            int sequence = benchmark.threadSequence.incrementAndGet();
+            fromId = "pf" + sequence;
+            toId = "pt" + sequence;
+            benchmark.repository.delete(fromId);
+            benchmark.repository.delete(toId);
+            benchmark.repository.save(new Member(fromId, Integer.MAX_VALUE / 2));
+            benchmark.repository.save(new Member(toId, 0));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown(PoolSizingBenchmark benchmark) {
+            benchmark.repository.delete(fromId);
+            benchmark.repository.delete(toId);
+        }
+    }
+
+    @Benchmark
+    public void accountTransfer(Accounts accounts) {
+        memberService.accountTransfer(accounts.fromId, accounts.toId, 1);
+    }
+}
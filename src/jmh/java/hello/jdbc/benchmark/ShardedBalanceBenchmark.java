@@ -0,0 +1,73 @@
+package hello.jdbc.benchmark;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.repository.ShardedMemberRepository;
+import hello.jdbc.service.MemberServiceV4;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 인기 계좌 하나로 모든 스레드가 동시에 이체 (MemberServiceV4.accountTransfer)
+ * slots=1 은 샤딩하지 않은 기준값. 슬롯이 늘면 입금이 서로 다른 row 락을 잡는다
+ *
+ * 경합이 있어야 의미가 있으므로 여러 스레드로 실행한다
+ * 실행: ./gradlew jmh -PjmhIncludes=ShardedBalanceBenchmark -PjmhThreads=16
+ */
+@State(Scope.Benchmark)
+public class ShardedBalanceBenchmark {
+
+    private static final String HOT = "shot";
+
+    @Param({"1", "8", "32"})
+    public int slots;
+
+    private DataSource dataSource;
+    private ShardedMemberRepository repository;
+    private MemberServiceV4 memberService;
+    private final AtomicInteger threadSequence = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams params) {
+        dataSource = BenchmarkDataSources.create("hikari", Math.max(10, params.getThreads()));
+        repository = new ShardedMemberRepository(new MemberRepositoryV5(dataSource), dataSource);
+        repository.delete(HOT);
+        repository.save(new Member(HOT, 0));
+        repository.reshard(HOT, slots);
+        memberService = BenchmarkServices.transactional(new MemberServiceV4(repository), dataSource);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        repository.delete(HOT);
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    /**
+     * 스레드마다 자신의 출금 계좌를 사용한다 (경합은 입금 계좌에서만 생긴다)
+     */
+    @State(Scope.Thread)
+    public static class Sender {
+        String memberId;
+
+        @Setup(Level.Trial)
+        public void setUp(ShardedBalanceBenchmark benchmark) {
+            memberId = "ss" + benchmark.threadSequence.incrementAndGet();
+            benchmark.repository.delete(memberId);
+            benchmark.repository.save(new Member(memberId, Integer.MAX_VALUE / 2));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown(ShardedBalanceBenchmark benchmark) {
+            benchmark.repository.delete(memberId);
+        }
+    }
+
+    @Benchmark
+    public void transferToHotAccount(Sender sender) {
+        memberService.accountTransfer(sender.memberId, HOT, 1);
+    }
+}
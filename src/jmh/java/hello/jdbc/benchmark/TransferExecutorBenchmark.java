@@ -0,0 +1,82 @@
+package hello.jdbc.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.service.MemberServiceV4;
+import hello.jdbc.service.TransferExecutor;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 동시에 submitters 건의 이체를 요청하고 모두 끝날때 까지의 처리량
+ *
+ * virtual  : TransferExecutor (요청마다 가상 스레드, 커넥션 풀 크기의 세마포어)
+ * platform : 고정 크기 플랫폼 스레드 풀 (톰캣 기본값과 같은 200개). 스레드들이 히카리 getConnection 에서 기다린다
+ *
+ * 커넥션 풀은 둘다 10개. 이체는 ta{n} -> tb{n} 한 방향으로만 하므로 데드락이 생기지 않는다
+ * 실행: ./gradlew jmh -PjmhIncludes=TransferExecutorBenchmark
+ */
+@State(Scope.Benchmark)
+public class TransferExecutorBenchmark {
+
+    private static final int POOL_SIZE = 10;
+    private static final int PLATFORM_THREADS = 200;
+    private static final int ACCOUNT_PAIRS = 50;
+
+    @Param({"10", "100", "10000"})
+    public int submitters;
+
+    @Param({"virtual", "platform"})
+    public String executor;
+
+    private DataSource dataSource;
+    private MemberRepository repository;
+    private MemberServiceV4 memberService;
+    private TransferExecutor transferExecutor;
+    private ExecutorService platformPool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDataSources.create("hikari", POOL_SIZE);
+        repository = new MemberRepositoryV5(dataSource);
+        for (int i = 0; i < ACCOUNT_PAIRS; i++) {
+            repository.delete("ta" + i);
+            repository.delete("tb" + i);
+            repository.save(new Member("ta" + i, Integer.MAX_VALUE / 2));
+            repository.save(new Member("tb" + i, 0));
+        }
+        memberService = BenchmarkServices.transactional(new MemberServiceV4(repository), dataSource);
+        transferExecutor = new TransferExecutor(memberService, (HikariDataSource) dataSource);
+        platformPool = Executors.newFixedThreadPool(PLATFORM_THREADS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        transferExecutor.close();
+        platformPool.close();
+        for (int i = 0; i < ACCOUNT_PAIRS; i++) {
+            repository.delete("ta" + i);
+            repository.delete("tb" + i);
+        }
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public void transfer() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[submitters];
+        for (int i = 0; i < submitters; i++) {
+            String fromId = "ta" + (i % ACCOUNT_PAIRS);
+            String toId = "tb" + (i % ACCOUNT_PAIRS);
+            futures[i] = executor.equals("virtual")
+                    ? transferExecutor.accountTransfer(fromId, toId, 1)
+                    : CompletableFuture.runAsync(() -> memberService.accountTransfer(fromId, toId, 1), platformPool);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+}
@@ -2,9 +2,12 @@ package hello.jdbc.connection;
 
 /**
  * 상수
+ * URL 은 ConnectionProfile 로 선택한다 (-Dhello.jdbc.profile=memory|file|tcp)
+ * 스키마는 만들지 않는다 - SchemaInitializer.initializeDefault() 를 직접 호출한다
  */
 public abstract class ConnectionConst {
-    public static final String URL = "jdbc:h2:tcp://localhost/~/test";
+    public static final ConnectionProfile PROFILE = ConnectionProfile.current();
+    public static final String URL = PROFILE.getUrl();
     public static final String USERNAME = "sa";
     public static final String PASSWORD = "";
 }
@@ -0,0 +1,50 @@
+package hello.jdbc.connection;
+
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 리포지토리가 트랜잭션 커넥션을 찾는 방법
+ *
+ * SYNCHRONIZATION : 스프링 트랜잭션 동기화 (DataSourceUtils, ThreadLocal) - 기본값, @Transactional 과 함께 사용
+ * SCOPED          : ScopedConnectionContext (ScopedValue) - ScopedConnectionContext.inTransaction() 과 함께 사용
+ *
+ * 트랜잭션 커넥션이 없으면 둘다 DataSource 에서 새 커넥션을 얻고, release 할때 닫는다
+ */
+public interface ConnectionLookup {
+
+    Connection getConnection(DataSource dataSource) throws SQLException;
+
+    void releaseConnection(Connection con, DataSource dataSource);
+
+    ConnectionLookup SYNCHRONIZATION = new ConnectionLookup() {
+        @Override
+        public Connection getConnection(DataSource dataSource) {
+            return DataSourceUtils.getConnection(dataSource);
+        }
+
+        @Override
+        public void releaseConnection(Connection con, DataSource dataSource) {
+            DataSourceUtils.releaseConnection(con, dataSource);
+        }
+    };
+
+    ConnectionLookup SCOPED = new ConnectionLookup() {
+        @Override
+        public Connection getConnection(DataSource dataSource) throws SQLException {
+            Connection con = ScopedConnectionContext.currentConnection(dataSource);
+            return con != null ? con : dataSource.getConnection();
+        }
+
+        @Override
+        public void releaseConnection(Connection con, DataSource dataSource) {
+            if (con != null && con != ScopedConnectionContext.currentConnection(dataSource)) {
+                JdbcUtils.closeConnection(con); //트랜잭션 커넥션은 스코프가 끝날때 inTransaction 이 정리한다
+            }
+        }
+    };
+}
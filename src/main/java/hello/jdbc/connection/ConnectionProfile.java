@@ -0,0 +1,68 @@
+package hello.jdbc.connection;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 접속할 H2 데이터베이스 종류
+ * 시스템 프로퍼티 -Dhello.jdbc.profile=memory 또는 환경변수 HELLO_JDBC_PROFILE=memory 로 선택한다 (없으면 TCP)
+ *
+ * MEMORY: 같은 JVM 안의 메모리 DB. 서버 없이 실행되고 네트워크 비용이 없다 (테스트, 벤치마크용)
+ * FILE: 같은 JVM 안에서 파일에 저장하는 DB. MVStore 캐시 크기(KB)를 -Dhello.jdbc.file.cacheSize 로 조절한다
+ * TCP: 직접 띄운 H2 서버 (기존 방식)
+ *
+ * 처음 사용할때 schema.sql 을 실행한다. TCP 는 서버에 접속할수 있을때만 실행하고, 기존 DB 에는 빠진 컬럼, 테이블만 추가된다
+ */
+public enum ConnectionProfile {
+
+    MEMORY {
+        @Override
+        public String getUrl() {
+            //DB_CLOSE_DELAY=-1 : 마지막 커넥션이 닫혀도 JVM 이 끝날때 까지 DB 를 유지한다
+            return "jdbc:h2:mem:test;DB_CLOSE_DELAY=-1";
+        }
+    },
+    FILE {
+        @Override
+        public String getUrl() {
+            String path = System.getProperty("hello.jdbc.file.path", "./build/h2/test");
+            String cacheSize = System.getProperty("hello.jdbc.file.cacheSize", "65536");
+            return "jdbc:h2:file:" + path + ";CACHE_SIZE=" + cacheSize;
+        }
+    },
+    TCP {
+        @Override
+        public String getUrl() {
+            return "jdbc:h2:tcp://localhost/~/test";
+        }
+    };
+
+    public static final String PROPERTY = "hello.jdbc.profile";
+    public static final String ENV = "HELLO_JDBC_PROFILE";
+
+    public abstract String getUrl();
+
+    /**
+     * 애플리케이션과 같은 JVM 에서 실행되는 DB 인지 여부 (스키마 초기화 실패를 오류로 본다)
+     */
+    public boolean isEmbedded() {
+        return this != TCP;
+    }
+
+    public static ConnectionProfile current() {
+        String name = System.getProperty(PROPERTY);
+        return from(name != null ? name : System.getenv(ENV));
+    }
+
+    public static ConnectionProfile from(String name) {
+        if (name == null || name.isBlank()) {
+            return TCP;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown connection profile=" + name
+                    + ", available=" + Arrays.toString(values()), e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package hello.jdbc.connection;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 스프링 부트의 DataSource 자동 설정도 ConnectionConst 와 같은 ConnectionProfile 을 사용하도록
+ * spring.datasource.url 을 채워준다 (META-INF/spring.factories 에 등록)
+ *
+ * 가장 낮은 우선순위(addLast)로 추가하므로 application.properties 등에 url 을 직접 적으면 그 값이 우선이다.
+ * 스프링 부트의 스크립트 초기화(spring.sql.init)로 schema.sql 을 실행한다.
+ * TCP 서버 DB 도 실행한다. 스크립트는 if not exists 로 작성되어 있으므로 기존 DB 에는 빠진 컬럼, 테이블만 추가된다 (version 컬럼 등)
+ */
+public class ConnectionProfileEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+    private static final String PROPERTY_SOURCE_NAME = "helloJdbcConnectionProfile";
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        ConnectionProfile profile = ConnectionProfile.from(environment.getProperty(ConnectionProfile.PROPERTY));
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("spring.datasource.url", profile.getUrl());
+        properties.put("spring.sql.init.mode", "always");
+        environment.getPropertySources().addLast(new MapPropertySource(PROPERTY_SOURCE_NAME, properties));
+    }
+}
@@ -5,11 +5,23 @@ import lombok.extern.slf4j.Slf4j;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.time.Duration;
 
 import static hello.jdbc.connection.ConnectionConst.*;
 
+/**
+ * -Dhello.jdbc.util.pool-size=n (n > 0) 이면 DriverManager 대신 SimpleConnectionPool 에서 커넥션을 빌려준다
+ * 이때 close() 는 물리 커넥션을 닫지 않고 풀에 반납한다
+ * -Dhello.jdbc.util.thread-affinity=false 로 스레드 친화를 끌수 있다 (기본 true)
+ */
 @Slf4j
 public class DBConnectionUtil {
+
+    public static final String POOL_SIZE_PROPERTY = "hello.jdbc.util.pool-size";
+    public static final String THREAD_AFFINITY_PROPERTY = "hello.jdbc.util.thread-affinity";
+
+    private static final SimpleConnectionPool POOL = createPool();
+
     /**
      * DriverManager.getConnection() 를 사용하면 된다.
      * External library 에 있는 db Driver 해당 드라이버가 제공하는 Connection 을 반환해준다
@@ -18,6 +30,9 @@ public class DBConnectionUtil {
      */
     public static Connection getConnection() throws SQLException {
         try {
+            if (POOL != null) {
+                return POOL.getConnection();
+            }
             Connection connection = DriverManager.getConnection(URL, USERNAME, PASSWORD);
             log.info("get connection={}, class ={}", connection, connection.getClass());
             return connection;
@@ -26,4 +41,21 @@ public class DBConnectionUtil {
         }
 
     }
+
+    /**
+     * @return 풀을 사용하지 않으면 null
+     */
+    public static SimpleConnectionPool getPool() {
+        return POOL;
+    }
+
+    private static SimpleConnectionPool createPool() {
+        int poolSize = Integer.getInteger(POOL_SIZE_PROPERTY, 0);
+        if (poolSize <= 0) {
+            return null;
+        }
+        boolean threadAffinity = Boolean.parseBoolean(System.getProperty(THREAD_AFFINITY_PROPERTY, "true"));
+        log.info("DBConnectionUtil pool enabled poolSize={}, threadAffinity={}", poolSize, threadAffinity);
+        return new SimpleConnectionPool(URL, USERNAME, PASSWORD, poolSize, threadAffinity, Duration.ofSeconds(30));
+    }
 }
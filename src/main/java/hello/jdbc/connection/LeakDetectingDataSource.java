@@ -0,0 +1,302 @@
+package hello.jdbc.connection;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.lang.ref.Cleaner;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 커넥션 누수, 장시간 보유 감지 DataSource 래퍼
+ *
+ * 커넥션을 빌려줄때 호출 위치(call site)를 기록한다
+ * - 항상: 스택을 위에서 부터 첫 애플리케이션 프레임까지만 읽는다 (스프링, 히카리, JDK 프레임은 건너뛴다) -> 비용이 작다
+ * - 표본: sampleRate 번에 한번은 스택 전체(최대 32 프레임)를 기록한다 -> 리포트에서 호출 경로를 확인할때 사용한다
+ *
+ * 감지
+ * - 장시간 보유: detectLongHolds() 가 longHoldThreshold 를 넘긴 커넥션을 한번씩 경고한다 (start() 로 주기적으로 실행)
+ * - 누수: close() 하지 않은 커넥션이 GC 되면 Cleaner 가 경고하고 실제 커넥션을 닫아서 풀에 돌려준다
+ *   (GC 가 될때까지는 모르므로 장시간 보유 경고가 먼저 나온다)
+ *
+ * topOffenders() 로 호출 위치별 누적 건수를 확인한다
+ */
+@Slf4j
+public class LeakDetectingDataSource extends DelegatingDataSource {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+    private static final int SAMPLE_DEPTH = 32;
+
+    private final long longHoldThresholdNanos;
+    private final int sampleRate;
+    private final AtomicLong leaseSequence = new AtomicLong();
+    private final Map<Long, Lease> activeLeases = new ConcurrentHashMap<>();
+    private final Map<String, CallSiteStats> callSites = new ConcurrentHashMap<>();
+    private ScheduledExecutorService reaper;
+
+    /**
+     * @param longHoldThreshold 이 시간보다 오래 보유하면 경고
+     * @param sampleRate        n 번에 한번 스택 전체를 기록 (1 이면 매번)
+     */
+    public LeakDetectingDataSource(DataSource targetDataSource, Duration longHoldThreshold, int sampleRate) {
+        super(targetDataSource);
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("sampleRate must be positive sampleRate=" + sampleRate);
+        }
+        this.longHoldThresholdNanos = longHoldThreshold.toNanos();
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * interval 마다 detectLongHolds() 를 실행한다
+     */
+    public synchronized void start(Duration interval) {
+        if (reaper != null) {
+            return;
+        }
+        reaper = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("connection-leak-reaper").daemon(true).factory());
+        long millis = interval.toMillis();
+        reaper.scheduleWithFixedDelay(this::detectLongHolds, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 주기 실행을 멈춘다 (대상 DataSource 는 닫지 않는다)
+     */
+    public synchronized void stop() {
+        if (reaper != null) {
+            reaper.shutdownNow();
+            reaper = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return reaper != null;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return track(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return track(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    /**
+     * longHoldThreshold 를 넘긴 커넥션을 찾아서 경고한다 (커넥션마다 한번)
+     * @return 이번에 새로 찾은 수
+     */
+    public int detectLongHolds() {
+        long now = System.nanoTime();
+        int found = 0;
+        for (Lease lease : activeLeases.values()) {
+            long held = now - lease.acquiredAt;
+            if (held >= longHoldThresholdNanos && !lease.flagged) {
+                lease.flagged = true;
+                found++;
+                statsOf(lease).longHolds.increment();
+                log.warn("connection held too long callSite={}, thread={}, held={}ms{}", lease.callSite, lease.threadName,
+                        TimeUnit.NANOSECONDS.toMillis(held), lease.stack == null ? "" : "\n" + lease.stack);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return 현재 빌려간 커넥션 수
+     */
+    public int getActiveCount() {
+        return activeLeases.size();
+    }
+
+    /**
+     * 누수 + 장시간 보유 건수가 많은 호출 위치 순
+     */
+    public List<Offender> topOffenders(int limit) {
+        return callSites.entrySet().stream()
+                .map(e -> e.getValue().toOffender(e.getKey()))
+                .filter(offender -> offender.getLeaks() + offender.getLongHolds() > 0)
+                .sorted(Comparator.comparingLong((Offender offender) -> offender.getLeaks() + offender.getLongHolds()).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    private Connection track(Connection target) {
+        boolean sampled = ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+        Lease lease = new Lease(leaseSequence.incrementAndGet(), callSite(), Thread.currentThread().getName(),
+                sampled ? stack() : null);
+        statsOf(lease).borrows.increment();
+        if (lease.stack != null) {
+            statsOf(lease).sampleStack = lease.stack;
+        }
+        activeLeases.put(lease.id, lease);
+        LeaseHandler handler = new LeaseHandler(target, lease);
+        Connection proxy = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class}, handler);
+        handler.cleanable = CLEANER.register(proxy, new LeakAction(this, target, lease));
+        return proxy;
+    }
+
+    private void release(Lease lease) {
+        lease.closed = true;
+        activeLeases.remove(lease.id);
+        long held = System.nanoTime() - lease.acquiredAt;
+        statsOf(lease).maxHoldNanos.accumulateAndGet(held, Math::max);
+    }
+
+    private CallSiteStats statsOf(Lease lease) {
+        return callSites.computeIfAbsent(lease.callSite, key -> new CallSiteStats());
+    }
+
+    private static String callSite() {
+        return STACK_WALKER.walk(frames -> frames
+                .filter(frame -> !isInfrastructure(frame.getClassName()))
+                .findFirst()
+                .map(LeakDetectingDataSource::format)
+                .orElse("unknown"));
+    }
+
+    private static String stack() {
+        return STACK_WALKER.walk(frames -> frames
+                .filter(frame -> !isSelf(frame.getClassName()))
+                .limit(SAMPLE_DEPTH)
+                .map(frame -> "\tat " + format(frame))
+                .collect(Collectors.joining("\n")));
+    }
+
+    private static boolean isInfrastructure(String className) {
+        return isSelf(className)
+                || className.startsWith("org.springframework.")
+                || className.startsWith("com.zaxxer.")
+                || className.startsWith("java.")
+                || className.startsWith("jdk.")
+                || className.startsWith("sun.")
+                || className.contains("$$"); //CGLIB 프록시
+    }
+
+    private static boolean isSelf(String className) {
+        String self = LeakDetectingDataSource.class.getName();
+        return className.equals(self) || className.startsWith(self + "$");
+    }
+
+    private static String format(StackWalker.StackFrame frame) {
+        String className = frame.getClassName();
+        return className.substring(className.lastIndexOf('.') + 1) + "." + frame.getMethodName() + ":" + frame.getLineNumber();
+    }
+
+    /**
+     * 프록시가 close() 없이 GC 되면 실행된다. 프록시를 참조하면 GC 되지 않으므로 실제 커넥션과 lease 만 가진다
+     */
+    private record LeakAction(LeakDetectingDataSource owner, Connection target, Lease lease) implements Runnable {
+        @Override
+        public void run() {
+            if (lease.closed) {
+                return;
+            }
+            owner.release(lease);
+            owner.statsOf(lease).leaks.increment();
+            log.error("connection leak, never closed callSite={}, thread={}{}", lease.callSite, lease.threadName,
+                    lease.stack == null ? "" : "\n" + lease.stack);
+            JdbcUtils.closeConnection(target); //풀에 돌려준다
+        }
+    }
+
+    private class LeaseHandler implements InvocationHandler {
+
+        private final Connection target;
+        private final Lease lease;
+        private Cleaner.Cleanable cleanable;
+
+        LeaseHandler(Connection target, Lease lease) {
+            this.target = target;
+            this.lease = lease;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "LeakDetecting[" + target + "]";
+                case "close":
+                    if (!lease.closed) {
+                        release(lease);
+                        cleanable.clean(); //Cleaner 등록 해제 (lease.closed 이므로 아무것도 하지 않는다)
+                    }
+                    break;
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+
+    private static final class Lease {
+        private final long id;
+        private final String callSite;
+        private final String threadName;
+        private final String stack;
+        private final long acquiredAt = System.nanoTime();
+        private volatile boolean flagged;
+        private volatile boolean closed;
+
+        private Lease(long id, String callSite, String threadName, String stack) {
+            this.id = id;
+            this.callSite = callSite;
+            this.threadName = threadName;
+            this.stack = stack;
+        }
+    }
+
+    private static final class CallSiteStats {
+        private final LongAdder borrows = new LongAdder();
+        private final LongAdder longHolds = new LongAdder();
+        private final LongAdder leaks = new LongAdder();
+        private final AtomicLong maxHoldNanos = new AtomicLong();
+        private volatile String sampleStack;
+
+        Offender toOffender(String callSite) {
+            return new Offender(callSite, borrows.sum(), longHolds.sum(), leaks.sum(),
+                    TimeUnit.NANOSECONDS.toMillis(maxHoldNanos.get()), sampleStack);
+        }
+    }
+
+    /**
+     * 호출 위치별 누적 건수
+     * sampleStack: 표본으로 기록한 스택 (아직 표본이 없으면 null)
+     */
+    @Value
+    public static class Offender {
+        String callSite;
+        long borrows;
+        long longHolds;
+        long leaks;
+        long maxHoldMillis;
+        String sampleStack;
+    }
+}
@@ -0,0 +1,59 @@
+package hello.jdbc.connection;
+
+import org.springframework.beans.factory.config.DestructionAwareBeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * hello.jdbc.leak-detection.threshold 가 있으면 DataSource 빈을 LeakDetectingDataSource 로 감싼다
+ * threshold 의 절반 주기로 장시간 보유 커넥션을 찾는다. 컨텍스트가 닫히면 주기 실행을 멈춘다
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "hello.jdbc.leak-detection.threshold")
+public class LeakDetectionConfig {
+
+    /**
+     * BeanPostProcessor 는 다른 빈보다 먼저 만들어지므로 static 으로 등록하고 설정은 Environment 에서 꺼낸다
+     * 빈 소멸 콜백은 감싸기 전의 원래 빈으로 호출되므로 빈 이름으로 감싼 DataSource 를 찾아서 멈춘다
+     */
+    @Bean
+    public static DestructionAwareBeanPostProcessor leakDetectingDataSourcePostProcessor(Environment environment) {
+        return new DestructionAwareBeanPostProcessor() {
+
+            private final Map<String, LeakDetectingDataSource> wrapped = new ConcurrentHashMap<>();
+
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof LeakDetectingDataSource)) {
+                    Duration threshold = environment.getRequiredProperty("hello.jdbc.leak-detection.threshold", Duration.class);
+                    int sampleRate = environment.getProperty("hello.jdbc.leak-detection.sample-rate", Integer.class, 100);
+                    LeakDetectingDataSource leakDetecting = new LeakDetectingDataSource(dataSource, threshold, sampleRate);
+                    leakDetecting.start(threshold.dividedBy(2));
+                    wrapped.put(beanName, leakDetecting);
+                    return leakDetecting;
+                }
+                return bean;
+            }
+
+            @Override
+            public void postProcessBeforeDestruction(Object bean, String beanName) {
+                LeakDetectingDataSource leakDetecting = wrapped.remove(beanName);
+                if (leakDetecting != null) {
+                    leakDetecting.stop();
+                }
+            }
+
+            @Override
+            public boolean requiresDestruction(Object bean) {
+                return bean instanceof DataSource;
+            }
+        };
+    }
+}
@@ -0,0 +1,16 @@
+package hello.jdbc.connection;
+
+import lombok.Value;
+
+/**
+ * PoolSizeController 가 한번 판단할때 보는 값
+ * active: 사용중인 커넥션, pending: 커넥션을 기다리는 스레드
+ * acquireWaitMillis: 커넥션을 얻는데 걸린 시간, dbLatencyMillis: DB 왕복 시간
+ */
+@Value
+public class PoolSignals {
+    int active;
+    int pending;
+    double acquireWaitMillis;
+    double dbLatencyMillis;
+}
@@ -0,0 +1,270 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 부하에 따라 히카리 maximumPoolSize 를 minSize ~ maxSize 안에서 늘리고 줄인다 (HikariConfigMXBean)
+ *
+ * 한번의 tick() 마다 PoolSignals 를 보고 판단한다
+ * - 늘리기: 대기 스레드가 있거나, 커넥션 대기 시간이 growWait 를 넘거나, 사용률이 highUtilization 이상
+ * - 줄이기: 대기가 없고 사용률이 lowUtilization 이하 (최소 active / highUtilization 까지만 줄인다)
+ * - DB 과부하: DB 왕복 시간이 latencyCeiling 을 넘으면 늘리지 않고 줄인다. 커넥션을 늘려도 DB 에서 줄을 설 뿐이다
+ *
+ * DB 가 감당하는 동시 실행 수를 두 값으로 기억한다
+ * - goodAt: DB 왕복 시간이 정상이었던 가장 큰 active
+ * - overloadedAt: 과부하였던 가장 작은 active. 풀은 overloadedAt - 1 을 넘지 않는다
+ * 과부하면 goodAt 으로 물러나고, 다시 늘릴때는 goodAt 과 overloadedAt 사이를 반으로 나누어 시도한다 (몇번 안에 경계를 찾는다)
+ * overloadedAt 은 부하가 줄어도 잊지 않는다. 상한까지 모두 사용하는데도 DB 왕복 시간이 latencyCeiling 의 절반 이하로
+ * shrinkTicks 번 연속 나오면(DB 에 여유가 생겼다) 그때 잊고 다시 위로 시도한다
+ *
+ * 진동하지 않도록
+ * - 늘리기/줄이기 기준 사용률을 떨어뜨려 두었다 (0.85 / 0.4, 그 사이에서는 아무것도 하지 않는다)
+ * - 같은 판단이 연속으로 growTicks(늘리기, 과부하) / shrinkTicks(줄이기) 번 나와야 바꾼다
+ * - 바꾼 후 cooldownTicks 동안은 바꾸지 않는다 (새 크기의 효과가 신호에 나타날 시간)
+ *
+ * 히카리는 maximumPoolSize 를 줄여도 사용중인 커넥션을 닫지 않는다. 넘는 커넥션은 idleTimeout, maxLifetime 으로 정리된다
+ */
+@Slf4j
+public class PoolSizeController implements AutoCloseable {
+
+    private final HikariConfigMXBean config;
+    private final Supplier<PoolSignals> signals;
+    private final int minSize;
+    private final int maxSize;
+    private final int configuredMinimumIdle;
+
+    private double highUtilization = 0.85;
+    private double lowUtilization = 0.4;
+    private double growWaitMillis = 5;
+    private double latencyCeilingMillis = 50;
+    private int growTicks = 2;
+    private int shrinkTicks = 6;
+    private int cooldownTicks = 2;
+
+    private int goodAt; //0 이면 모른다
+    private int overloadedAt; //maxSize + 1 이면 모른다
+    private int headroomStreak;
+    private int growStreak;
+    private int shrinkStreak;
+    private int overloadStreak;
+    private int cooldown;
+    private ScheduledExecutorService scheduler;
+
+    public PoolSizeController(HikariConfigMXBean config, Supplier<PoolSignals> signals, int minSize, int maxSize) {
+        if (minSize < 1 || maxSize < minSize) {
+            throw new IllegalArgumentException("invalid bounds minSize=" + minSize + ", maxSize=" + maxSize);
+        }
+        this.config = config;
+        this.signals = signals;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.configuredMinimumIdle = config.getMinimumIdle() < 0 ? maxSize : config.getMinimumIdle(); //설정하지 않으면 히카리는 maximumPoolSize 를 사용한다
+        this.overloadedAt = maxSize + 1;
+    }
+
+    /**
+     * 히카리 풀의 상태와, tick 마다 커넥션 하나로 select 1 을 실행한 시간을 신호로 사용한다
+     */
+    public static PoolSizeController forHikari(HikariDataSource hikari, int minSize, int maxSize) {
+        return new PoolSizeController(hikari.getHikariConfigMXBean(), new HikariProbe(hikari), minSize, maxSize);
+    }
+
+    public void setUtilization(double low, double high) {
+        if (!(0 < low && low < high && high <= 1)) {
+            throw new IllegalArgumentException("invalid utilization low=" + low + ", high=" + high);
+        }
+        this.lowUtilization = low;
+        this.highUtilization = high;
+    }
+
+    public void setGrowWait(Duration growWait) {
+        this.growWaitMillis = growWait.toNanos() / 1_000_000.0;
+    }
+
+    public void setLatencyCeiling(Duration latencyCeiling) {
+        this.latencyCeilingMillis = latencyCeiling.toNanos() / 1_000_000.0;
+    }
+
+    public void setTicks(int growTicks, int shrinkTicks, int cooldownTicks) {
+        if (growTicks < 1 || shrinkTicks < 1 || cooldownTicks < 0) {
+            throw new IllegalArgumentException("invalid ticks grow=" + growTicks + ", shrink=" + shrinkTicks + ", cooldown=" + cooldownTicks);
+        }
+        this.growTicks = growTicks;
+        this.shrinkTicks = shrinkTicks;
+        this.cooldownTicks = cooldownTicks;
+    }
+
+    /**
+     * interval 마다 tick() 을 실행한다
+     */
+    public synchronized void start(Duration interval) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("pool-size-controller").daemon(true).factory());
+        long millis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::tickQuietly, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public int getPoolSize() {
+        return config.getMaximumPoolSize();
+    }
+
+    /**
+     * 신호를 한번 읽고 필요하면 풀 크기를 바꾼다
+     * @return 판단 후의 풀 크기
+     */
+    public synchronized int tick() {
+        PoolSignals current = signals.get();
+        int size = config.getMaximumPoolSize();
+        int active = current.getActive();
+        double utilization = (double) active / size;
+        boolean overloaded = current.getDbLatencyMillis() > latencyCeilingMillis;
+        boolean waiting = current.getPending() > 0 || current.getAcquireWaitMillis() > growWaitMillis;
+
+        if (overloaded) {
+            overloadedAt = Math.min(overloadedAt, Math.max(1, active));
+            if (goodAt >= overloadedAt) {
+                goodAt = 0; //전에는 괜찮던 크기도 이제는 과부하다
+            }
+        } else {
+            goodAt = Math.max(goodAt, active);
+        }
+        updateHeadroom(size, active, current);
+
+        overloadStreak = overloaded ? overloadStreak + 1 : 0;
+        if (!overloaded && (waiting || utilization >= highUtilization)) {
+            growStreak++;
+            shrinkStreak = 0;
+        } else if (!overloaded && utilization <= lowUtilization) {
+            shrinkStreak++;
+            growStreak = 0;
+        } else {
+            growStreak = 0;
+            shrinkStreak = 0;
+        }
+
+        if (cooldown > 0) {
+            cooldown--;
+            return size;
+        }
+        if (overloadStreak >= growTicks && size > minSize) {
+            int target = goodAt > 0 ? goodAt : size - Math.max(1, size / 4);
+            return resize(size, Math.max(minSize, Math.min(size - 1, target)), "db overloaded", current);
+        }
+        int ceiling = Math.min(maxSize, overloadedAt - 1);
+        if (growStreak >= growTicks && size < ceiling) {
+            int step = Math.max(1, Math.min(Math.max(current.getPending(), 1), Math.max(1, size / 2)));
+            int target;
+            if (size < goodAt) {
+                target = Math.min(goodAt, size + step); //정상이었던 크기까지는 바로 늘린다
+            } else if (overloadedAt <= maxSize) {
+                target = (size + overloadedAt) / 2; //정상과 과부하 사이를 반으로 나누어 시도
+            } else {
+                target = size + step;
+            }
+            return resize(size, Math.min(ceiling, target), "pressure", current);
+        }
+        if (shrinkStreak >= shrinkTicks && size > minSize) {
+            int floor = Math.max(minSize, (int) Math.ceil(active / highUtilization));
+            int target = Math.max(floor, size - Math.max(1, size / 8));
+            if (target < size) {
+                return resize(size, target, "idle", current);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 상한까지 모두 사용하는데 DB 왕복 시간이 latencyCeiling 의 절반 이하면 DB 에 여유가 생긴 것이다
+     * (사용률이 낮을때의 왕복 시간은 큰 풀에서의 여유를 알려주지 않으므로 보지 않는다)
+     */
+    private void updateHeadroom(int size, int active, PoolSignals current) {
+        boolean atCeiling = overloadedAt <= maxSize && size >= overloadedAt - 1 && active >= size;
+        if (atCeiling && current.getDbLatencyMillis() <= latencyCeilingMillis / 2) {
+            headroomStreak++;
+        } else {
+            headroomStreak = 0;
+        }
+        if (headroomStreak >= shrinkTicks) {
+            log.info("db has headroom, forget overloaded size {} signals={}", overloadedAt, current);
+            overloadedAt = maxSize + 1;
+            headroomStreak = 0;
+        }
+    }
+
+    private int resize(int from, int to, String reason, PoolSignals current) {
+        config.setMaximumPoolSize(to);
+        config.setMinimumIdle(Math.min(configuredMinimumIdle, to));
+        growStreak = 0;
+        shrinkStreak = 0;
+        overloadStreak = 0;
+        cooldown = cooldownTicks;
+        log.info("pool resized {} -> {} reason={}, signals={}", from, to, reason, current);
+        return to;
+    }
+
+    private void tickQuietly() {
+        try {
+            tick();
+        } catch (RuntimeException e) {
+            log.warn("pool size controller tick failed", e);
+        }
+    }
+
+    /**
+     * 대기 스레드가 있거나 모든 커넥션이 사용중이면 프로브가 같이 줄을 서게 되므로 커넥션을 얻지 않고 이전 DB 왕복 시간을 그대로 쓴다
+     */
+    private static final class HikariProbe implements Supplier<PoolSignals> {
+
+        private final HikariDataSource hikari;
+        private double lastLatencyMillis;
+
+        private HikariProbe(HikariDataSource hikari) {
+            this.hikari = hikari;
+        }
+
+        @Override
+        public PoolSignals get() {
+            HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+            if (pool == null) { //아직 첫 커넥션을 얻기 전
+                return new PoolSignals(0, 0, 0, lastLatencyMillis);
+            }
+            int active = pool.getActiveConnections();
+            int pending = pool.getThreadsAwaitingConnection();
+            if (pending > 0 || active >= hikari.getMaximumPoolSize()) {
+                return new PoolSignals(active, pending, 0, lastLatencyMillis);
+            }
+            long start = System.nanoTime();
+            try (Connection con = hikari.getConnection(); Statement stmt = con.createStatement()) {
+                long acquired = System.nanoTime();
+                stmt.execute("select 1");
+                lastLatencyMillis = (System.nanoTime() - acquired) / 1_000_000.0;
+                return new PoolSignals(active, pending, (acquired - start) / 1_000_000.0, lastLatencyMillis);
+            } catch (SQLException e) {
+                log.debug("pool probe failed", e);
+                return new PoolSignals(active, pending, hikari.getConnectionTimeout(), lastLatencyMillis);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * hello.jdbc.pool.adaptive.enabled=true 이면 PoolSizeController 로 히카리 풀 크기를 조절한다
+ * hello.jdbc.pool.adaptive.min-size / max-size : 풀 크기 범위 (기본 2 ~ 40)
+ * hello.jdbc.pool.adaptive.interval : 판단 주기 (기본 5s)
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "hello.jdbc.pool.adaptive.enabled", havingValue = "true")
+public class PoolSizingConfig {
+
+    @Bean(destroyMethod = "close")
+    public PoolSizeController poolSizeController(DataSource dataSource,
+                                                 @Value("${hello.jdbc.pool.adaptive.min-size:2}") int minSize,
+                                                 @Value("${hello.jdbc.pool.adaptive.max-size:40}") int maxSize,
+                                                 @Value("${hello.jdbc.pool.adaptive.interval:5s}") Duration interval) throws SQLException {
+        PoolSizeController controller = PoolSizeController.forHikari(dataSource.unwrap(HikariDataSource.class), minSize, maxSize);
+        controller.start(interval);
+        return controller;
+    }
+}
@@ -0,0 +1,93 @@
+package hello.jdbc.connection;
+
+import hello.jdbc.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * hello.jdbc.replica.urls 가 있으면 DataSource 를 읽기/쓰기 라우팅 DataSource 로 바꾼다
+ * 프라이머리는 spring.datasource.* 설정 그대로, 레플리카는 url 만 다르고 사용자, 비밀번호는 같다
+ * 이 DataSource 빈이 있으면 스프링 부트의 DataSource 자동 설정은 동작하지 않는다
+ * MemberRepository 빈은 ReplicaReadMemberRepository 로 감싸서 트랜잭션 밖의 조회도 레플리카로 보낸다
+ */
+@Slf4j
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "hello.jdbc.replica.urls")
+public class ReadWriteRoutingConfig {
+
+    /**
+     * 프라이머리, 레플리카 커넥션 풀
+     * LazyConnectionDataSourceProxy 에는 close() 가 없으므로 풀은 별도 빈으로 두고 컨텍스트가 닫힐때 닫는다
+     */
+    @Bean
+    public RoutingTargets routingTargets(DataSourceProperties properties,
+                                         @Value("${hello.jdbc.replica.urls}") String replicaUrls) {
+        DataSource primary = properties.initializeDataSourceBuilder().build();
+        List<DataSource> replicas = Arrays.stream(replicaUrls.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .map(url -> properties.initializeDataSourceBuilder().url(url).build())
+                .toList();
+        return new RoutingTargets(primary, replicas);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(RoutingTargets targets,
+                                 @Value("${hello.jdbc.replica.recovery-interval:30s}") Duration recoveryInterval) {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(targets.primary(), targets.replicas());
+        routing.setRecoveryInterval(recoveryInterval);
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    /**
+     * 모든 MemberRepository 빈을 ReplicaReadMemberRepository 로 감싼다
+     * BeanPostProcessor 는 다른 빈보다 먼저 만들어지므로 static 으로 등록한다
+     */
+    @Bean
+    public static BeanPostProcessor replicaReadMemberRepositoryPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof MemberRepository repository && !(bean instanceof ReplicaReadMemberRepository)) {
+                    return new ReplicaReadMemberRepository(repository);
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * DataSource 가 아니므로 DataSource 를 감싸는 빈 후처리기(누수 감지, 메트릭)의 대상이 아니다
+     */
+    public record RoutingTargets(DataSource primary, List<DataSource> replicas) implements AutoCloseable {
+
+        @Override
+        public void close() {
+            List<DataSource> all = new ArrayList<>(replicas);
+            all.add(primary);
+            for (DataSource dataSource : all) {
+                if (dataSource instanceof AutoCloseable closeable) {
+                    try {
+                        closeable.close();
+                    } catch (Exception e) {
+                        log.warn("failed to close dataSource={}", dataSource, e);
+                    }
+                }
+            }
+        }
+    }
+}
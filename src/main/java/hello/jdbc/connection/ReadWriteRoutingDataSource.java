@@ -0,0 +1,209 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 읽기 전용 작업은 레플리카로, 나머지는 프라이머리로 커넥션을 보낸다
+ *
+ * 레플리카로 가는 경우
+ * 1. @Transactional(readOnly = true) 트랜잭션
+ * 2. 트랜잭션 밖에서 readReplica() 로 감싼 조회 (어떤 호출이 읽기 인지 커넥션을 얻는 시점에는 알수 없으므로 직접 표시한다)
+ *    ReadWriteRoutingConfig 는 MemberRepository 빈을 ReplicaReadMemberRepository 로 감싸서 조회 메서드를 표시한다
+ *
+ * 주의! LazyConnectionDataSourceProxy 로 감싸서 사용해야 한다
+ * 트랜잭션 매니저는 트랜잭션을 시작할때(readOnly 가 동기화 매니저에 기록되기 전) 커넥션을 얻는다.
+ * 지연 프록시는 첫 쿼리를 실행할때 실제 커넥션을 얻으므로 그때는 readOnly 를 알수 있다.
+ *
+ * 레플리카는 라운드 로빈으로 고른다. 커넥션을 얻지 못한 레플리카는 recoveryInterval 동안 제외하고,
+ * 시간이 지나면 다시 시도한다. 사용할수 있는 레플리카가 없으면 프라이머리를 사용한다.
+ * 레플리카는 복제 지연이 있다. 방금 쓴 값을 바로 읽어야 하는 곳에서는 사용하지 않는다.
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<Boolean> readHint = new ThreadLocal<>();
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private volatile long recoveryIntervalNanos = Duration.ofSeconds(30).toNanos();
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicaDataSources) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicaDataSources.size(); i++) {
+            Replica replica = new Replica("replica-" + i);
+            replicas.add(replica);
+            targets.put(replica.key, replicaDataSources.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    /**
+     * 트랜잭션 밖에서 action 이 얻는 커넥션을 레플리카로 보낸다 (트랜잭션 안이면 영향이 없다)
+     */
+    public static <T> T readReplica(Supplier<T> action) {
+        Boolean previous = readHint.get();
+        readHint.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                readHint.remove();
+            }
+        }
+    }
+
+    /**
+     * 장애로 제외한 레플리카를 다시 시도할때 까지의 시간 (기본 30초)
+     * 0 이하면 제외한 레플리카를 바로 다시 고르게 되어 getConnection() 이 끝나지 않으므로 허용하지 않는다
+     */
+    public void setRecoveryInterval(Duration recoveryInterval) {
+        if (recoveryInterval.isZero() || recoveryInterval.isNegative()) {
+            throw new IllegalArgumentException("recoveryInterval must be positive recoveryInterval=" + recoveryInterval);
+        }
+        this.recoveryIntervalNanos = recoveryInterval.toNanos();
+    }
+
+    /**
+     * @return 현재 사용할수 있는 레플리카 키
+     */
+    public List<String> getHealthyReplicas() {
+        long now = System.nanoTime();
+        return replicas.stream().filter(replica -> replica.isAvailable(now)).map(replica -> replica.key).toList();
+    }
+
+    /**
+     * 모든 레플리카의 커넥션을 얻어서 확인한다 (스케줄러에서 주기적으로 호출하면 장애를 요청보다 먼저 발견할수 있다)
+     */
+    public void checkHealth() {
+        for (Replica replica : replicas) {
+            try (Connection con = replicaDataSource(replica).getConnection()) {
+                if (con.isValid(1)) {
+                    replica.markUp();
+                } else {
+                    replica.markDown(new SQLException("connection is not valid"));
+                }
+            } catch (SQLException e) {
+                replica.markDown(e);
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!isReadOnly()) {
+            return PRIMARY;
+        }
+        Replica replica = nextReplica();
+        return replica == null ? PRIMARY : replica.key;
+    }
+
+    /**
+     * 레플리카에서 커넥션을 얻지 못하면 그 레플리카를 제외하고 다음 레플리카(없으면 프라이머리)에서 다시 얻는다
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connect(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return connect(target -> target.getConnection(username, password));
+    }
+
+    private Connection connect(ConnectionSource source) throws SQLException {
+        while (true) {
+            Object key = determineCurrentLookupKey();
+            DataSource target = getResolvedDataSources().get(key);
+            if (PRIMARY.equals(key)) {
+                return source.get(target);
+            }
+            Replica replica = replicaOf(key);
+            try {
+                Connection con = source.get(target);
+                replica.markUp();
+                return con;
+            } catch (SQLException e) {
+                replica.markDown(e);
+            }
+        }
+    }
+
+    private boolean isReadOnly() {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        }
+        return readHint.get() != null;
+    }
+
+    private Replica nextReplica() {
+        long now = System.nanoTime();
+        int size = replicas.size();
+        int start = Math.floorMod(sequence.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.isAvailable(now)) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private Replica replicaOf(Object key) {
+        return replicas.stream().filter(replica -> replica.key.equals(key)).findFirst().orElseThrow();
+    }
+
+    private DataSource replicaDataSource(Replica replica) {
+        return getResolvedDataSources().get(replica.key);
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+        Connection get(DataSource target) throws SQLException;
+    }
+
+    private class Replica {
+
+        private final String key;
+        private volatile long downUntil; //0 이면 정상
+
+        Replica(String key) {
+            this.key = key;
+        }
+
+        boolean isAvailable(long now) {
+            long until = downUntil;
+            return until == 0 || now - until >= 0;
+        }
+
+        void markDown(SQLException e) {
+            downUntil = System.nanoTime() + recoveryIntervalNanos;
+            log.warn("replica excluded key={}, retry after {}", key, Duration.ofNanos(recoveryIntervalNanos), e);
+        }
+
+        void markUp() {
+            if (downUntil != 0) {
+                log.info("replica recovered key={}", key);
+            }
+            downUntil = 0;
+        }
+    }
+}
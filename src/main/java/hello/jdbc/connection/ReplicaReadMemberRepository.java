@@ -0,0 +1,123 @@
+package hello.jdbc.connection;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberPage;
+import hello.jdbc.repository.MemberRepository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 트랜잭션 밖의 조회를 레플리카로 보내는 MemberRepository 데코레이터
+ * 조회 메서드(findById, findAllById, findPage, findPageBefore, streamAll, streamWhere)를 readReplica() 로 감싼다
+ * 트랜잭션 안이면 readReplica() 는 영향이 없으므로 트랜잭션의 readOnly 로 결정된다
+ * 락 조회(for update)와 쓰기는 그대로 프라이머리로 간다
+ *
+ * 주의! 트랜잭션 밖에서 방금 쓴 회원을 바로 다시 읽으면 복제 지연만큼 이전 값을 볼수 있다
+ */
+public class ReplicaReadMemberRepository implements MemberRepository {
+
+    private final MemberRepository delegate;
+
+    public ReplicaReadMemberRepository(MemberRepository delegate) {
+        this.delegate = delegate;
+    }
+
+    public MemberRepository getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Member save(Member member) {
+        return delegate.save(member);
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        return ReadWriteRoutingDataSource.readReplica(() -> delegate.findById(memberId));
+    }
+
+    @Override
+    public List<Member> findAllById(Collection<String> memberIds) {
+        return ReadWriteRoutingDataSource.readReplica(() -> delegate.findAllById(memberIds));
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        return delegate.findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public List<Member> findAllByIdForUpdate(Collection<String> memberIds) {
+        return delegate.findAllByIdForUpdate(memberIds);
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        delegate.update(memberId, money);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        delegate.delete(memberId);
+    }
+
+    @Override
+    public boolean addMoney(String memberId, int delta) {
+        return delegate.addMoney(memberId, delta);
+    }
+
+    @Override
+    public boolean withdrawIfSufficient(String memberId, int amount) {
+        return delegate.withdrawIfSufficient(memberId, amount);
+    }
+
+    @Override
+    public int[] saveAll(List<Member> members) {
+        return delegate.saveAll(members);
+    }
+
+    @Override
+    public int[] updateAll(List<Member> members) {
+        return delegate.updateAll(members);
+    }
+
+    @Override
+    public int[] deleteAll(List<String> memberIds) {
+        return delegate.deleteAll(memberIds);
+    }
+
+    @Override
+    public void updateWithVersion(Member member) {
+        delegate.updateWithVersion(member);
+    }
+
+    @Override
+    public int[] updateAllWithVersion(List<Member> members) {
+        return delegate.updateAllWithVersion(members);
+    }
+
+    /**
+     * 스트림은 호출할때 쿼리를 실행하고 커넥션을 얻으므로 호출만 감싸면 된다
+     */
+    @Override
+    public Stream<Member> streamAll() {
+        return ReadWriteRoutingDataSource.readReplica(delegate::streamAll);
+    }
+
+    @Override
+    public Stream<Member> streamWhere(String whereClause, Object... args) {
+        return ReadWriteRoutingDataSource.readReplica(() -> delegate.streamWhere(whereClause, args));
+    }
+
+    @Override
+    public MemberPage findPage(String afterMemberId, int limit) {
+        return ReadWriteRoutingDataSource.readReplica(() -> delegate.findPage(afterMemberId, limit));
+    }
+
+    @Override
+    public MemberPage findPageBefore(String beforeMemberId, int limit) {
+        return ReadWriteRoutingDataSource.readReplica(() -> delegate.findPageBefore(beforeMemberId, limit));
+    }
+}
@@ -0,0 +1,79 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * classpath:schema.sql 을 실행해서 테이블을 만든다
+ * 스크립트는 if not exists 로 작성되어 있으므로 여러번 실행해도 안전하다
+ */
+@Slf4j
+public abstract class SchemaInitializer {
+
+    public static final String SCHEMA_LOCATION = "schema.sql";
+
+    private static boolean defaultInitialized;
+
+    /**
+     * ConnectionConst 의 DB(현재 프로파일)에 스키마를 만든다 - JVM 에서 한번만 실행한다
+     * 테스트의 @BeforeAll, 벤치마크 @Setup 에서 호출한다 (스프링 애플리케이션은 spring.sql.init 이 실행한다)
+     * 같은 JVM 의 DB 는 실패하면 예외, TCP 서버가 아직 떠 있지 않으면 경고만 남긴다 (접속할때 어차피 실패한다)
+     */
+    public static synchronized void initializeDefault() {
+        if (defaultInitialized) {
+            return;
+        }
+        if (ConnectionConst.PROFILE.isEmbedded()) {
+            initialize(ConnectionConst.URL, ConnectionConst.USERNAME, ConnectionConst.PASSWORD);
+        } else {
+            initializeIfReachable(ConnectionConst.URL, ConnectionConst.USERNAME, ConnectionConst.PASSWORD);
+        }
+        defaultInitialized = true;
+    }
+
+    public static void initialize(String url, String username, String password) {
+        try (Connection con = DriverManager.getConnection(url, username, password);
+             Statement stmt = con.createStatement()) {
+            for (String sql : readScript().split(";")) {
+                if (!sql.isBlank()) {
+                    stmt.execute(sql);
+                }
+            }
+            log.info("schema initialized url={}", url);
+        } catch (SQLException e) {
+            throw new IllegalStateException("schema initialize failed url=" + url, e);
+        }
+    }
+
+    /**
+     * 접속할수 없으면 예외 대신 경고를 남긴다 (직접 띄우는 TCP 서버용)
+     * @return 실행했으면 true
+     */
+    public static boolean initializeIfReachable(String url, String username, String password) {
+        try {
+            initialize(url, username, password);
+            return true;
+        } catch (IllegalStateException e) {
+            log.warn("schema initialize skipped url={}, cause={}", url, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            return false;
+        }
+    }
+
+    private static String readScript() {
+        try (InputStream in = SchemaInitializer.class.getClassLoader().getResourceAsStream(SCHEMA_LOCATION)) {
+            if (in == null) {
+                throw new IllegalStateException("classpath:" + SCHEMA_LOCATION + " not found");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
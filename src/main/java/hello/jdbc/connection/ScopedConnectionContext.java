@@ -0,0 +1,91 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * ScopedValue 로 트랜잭션 커넥션을 전달한다 (TransactionSynchronizationManager 의 ThreadLocal 대신)
+ *
+ * inTransaction() 안에서 호출되는 코드는 ConnectionLookup.SCOPED 로 같은 커넥션을 찾는다
+ * - 바인딩은 스코프가 끝나면 자동으로 사라진다. ThreadLocal 처럼 remove 를 잊어서 남는 값이 없다.
+ * - 스레드마다 ThreadLocalMap 을 만들지 않으므로 가상 스레드가 아주 많아도 메모리, 조회 비용이 작다
+ *
+ * 한계
+ * - 한번에 하나의 DataSource 만 바인딩한다 (다른 DataSource 로 inTransaction 을 중첩하면 안쪽 스코프에서는 안쪽 것만 보인다)
+ * - 전파 속성은 REQUIRED 만 지원한다 (같은 DataSource 로 중첩하면 바깥 트랜잭션에 참여한다)
+ * - 스프링 @Transactional 과는 별개의 메커니즘이다. 같은 호출 흐름에서 섞어 쓰지 않는다.
+ */
+@Slf4j
+public final class ScopedConnectionContext {
+
+    private static final ScopedValue<Binding> BINDING = ScopedValue.newInstance();
+
+    private ScopedConnectionContext() {
+    }
+
+    /**
+     * 커넥션을 얻어서 트랜잭션을 시작하고, op 가 정상 종료되면 커밋, 예외가 나면 롤백한다
+     */
+    public static <T, X extends Throwable> T inTransaction(DataSource dataSource, ScopedValue.CallableOp<? extends T, X> op)
+            throws SQLException, X {
+        if (currentConnection(dataSource) != null) {
+            return op.call(); //이미 같은 DataSource 의 트랜잭션 안이면 참여한다
+        }
+        Connection con = dataSource.getConnection();
+        boolean autoCommit = con.getAutoCommit();
+        try {
+            con.setAutoCommit(false);
+            T result = withConnection(dataSource, con, op);
+            con.commit();
+            return result;
+        } catch (Throwable e) {
+            rollback(con);
+            throw e;
+        } finally {
+            restore(con, autoCommit);
+            JdbcUtils.closeConnection(con);
+        }
+    }
+
+    /**
+     * 이미 가지고 있는 커넥션을 op 실행 동안 바인딩한다 (커밋, 롤백, 반환은 호출한 쪽 책임)
+     */
+    public static <T, X extends Throwable> T withConnection(DataSource dataSource, Connection con,
+                                                            ScopedValue.CallableOp<? extends T, X> op) throws X {
+        return ScopedValue.where(BINDING, new Binding(dataSource, con)).call(op);
+    }
+
+    /**
+     * @return 현재 스코프에 바인딩된 dataSource 의 커넥션, 없으면 null
+     */
+    public static Connection currentConnection(DataSource dataSource) {
+        if (!BINDING.isBound()) {
+            return null;
+        }
+        Binding binding = BINDING.get();
+        return binding.dataSource() == dataSource ? binding.connection() : null;
+    }
+
+    private static void rollback(Connection con) {
+        try {
+            con.rollback();
+        } catch (SQLException e) {
+            log.info("rollback error", e);
+        }
+    }
+
+    private static void restore(Connection con, boolean autoCommit) {
+        try {
+            con.setAutoCommit(autoCommit); //풀에 돌아갈 커넥션은 원래 상태로
+        } catch (SQLException e) {
+            log.info("autoCommit restore error", e);
+        }
+    }
+
+    private record Binding(DataSource dataSource, Connection connection) {
+    }
+}
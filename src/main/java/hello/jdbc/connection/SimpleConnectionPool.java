@@ -0,0 +1,298 @@
+package hello.jdbc.connection;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DriverManager 위의 작은 커넥션 풀 (DBConnectionUtil 용)
+ *
+ * - 빌려간 커넥션 수는 Semaphore(maxSize) 로 제한한다. 꽉 차면 connectionTimeout 동안 기다린다
+ * - 쉬는 커넥션은 락 없는 ConcurrentLinkedDeque 에 넣는다. 반납한 커넥션을 앞에 넣고 앞에서 꺼낸다 (최근에 쓴 커넥션부터)
+ * - 커넥션마다 상태(IDLE, IN_USE, REMOVED)를 AtomicInteger 로 가지고 CAS 로 가져간다
+ *   inFreeList 로 목록에 두번 들어가지 않게 한다. 목록에서 꺼냈는데 이미 누가 가져간 커넥션이면 버리고 다음 것을 꺼낸다
+ * - 스레드 친화(affinity): 플랫폼 스레드는 마지막에 반납한 커넥션을 ThreadLocal 로 기억했다가 목록을 거치지 않고 먼저 시도한다
+ *   가상 스레드는 수가 많고 재사용되지 않으므로 ThreadLocal 을 쓰지 않는다
+ *
+ * 반납할때 autoCommit, readOnly, 격리 수준을 처음 값으로 되돌린다 (커밋하지 않은 트랜잭션은 롤백)
+ */
+@Slf4j
+public class SimpleConnectionPool implements AutoCloseable {
+
+    private static final int IDLE = 0;
+    private static final int IN_USE = 1;
+    private static final int REMOVED = -1;
+    private static final long VALIDATION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maxSize;
+    private final boolean threadAffinity;
+    private final long connectionTimeoutNanos;
+
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PoolEntry> freeList = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private final ThreadLocal<PoolEntry> lastUsed = new ThreadLocal<>();
+    private volatile boolean closed;
+
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder affinityHitCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+
+    public SimpleConnectionPool(String url, String username, String password, int maxSize, boolean threadAffinity, Duration connectionTimeout) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive maxSize=" + maxSize);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.threadAffinity = threadAffinity;
+        this.connectionTimeoutNanos = connectionTimeout.toNanos();
+        this.permits = new Semaphore(maxSize);
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(connectionTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new SQLTransientConnectionException("connection is not available, timeout="
+                        + TimeUnit.NANOSECONDS.toMillis(connectionTimeoutNanos) + "ms, maxSize=" + maxSize);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted during connection acquisition", e);
+        }
+        try {
+            PoolEntry entry = borrow();
+            borrowCount.increment();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    new ConnectionHandler(entry));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(borrowCount.sum(), affinityHitCount.sum(), createdCount.sum(), totalCount.get(), maxSize - permits.availablePermits());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        PoolEntry entry;
+        while ((entry = freeList.pollFirst()) != null) {
+            if (entry.state.compareAndSet(IDLE, REMOVED)) {
+                discard(entry);
+            }
+        }
+    }
+
+    /**
+     * 허가(permit)를 얻은 후에만 호출된다. 빌려간 수 < maxSize 이므로 쉬는 커넥션이 있거나 새로 만들수 있다
+     */
+    private PoolEntry borrow() throws SQLException {
+        PoolEntry entry = affinityEntry();
+        if (entry != null) {
+            affinityHitCount.increment();
+            return entry;
+        }
+        while ((entry = freeList.pollFirst()) != null) {
+            entry.inFreeList.set(false);
+            if (entry.state.compareAndSet(IDLE, IN_USE)) {
+                if (isUsable(entry)) {
+                    return entry;
+                }
+                remove(entry);
+            }
+            //이미 다른 스레드가 친화로 가져간 커넥션이면 목록에서 빠진채로 둔다 (반납할때 다시 들어온다)
+        }
+        return create();
+    }
+
+    private PoolEntry affinityEntry() {
+        if (!threadAffinity || Thread.currentThread().isVirtual()) {
+            return null;
+        }
+        PoolEntry entry = lastUsed.get();
+        if (entry == null || !entry.state.compareAndSet(IDLE, IN_USE)) {
+            return null;
+        }
+        if (isUsable(entry)) {
+            return entry; //목록에 그대로 남아있다. 다른 스레드가 꺼내면 IN_USE 이므로 건너뛴다
+        }
+        remove(entry);
+        return null;
+    }
+
+    private PoolEntry create() throws SQLException {
+        totalCount.incrementAndGet();
+        try {
+            Connection con = DriverManager.getConnection(url, username, password);
+            createdCount.increment();
+            log.debug("pool connection created connection={}, total={}", con, totalCount.get());
+            return new PoolEntry(con);
+        } catch (SQLException | RuntimeException e) {
+            totalCount.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * 최근에 사용한 커넥션은 검사하지 않는다 (VALIDATION_INTERVAL 안에서는 살아있다고 본다)
+     */
+    private boolean isUsable(PoolEntry entry) {
+        try {
+            if (entry.connection.isClosed()) {
+                return false;
+            }
+            return System.nanoTime() - entry.lastUsedAt < VALIDATION_INTERVAL_NANOS || entry.connection.isValid(1);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PoolEntry entry) {
+        try {
+            if (!reset(entry) || closed) {
+                remove(entry);
+                return;
+            }
+            entry.lastUsedAt = System.nanoTime();
+            entry.state.set(IDLE);
+            if (threadAffinity && !Thread.currentThread().isVirtual()) {
+                lastUsed.set(entry);
+            }
+            if (entry.inFreeList.compareAndSet(false, true)) {
+                freeList.offerFirst(entry);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean reset(PoolEntry entry) {
+        Connection con = entry.connection;
+        try {
+            if (!con.getAutoCommit()) {
+                con.rollback();
+                con.setAutoCommit(true);
+            }
+            if (entry.readOnlyChanged) {
+                con.setReadOnly(false);
+                entry.readOnlyChanged = false;
+            }
+            if (entry.isolationChanged) {
+                con.setTransactionIsolation(entry.defaultIsolation);
+                entry.isolationChanged = false;
+            }
+            return true;
+        } catch (SQLException e) {
+            log.info("connection reset error", e);
+            return false;
+        }
+    }
+
+    private void remove(PoolEntry entry) {
+        entry.state.set(REMOVED);
+        totalCount.decrementAndGet();
+        discard(entry);
+    }
+
+    private void discard(PoolEntry entry) {
+        JdbcUtils.closeConnection(entry.connection);
+        log.debug("pool connection closed connection={}", entry.connection);
+    }
+
+    private static final class PoolEntry {
+        private final Connection connection;
+        private final AtomicInteger state = new AtomicInteger(IN_USE);
+        private final AtomicBoolean inFreeList = new AtomicBoolean();
+        private final int defaultIsolation;
+        private volatile long lastUsedAt = System.nanoTime();
+        private boolean readOnlyChanged;
+        private boolean isolationChanged;
+
+        private PoolEntry(Connection connection) throws SQLException {
+            this.connection = connection;
+            this.defaultIsolation = connection.getTransactionIsolation();
+        }
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+
+        private final PoolEntry entry;
+        private boolean returned;
+
+        ConnectionHandler(PoolEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + entry.connection + "]";
+                case "isClosed":
+                    return returned || entry.connection.isClosed();
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(entry);
+                    }
+                    return null;
+            }
+            if (returned) {
+                throw new SQLException("connection is closed");
+            }
+            if (method.getName().equals("setReadOnly")) {
+                entry.readOnlyChanged = true;
+            } else if (method.getName().equals("setTransactionIsolation")) {
+                entry.isolationChanged = true;
+            }
+            try {
+                return method.invoke(entry.connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+
+    /**
+     * affinityHitCount: 목록을 거치지 않고 스레드가 기억한 커넥션을 다시 사용한 수
+     * totalCount: 현재 물리 커넥션 수, activeCount: 빌려간 커넥션 수
+     */
+    @Value
+    public static class Stats {
+        long borrowCount;
+        long affinityHitCount;
+        long createdCount;
+        int totalCount;
+        int activeCount;
+    }
+}
@@ -0,0 +1,299 @@
+package hello.jdbc.connection;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PreparedStatement 캐시 - 물리 커넥션 별로 SQL 문자열을 키로 PreparedStatement 를 재사용한다
+ * 리포지토리는 매번 con.prepareStatement(sql) 후 JdbcUtils.closeStatement() 로 닫는데,
+ * 이 DataSource 가 반환한 커넥션에서는 close() 가 실제로 닫지 않고 캐시로 돌려보낸다.
+ *
+ * 주의
+ * 1. 히카리 프록시 커넥션은 반납될때 자신이 만든 Statement 를 모두 닫기 때문에, Statement 는 물리 커넥션(unwrap)에서 만든다.
+ *    그래서 히카리는 이 Statement 의 실행을 몰라서 반납할때 롤백하지 않는다 (autoCommit 을 되돌리면서 커밋된다)
+ *    대신 이 프록시가 close() 전에 autoCommit=false 이면 롤백한다. 커밋하지 않은 작업은 다음 사용자에게 넘어가지 않는다
+ * 2. 히카리가 커넥션을 풀에서 제거(maxLifetime, evictConnection)하면 물리 커넥션이 닫히고 캐시도 함께 버린다.
+ */
+@Slf4j
+public class StatementCachingDataSource extends DelegatingDataSource {
+
+    private static final int SWEEP_INTERVAL = 64;
+
+    private final int maxStatementsPerConnection;
+    private final Map<Connection, StatementCache> caches = new ConcurrentHashMap<>();
+    private final AtomicLong borrowCount = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder invalidatedCount = new LongAdder();
+
+    public StatementCachingDataSource(DataSource targetDataSource, int maxStatementsPerConnection) {
+        super(targetDataSource);
+        if (maxStatementsPerConnection < 1) {
+            throw new IllegalArgumentException("maxStatementsPerConnection must be positive maxStatementsPerConnection=" + maxStatementsPerConnection);
+        }
+        this.maxStatementsPerConnection = maxStatementsPerConnection;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    public Stats stats() {
+        return new Stats(hitCount.sum(), missCount.sum(), evictionCount.sum(), invalidatedCount.sum(), caches.size());
+    }
+
+    private Connection wrap(Connection con) throws SQLException {
+        if (borrowCount.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            sweepClosed();
+        }
+        Connection physical = con.unwrap(Connection.class); //히카리 프록시라면 실제 드라이버 커넥션을 꺼낸다
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                new ConnectionHandler(con, physical));
+    }
+
+    /**
+     * 풀에서 제거되어 닫힌 물리 커넥션의 캐시를 정리한다
+     */
+    private void sweepClosed() {
+        caches.forEach((physical, cache) -> {
+            if (isClosed(physical)) {
+                invalidate(physical);
+            }
+        });
+    }
+
+    private void invalidate(Connection physical) {
+        StatementCache cache = caches.remove(physical);
+        if (cache != null) {
+            invalidatedCount.increment();
+            cache.closeAll();
+            log.debug("statement cache invalidated connection={}", physical);
+        }
+    }
+
+    private static boolean isClosed(Connection con) {
+        try {
+            return con.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+
+        private final Connection target;
+        private final Connection physical;
+
+        ConnectionHandler(Connection target, Connection physical) {
+            this.target = target;
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "StatementCaching[" + target + "]";
+                case "prepareStatement":
+                    if (args.length == 1) {
+                        return prepareStatement((Connection) proxy, (String) args[0]);
+                    }
+                    break;
+                case "close":
+                    rollbackIfInTransaction();
+                    target.close();
+                    if (isClosed(physical)) { //풀이 없는 DataSource 라면 물리 커넥션이 닫힌다
+                        invalidate(physical);
+                    }
+                    return null;
+            }
+            return StatementCachingDataSource.invoke(target, method, args);
+        }
+
+        /**
+         * 히카리의 반납 롤백을 대신한다 (이미 닫혔으면 아무것도 하지 않는다)
+         */
+        private void rollbackIfInTransaction() {
+            try {
+                if (!target.isClosed() && !target.getAutoCommit()) {
+                    target.rollback();
+                }
+            } catch (SQLException e) {
+                log.info("rollback on close error", e);
+            }
+        }
+
+        private PreparedStatement prepareStatement(Connection connectionProxy, String sql) throws SQLException {
+            StatementCache cache = caches.computeIfAbsent(physical, key -> new StatementCache());
+            PreparedStatement pstmt = cache.take(sql);
+            if (pstmt != null) {
+                hitCount.increment();
+            } else {
+                missCount.increment();
+                pstmt = physical.prepareStatement(sql);
+            }
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    new StatementHandler(connectionProxy, physical, cache, sql, pstmt));
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+
+        private final Connection connectionProxy;
+        private final Connection physical;
+        private final StatementCache cache;
+        private final String sql;
+        private final PreparedStatement target;
+        private boolean returned;
+
+        StatementHandler(Connection connectionProxy, Connection physical, StatementCache cache, String sql, PreparedStatement target) {
+            this.connectionProxy = connectionProxy;
+            this.physical = physical;
+            this.cache = cache;
+            this.sql = sql;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached[" + target + "]";
+                case "getConnection":
+                    return connectionProxy;
+                case "isClosed":
+                    return returned || target.isClosed();
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        giveBack();
+                    }
+                    return null;
+            }
+            if (returned) {
+                throw new SQLException("statement is closed sql=" + sql);
+            }
+            return StatementCachingDataSource.invoke(target, method, args);
+        }
+
+        /**
+         * 다음 사용자가 이전 파라메터, 설정을 물려받지 않도록 초기화 후 캐시에 돌려놓는다
+         */
+        private void giveBack() {
+            if (isClosed(physical) || caches.get(physical) != cache) {
+                JdbcUtils.closeStatement(target);
+                return;
+            }
+            try {
+                target.clearParameters();
+                target.clearBatch();
+                target.setQueryTimeout(0);
+                target.setMaxRows(0);
+                target.setFetchSize(0);
+                cache.giveBack(sql, target);
+            } catch (SQLException e) {
+                log.info("statement reset error", e);
+                JdbcUtils.closeStatement(target);
+            }
+        }
+    }
+
+    /**
+     * 물리 커넥션 하나의 캐시
+     * 사용중인 Statement 는 캐시에서 빠져 있다가 close() 될때 돌아온다 (같은 SQL 을 동시에 여러개 열어도 안전)
+     * accessOrder = true 인 LinkedHashMap 으로 가장 오래 사용하지 않은 Statement 부터 제거한다 (LRU)
+     */
+    private class StatementCache {
+
+        private final LinkedHashMap<String, PreparedStatement> idle = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > maxStatementsPerConnection) {
+                    evictionCount.increment();
+                    JdbcUtils.closeStatement(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        synchronized PreparedStatement take(String sql) throws SQLException {
+            PreparedStatement pstmt = idle.remove(sql);
+            if (pstmt != null && pstmt.isClosed()) {
+                return null;
+            }
+            return pstmt;
+        }
+
+        synchronized void giveBack(String sql, PreparedStatement pstmt) {
+            if (idle.containsKey(sql)) {
+                JdbcUtils.closeStatement(pstmt); //같은 SQL 이 이미 캐시에 있으면 하나만 남긴다
+                return;
+            }
+            idle.put(sql, pstmt);
+        }
+
+        synchronized void closeAll() {
+            idle.values().forEach(JdbcUtils::closeStatement);
+            idle.clear();
+        }
+    }
+
+    /**
+     * invalidatedCount: 물리 커넥션이 닫혀서 통째로 버린 캐시 수
+     * cachedConnections: 현재 캐시를 가지고 있는 물리 커넥션 수
+     */
+    @Value
+    public static class Stats {
+        long hitCount;
+        long missCount;
+        long evictionCount;
+        long invalidatedCount;
+        int cachedConnections;
+
+        public double hitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 0.0 : (double) hitCount / total;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import lombok.Data;
 public class Member {
     private String memberId;
     private int money;
+    private long version; //낙관적 락 (변경할때마다 1 증가)
 
     public Member(){
 
@@ -15,4 +16,10 @@ public class Member {
         this.memberId = memberId;
         this.money = money;
     }
+
+    public Member(String memberId, int money, long version) {
+        this.memberId = memberId;
+        this.money = money;
+        this.version = version;
+    }
 }
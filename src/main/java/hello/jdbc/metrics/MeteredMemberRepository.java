@@ -0,0 +1,224 @@
+package hello.jdbc.metrics;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberPage;
+import hello.jdbc.repository.MemberRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * 메트릭을 기록하는 MemberRepository 데코레이터 (리포지토리 코드는 그대로 둔다)
+ *
+ * member.repository.calls  : 메서드별 실행 시간 (p50, p99, max)
+ * member.repository.rows   : 메서드별 처리한 row 수 (다건 조회, 배치, 페이지, 스트림)
+ * member.repository.errors : 메서드별, 예외 타입별 실패 수 (스프링 DataAccessException 으로 변환된 타입 이름)
+ * member.repository.lock.wait : select ... for update 에 걸린 누적 시간(초). PK 조회이므로 대부분 락 대기 시간이다
+ */
+public class MeteredMemberRepository implements MemberRepository {
+
+    public static final String CALLS = "member.repository.calls";
+    public static final String ROWS = "member.repository.rows";
+    public static final String ERRORS = "member.repository.errors";
+    public static final String LOCK_WAIT = "member.repository.lock.wait";
+
+    private final MemberRepository delegate;
+    private final MeterRegistry registry;
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> rows = new ConcurrentHashMap<>();
+
+    public MeteredMemberRepository(MemberRepository delegate, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.registry = registry;
+    }
+
+    public MemberRepository getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Member save(Member member) {
+        return record("save", () -> delegate.save(member));
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        return record("findById", () -> delegate.findById(memberId));
+    }
+
+    @Override
+    public List<Member> findAllById(Collection<String> memberIds) {
+        List<Member> members = record("findAllById", () -> delegate.findAllById(memberIds));
+        rows("findAllById").record(members.size());
+        return members;
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        return recordLock("findByIdForUpdate", () -> delegate.findByIdForUpdate(memberId));
+    }
+
+    @Override
+    public List<Member> findAllByIdForUpdate(Collection<String> memberIds) {
+        List<Member> members = recordLock("findAllByIdForUpdate", () -> delegate.findAllByIdForUpdate(memberIds));
+        rows("findAllByIdForUpdate").record(members.size());
+        return members;
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        record("update", () -> {
+            delegate.update(memberId, money);
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(String memberId) {
+        record("delete", () -> {
+            delegate.delete(memberId);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean addMoney(String memberId, int delta) {
+        return record("addMoney", () -> delegate.addMoney(memberId, delta));
+    }
+
+    @Override
+    public boolean withdrawIfSufficient(String memberId, int amount) {
+        return record("withdrawIfSufficient", () -> delegate.withdrawIfSufficient(memberId, amount));
+    }
+
+    @Override
+    public int[] saveAll(List<Member> members) {
+        return recordBatch("saveAll", () -> delegate.saveAll(members));
+    }
+
+    @Override
+    public int[] updateAll(List<Member> members) {
+        return recordBatch("updateAll", () -> delegate.updateAll(members));
+    }
+
+    @Override
+    public void updateWithVersion(Member member) {
+        record("updateWithVersion", () -> {
+            delegate.updateWithVersion(member);
+            return null;
+        });
+    }
+
+    @Override
+    public int[] updateAllWithVersion(List<Member> members) {
+        return recordBatch("updateAllWithVersion", () -> delegate.updateAllWithVersion(members));
+    }
+
+    @Override
+    public int[] deleteAll(List<String> memberIds) {
+        return recordBatch("deleteAll", () -> delegate.deleteAll(memberIds));
+    }
+
+    @Override
+    public MemberPage findPage(String afterMemberId, int limit) {
+        MemberPage page = record("findPage", () -> delegate.findPage(afterMemberId, limit));
+        rows("findPage").record(page.getMembers().size());
+        return page;
+    }
+
+    @Override
+    public MemberPage findPageBefore(String beforeMemberId, int limit) {
+        MemberPage page = record("findPageBefore", () -> delegate.findPageBefore(beforeMemberId, limit));
+        rows("findPageBefore").record(page.getMembers().size());
+        return page;
+    }
+
+    @Override
+    public Stream<Member> streamAll() {
+        return recordStream("streamAll", delegate::streamAll);
+    }
+
+    @Override
+    public Stream<Member> streamWhere(String whereClause, Object... args) {
+        return recordStream("streamWhere", () -> delegate.streamWhere(whereClause, args));
+    }
+
+    private <T> T record(String method, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            Counter.builder(ERRORS)
+                    .tag("method", method)
+                    .tag("exception", e.getClass().getSimpleName())
+                    .register(registry)
+                    .increment();
+            throw e;
+        } finally {
+            timer(method).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 락 획득에 실패(타임아웃)한 경우도 기다린 시간은 누적한다
+     */
+    private <T> T recordLock(String method, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            return record(method, call);
+        } finally {
+            Counter.builder(LOCK_WAIT)
+                    .tag("method", method)
+                    .baseUnit("seconds")
+                    .register(registry)
+                    .increment((System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    /**
+     * 배치 결과는 row 별 영향받은 row 수 (드라이버가 알수 없으면 SUCCESS_NO_INFO(-2) 이므로 0 이상만 더한다)
+     */
+    private int[] recordBatch(String method, Supplier<int[]> call) {
+        int[] result = record(method, call);
+        long affected = 0;
+        for (int count : result) {
+            affected += Math.max(count, 0);
+        }
+        rows(method).record(affected);
+        return result;
+    }
+
+    /**
+     * 스트림은 열 때까지만 시간을 재고, 읽은 row 수는 스트림을 닫을때 기록한다
+     */
+    private Stream<Member> recordStream(String method, Supplier<Stream<Member>> call) {
+        Stream<Member> stream = record(method, call);
+        AtomicLong count = new AtomicLong();
+        return stream.peek(member -> count.incrementAndGet())
+                .onClose(() -> rows(method).record(count.get()));
+    }
+
+    private Timer timer(String method) {
+        return timers.computeIfAbsent(method, key -> Timer.builder(CALLS)
+                .tag("method", key)
+                .publishPercentiles(0.5, 0.99)
+                .register(registry));
+    }
+
+    private DistributionSummary rows(String method) {
+        return rows.computeIfAbsent(method, key -> DistributionSummary.builder(ROWS)
+                .tag("method", key)
+                .register(registry));
+    }
+}
@@ -0,0 +1,73 @@
+package hello.jdbc.metrics;
+
+import hello.jdbc.repository.MemberRepository;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.jmx.JmxConfig;
+import io.micrometer.jmx.JmxMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * hello.jdbc.metrics.enabled=true 일때만 메트릭을 수집한다
+ * 꺼져 있으면 데코레이터, 애스펙트, 리스너가 하나도 등록되지 않으므로 비용이 없다
+ *
+ * 로컬에서는 JMX 로 확인한다 (jconsole -> MBeans -> metrics)
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "hello.jdbc.metrics.enabled", havingValue = "true")
+public class MetricsConfig {
+
+    @Bean(destroyMethod = "close")
+    public JmxMeterRegistry meterRegistry() {
+        return new JmxMeterRegistry(JmxConfig.DEFAULT, Clock.SYSTEM);
+    }
+
+    /**
+     * 모든 MemberRepository 빈을 MeteredMemberRepository 로 감싼다
+     * BeanPostProcessor 는 다른 빈보다 먼저 만들어지므로 static 으로 등록하고 레지스트리는 나중에 꺼낸다
+     */
+    @Bean
+    public static BeanPostProcessor meteredMemberRepositoryPostProcessor(ObjectProvider<MeterRegistry> registry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof MemberRepository repository && !(bean instanceof MeteredMemberRepository)) {
+                    return new MeteredMemberRepository(repository, registry.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * DataSource 빈을 PoolMetricsDataSource 로 감싼다 (커넥션 대기/보유 시간, 풀 상태)
+     */
+    @Bean
+    public static BeanPostProcessor poolMetricsDataSourcePostProcessor(ObjectProvider<MeterRegistry> registry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof PoolMetricsDataSource)) {
+                    return new PoolMetricsDataSource(dataSource, registry.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public TransferMetricsAspect transferMetricsAspect(MeterRegistry registry) {
+        return new TransferMetricsAspect(registry);
+    }
+
+    @Bean
+    public TransactionMetricsListener transactionMetricsListener(MeterRegistry registry) {
+        return new TransactionMetricsListener(registry);
+    }
+}
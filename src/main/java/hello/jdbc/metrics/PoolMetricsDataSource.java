@@ -0,0 +1,238 @@
+package hello.jdbc.metrics;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Value;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 커넥션 풀 메트릭을 기록하는 DataSource 래퍼
+ *
+ * member.pool.acquire  : getConnection(), getConnection(username, password) 대기 시간 (히스토그램, p50, p99)
+ * member.pool.hold     : 커넥션을 얻어서 close() 할때 까지의 시간, caller(커넥션을 얻은 서비스/리포지토리 메서드) 별
+ * member.pool.timeouts : getConnection() 이 connectionTimeout 으로 실패한 수
+ * member.pool.active, idle, pending, total : HikariPoolMXBean 의 현재 값 (히카리 풀일때만)
+ *
+ * caller 는 커넥션을 얻을때 스택에서 찾는다. hello.jdbc.service 의 메서드가 있으면 그것, 없으면 hello.jdbc.repository 의 메서드
+ * 트랜잭션 프록시가 얻은 커넥션은 프록시를 호출한 서비스 메서드가 caller 가 된다 (MemberServiceV3_3.accountTransfer)
+ * 스택을 읽는 비용이 있으므로 setCallerTracking(false) 로 끌수 있다 (caller=all 로 기록)
+ */
+public class PoolMetricsDataSource extends DelegatingDataSource {
+
+    public static final String ACQUIRE = "member.pool.acquire";
+    public static final String HOLD = "member.pool.hold";
+    public static final String TIMEOUTS = "member.pool.timeouts";
+    public static final String ACTIVE = "member.pool.active";
+    public static final String IDLE = "member.pool.idle";
+    public static final String PENDING = "member.pool.pending";
+    public static final String TOTAL = "member.pool.total";
+
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+    private static final int MAX_STACK_DEPTH = 128;
+
+    private final MeterRegistry registry;
+    private final String pool;
+    private final Timer acquireTimer;
+    private final Counter timeouts;
+    private final Map<String, Timer> holdTimers = new ConcurrentHashMap<>();
+    private volatile boolean callerTracking = true;
+
+    public PoolMetricsDataSource(DataSource targetDataSource, MeterRegistry registry) {
+        super(targetDataSource);
+        this.registry = registry;
+        HikariDataSource hikari = hikariOf(targetDataSource);
+        this.pool = hikari != null && hikari.getPoolName() != null ? hikari.getPoolName() : "default";
+        this.acquireTimer = Timer.builder(ACQUIRE)
+                .tag("pool", pool)
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.timeouts = Counter.builder(TIMEOUTS).tag("pool", pool).register(registry);
+        if (hikari != null) {
+            gauge(ACTIVE, hikari, HikariPoolMXBean::getActiveConnections);
+            gauge(IDLE, hikari, HikariPoolMXBean::getIdleConnections);
+            gauge(PENDING, hikari, HikariPoolMXBean::getThreadsAwaitingConnection);
+            gauge(TOTAL, hikari, HikariPoolMXBean::getTotalConnections);
+        }
+    }
+
+    public void setCallerTracking(boolean callerTracking) {
+        this.callerTracking = callerTracking;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return acquire(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return acquire(target -> target.getConnection(username, password));
+    }
+
+    private Connection acquire(ConnectionSource source) throws SQLException {
+        String caller = callerTracking ? callerOf() : "all";
+        long start = System.nanoTime();
+        Connection con;
+        try {
+            con = source.get(obtainTargetDataSource());
+        } catch (SQLTransientConnectionException e) {
+            timeouts.increment(); //히카리는 connectionTimeout 이 지나면 이 예외를 던진다
+            throw e;
+        } finally {
+            acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                new HoldTimeHandler(con, holdTimer(caller), System.nanoTime()));
+    }
+
+    /**
+     * 테스트, 운영 도구에서 현재 값을 한번에 확인한다 (히카리 풀이 아니거나 아직 시작 전이면 풀 상태는 -1)
+     */
+    public PoolStats stats() {
+        Optional<HikariPoolMXBean> mxBean = Optional.ofNullable(hikariOf(getTargetDataSource()))
+                .map(HikariDataSource::getHikariPoolMXBean);
+        return new PoolStats(
+                mxBean.map(HikariPoolMXBean::getActiveConnections).orElse(-1),
+                mxBean.map(HikariPoolMXBean::getIdleConnections).orElse(-1),
+                mxBean.map(HikariPoolMXBean::getThreadsAwaitingConnection).orElse(-1),
+                mxBean.map(HikariPoolMXBean::getTotalConnections).orElse(-1),
+                acquireTimer.count(),
+                acquireTimer.max(TimeUnit.MILLISECONDS),
+                (long) timeouts.count());
+    }
+
+    /**
+     * @return caller 별 커넥션 보유 시간
+     */
+    public Map<String, Timer> getHoldTimers() {
+        return Map.copyOf(holdTimers);
+    }
+
+    private Timer holdTimer(String caller) {
+        return holdTimers.computeIfAbsent(caller, key -> Timer.builder(HOLD)
+                .tag("pool", pool)
+                .tag("caller", key)
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    private void gauge(String name, HikariDataSource hikari, ToDoubleFunction<HikariPoolMXBean> value) {
+        Gauge.builder(name, hikari, ds -> {
+                    HikariPoolMXBean mxBean = ds.getHikariPoolMXBean(); //풀이 시작되기 전에는 null
+                    return mxBean == null ? Double.NaN : value.applyAsDouble(mxBean);
+                })
+                .tag("pool", pool)
+                .register(registry);
+    }
+
+    static String callerOf() {
+        return STACK_WALKER.walk(frames -> {
+            String repository = null;
+            for (StackWalker.StackFrame frame : (Iterable<StackWalker.StackFrame>) frames.limit(MAX_STACK_DEPTH)::iterator) {
+                String className = frame.getClassName();
+                if (className.startsWith("hello.jdbc.service.")) {
+                    return nameOf(frame);
+                }
+                if (repository == null && className.startsWith("hello.jdbc.repository.")) {
+                    repository = nameOf(frame);
+                }
+            }
+            return repository != null ? repository : "unknown";
+        });
+    }
+
+    private static String nameOf(StackWalker.StackFrame frame) {
+        String className = frame.getClassName();
+        int proxy = className.indexOf("$$"); //CGLIB 프록시 클래스 이름은 원래 클래스 이름으로
+        if (proxy > 0) {
+            className = className.substring(0, proxy);
+        }
+        return className.substring(className.lastIndexOf('.') + 1) + "." + frame.getMethodName();
+    }
+
+    private static HikariDataSource hikariOf(DataSource dataSource) {
+        try {
+            return dataSource != null && dataSource.isWrapperFor(HikariDataSource.class)
+                    ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+        Connection get(DataSource target) throws SQLException;
+    }
+
+    private static class HoldTimeHandler implements InvocationHandler {
+
+        private final Connection target;
+        private final Timer holdTimer;
+        private final long acquiredAt;
+        private final AtomicBoolean closed = new AtomicBoolean(); //close() 는 다른 스레드에서 올수 있다
+
+        HoldTimeHandler(Connection target, Timer holdTimer, long acquiredAt) {
+            this.target = target;
+            this.holdTimer = holdTimer;
+            this.acquiredAt = acquiredAt;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PoolMetrics[" + target + "]";
+                case "close":
+                    if (closed.compareAndSet(false, true)) {
+                        holdTimer.record(System.nanoTime() - acquiredAt, TimeUnit.NANOSECONDS);
+                    }
+                    break;
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+
+    /**
+     * active, idle, pending, total: 풀의 현재 커넥션 수 (pending 은 커넥션을 기다리는 스레드 수)
+     * acquireCount, acquireMaxMillis: getConnection() 호출 수와 최근 최대 대기 시간
+     */
+    @Value
+    public static class PoolStats {
+        int active;
+        int idle;
+        int pending;
+        int total;
+        long acquireCount;
+        double acquireMaxMillis;
+        long timeoutCount;
+    }
+}
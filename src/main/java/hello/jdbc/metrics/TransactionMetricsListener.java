@@ -0,0 +1,60 @@
+package hello.jdbc.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 스프링 트랜잭션 매니저가 시작한 트랜잭션의 시작 ~ 커밋/롤백 시간 (member.transaction)
+ * 스프링 부트가 TransactionExecutionListener 빈을 자동 설정된 트랜잭션 매니저에 등록한다
+ *
+ * 기존 트랜잭션에 참여하는 경우는 새 트랜잭션이 아니므로 기록하지 않는다
+ * outcome 태그: commit, rollback, commit_failed, rollback_failed
+ */
+public class TransactionMetricsListener implements TransactionExecutionListener {
+
+    public static final String TRANSACTION = "member.transaction";
+
+    private final MeterRegistry registry;
+    //트랜잭션 상태 객체는 equals 를 재정의하지 않으므로 동일성으로 찾는다 (REQUIRES_NEW 로 중첩되어도 구분된다)
+    private final Map<TransactionExecution, Long> startTimes = new ConcurrentHashMap<>();
+
+    public TransactionMetricsListener(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void afterBegin(TransactionExecution transaction, Throwable beginFailure) {
+        if (beginFailure == null) {
+            startTimes.put(transaction, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void afterCommit(TransactionExecution transaction, Throwable commitFailure) {
+        record(transaction, commitFailure == null ? "commit" : "commit_failed");
+    }
+
+    @Override
+    public void afterRollback(TransactionExecution transaction, Throwable rollbackFailure) {
+        record(transaction, rollbackFailure == null ? "rollback" : "rollback_failed");
+    }
+
+    private void record(TransactionExecution transaction, String outcome) {
+        Long start = startTimes.remove(transaction);
+        if (start == null) {
+            return;
+        }
+        Timer.builder(TRANSACTION)
+                .tag("name", String.valueOf(transaction.getTransactionName()))
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.99)
+                .register(registry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
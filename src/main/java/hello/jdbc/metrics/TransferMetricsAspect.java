@@ -0,0 +1,44 @@
+package hello.jdbc.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+/**
+ * 이체 서비스 실행 시간 (member.transfer)
+ * 트랜잭션 어드바이저(LOWEST_PRECEDENCE) 보다 바깥에서 실행되므로 커밋, 롤백 시간까지 포함된다
+ * exception 태그: 성공이면 none, 실패면 예외 타입 이름
+ */
+@Aspect
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+@RequiredArgsConstructor
+public class TransferMetricsAspect {
+
+    public static final String TRANSFER = "member.transfer";
+
+    private final MeterRegistry registry;
+
+    @Around("execution(* hello.jdbc.service.MemberServiceV4.accountTransfer*(..))" +
+            " || execution(* hello.jdbc.service.MemberServiceV4.transferAll(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer.Sample sample = Timer.start(registry);
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(TRANSFER)
+                    .tag("method", joinPoint.getSignature().getName())
+                    .tag("exception", exception)
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry));
+        }
+    }
+}
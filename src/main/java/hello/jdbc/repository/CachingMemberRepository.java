@@ -0,0 +1,346 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * findById 결과를 캐시하는 MemberRepository 데코레이터 (어떤 MemberRepository 구현체든 감쌀수 있다)
+ * 크기(maxSize) 를 넘으면 가장 오래 사용하지 않은 회원부터 제거하고(LRU), ttl 이 지나면 만료된다.
+ *
+ * 트랜잭션과 함께 사용할때
+ * 트랜잭션 안에서 변경한 회원은 커밋 후에만 캐시에서 무효화 된다 (TransactionSynchronization.afterCommit)
+ * 롤백되면 무효화 목록을 그냥 버린다. 캐시에는 커밋된 값만 남는다.
+ * 트랜잭션 안에서 자신이 변경한 회원을 다시 조회하면 캐시를 거치지 않고 DB 에서 조회한다.
+ */
+@Slf4j
+public class CachingMemberRepository implements MemberRepository {
+
+    private final MemberRepository delegate;
+    private final int maxSize;
+    private final long ttlNanos;
+
+    private final LinkedHashMap<String, CacheEntry> cache;
+    //무효화가 일어날때마다 증가. DB 조회 도중 무효화가 있었다면 조회 결과를 캐시에 넣지 않는다
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expiredCount = new LongAdder();
+
+    public CachingMemberRepository(MemberRepository delegate, int maxSize, Duration ttl) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive maxSize=" + maxSize);
+        }
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        //accessOrder = true : 조회할때마다 맨 뒤로 이동 -> 맨 앞이 가장 오래 사용하지 않은 회원
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if (size() > CachingMemberRepository.this.maxSize) {
+                    evictionCount.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public Member save(Member member) {
+        Member saved = delegate.save(member);
+        invalidate(member.getMemberId());
+        return saved;
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        if (isWrittenInTransaction(memberId)) {
+            return delegate.findById(memberId); //아직 커밋되지 않은 자신의 변경은 캐시를 거치지 않는다
+        }
+        Member cached = lookup(memberId);
+        if (cached != null) {
+            return cached;
+        }
+        long seq = invalidations.get();
+        Member member = delegate.findById(memberId);
+        populate(member, seq);
+        return member;
+    }
+
+    @Override
+    public List<Member> findAllById(Collection<String> memberIds) {
+        List<Member> result = new ArrayList<>(memberIds.size());
+        Set<String> misses = new HashSet<>();
+        for (String memberId : new HashSet<>(memberIds)) {
+            Member cached = isWrittenInTransaction(memberId) ? null : lookup(memberId);
+            if (cached != null) {
+                result.add(cached);
+            } else {
+                misses.add(memberId);
+            }
+        }
+        if (!misses.isEmpty()) {
+            long seq = invalidations.get();
+            for (Member member : delegate.findAllById(misses)) {
+                if (!isWrittenInTransaction(member.getMemberId())) {
+                    populate(member, seq);
+                }
+                result.add(member);
+            }
+        }
+        result.sort(Comparator.comparing(Member::getMemberId));
+        return result;
+    }
+
+    /**
+     * 락을 거는 조회는 항상 DB 에서 한다 (락과 함께 최신 값을 읽는 것이 목적이다)
+     */
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        return delegate.findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public List<Member> findAllByIdForUpdate(Collection<String> memberIds) {
+        return delegate.findAllByIdForUpdate(memberIds);
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        delegate.update(memberId, money);
+        invalidate(memberId);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        delegate.delete(memberId);
+        invalidate(memberId);
+    }
+
+    @Override
+    public boolean addMoney(String memberId, int delta) {
+        boolean updated = delegate.addMoney(memberId, delta);
+        invalidate(memberId);
+        return updated;
+    }
+
+    @Override
+    public boolean withdrawIfSufficient(String memberId, int amount) {
+        boolean updated = delegate.withdrawIfSufficient(memberId, amount);
+        invalidate(memberId);
+        return updated;
+    }
+
+    @Override
+    public int[] saveAll(List<Member> members) {
+        int[] result = delegate.saveAll(members);
+        members.forEach(member -> invalidate(member.getMemberId()));
+        return result;
+    }
+
+    @Override
+    public int[] updateAll(List<Member> members) {
+        int[] result = delegate.updateAll(members);
+        members.forEach(member -> invalidate(member.getMemberId()));
+        return result;
+    }
+
+    @Override
+    public void updateWithVersion(Member member) {
+        delegate.updateWithVersion(member);
+        invalidate(member.getMemberId());
+    }
+
+    @Override
+    public int[] updateAllWithVersion(List<Member> members) {
+        int[] result = delegate.updateAllWithVersion(members);
+        members.forEach(member -> invalidate(member.getMemberId()));
+        return result;
+    }
+
+    @Override
+    public int[] deleteAll(List<String> memberIds) {
+        int[] result = delegate.deleteAll(memberIds);
+        memberIds.forEach(this::invalidate);
+        return result;
+    }
+
+    @Override
+    public MemberPage findPage(String afterMemberId, int limit) {
+        return delegate.findPage(afterMemberId, limit);
+    }
+
+    @Override
+    public MemberPage findPageBefore(String beforeMemberId, int limit) {
+        return delegate.findPageBefore(beforeMemberId, limit);
+    }
+
+    /**
+     * 스트림 조회는 대량 조회이므로 캐시를 거치지도, 채우지도 않는다
+     */
+    @Override
+    public Stream<Member> streamAll() {
+        return delegate.streamAll();
+    }
+
+    @Override
+    public Stream<Member> streamWhere(String whereClause, Object... args) {
+        return delegate.streamWhere(whereClause, args);
+    }
+
+    public CacheStats stats() {
+        int size;
+        synchronized (cache) {
+            size = cache.size();
+        }
+        return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum(), expiredCount.sum(), size);
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        invalidations.incrementAndGet();
+    }
+
+    private Member lookup(String memberId) {
+        synchronized (cache) {
+            CacheEntry entry = cache.get(memberId);
+            if (entry != null && entry.expiresAt - System.nanoTime() > 0) {
+                hitCount.increment();
+                return copy(entry.member);
+            }
+            if (entry != null) {
+                cache.remove(memberId);
+                expiredCount.increment();
+            }
+        }
+        missCount.increment();
+        return null;
+    }
+
+    /**
+     * 조회를 시작한 이후에 무효화가 있었다면, 조회한 값이 이미 오래된 값일수 있으므로 캐시에 넣지 않는다
+     */
+    private void populate(Member member, long seq) {
+        synchronized (cache) {
+            if (invalidations.get() == seq) {
+                cache.put(member.getMemberId(), new CacheEntry(copy(member), System.nanoTime() + ttlNanos));
+            }
+        }
+    }
+
+    /**
+     * 트랜잭션 동기화가 활성화 되어 있으면 커밋 후에 무효화 한다
+     * 트랜잭션 밖이면 바로 무효화 한다
+     */
+    private void invalidate(String memberId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendingInvalidations().add(memberId);
+        } else {
+            evict(Set.of(memberId));
+        }
+    }
+
+    private void evict(Collection<String> memberIds) {
+        synchronized (cache) {
+            invalidations.incrementAndGet();
+            memberIds.forEach(cache::remove);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean isWrittenInTransaction(String memberId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return false;
+        }
+        Set<String> pending = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        return pending != null && pending.contains(memberId);
+    }
+
+    /**
+     * 현재 트랜잭션에서 변경한 회원 목록
+     * 트랜잭션 동기화 매니저에 이 캐시를 키로 보관하고, 처음 만들때 한번만 동기화 콜백을 등록한다
+     */
+    @SuppressWarnings("unchecked")
+    private Set<String> pendingInvalidations() {
+        Set<String> pending = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (pending != null) {
+            return pending;
+        }
+        Set<String> created = new HashSet<>();
+        TransactionSynchronizationManager.bindResource(this, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResource(CachingMemberRepository.this);
+            }
+
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(CachingMemberRepository.this, created);
+            }
+
+            @Override
+            public void afterCommit() {
+                evict(created);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                //롤백이면 무효화 목록을 버린다 (캐시에는 커밋된 값만 있으므로 그대로 유효하다)
+                TransactionSynchronizationManager.unbindResourceIfPossible(CachingMemberRepository.this);
+                if (status != STATUS_COMMITTED) {
+                    log.debug("rollback, discard invalidations={}", created);
+                }
+            }
+        });
+        return created;
+    }
+
+    /**
+     * Member 는 변경 가능한 객체이므로 캐시 안의 객체를 그대로 넘기지 않는다
+     */
+    private Member copy(Member member) {
+        return new Member(member.getMemberId(), member.getMoney(), member.getVersion());
+    }
+
+    private static final class CacheEntry {
+        private final Member member;
+        private final long expiresAt;
+
+        private CacheEntry(Member member, long expiresAt) {
+            this.member = member;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * evictionCount: maxSize 를 넘어서 제거된 수, expiredCount: ttl 이 지나서 제거된 수
+     */
+    @Value
+    public static class CacheStats {
+        long hitCount;
+        long missCount;
+        long evictionCount;
+        long expiredCount;
+        int size;
+
+        public double hitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 0.0 : (double) hitCount / total;
+        }
+    }
+}
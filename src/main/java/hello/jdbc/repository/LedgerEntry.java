@@ -0,0 +1,19 @@
+package hello.jdbc.repository;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * 이체 원장 한건 (transfer_ledger)
+ * compacted: member.money 에 이미 합쳐졌는지 여부. 합쳐진 후에도 이력으로 남는다
+ */
+@Value
+public class LedgerEntry {
+    long entryId;
+    String fromId;
+    String toId;
+    int money;
+    LocalDateTime createdAt;
+    boolean compacted;
+}
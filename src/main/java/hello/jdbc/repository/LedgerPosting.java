@@ -0,0 +1,13 @@
+package hello.jdbc.repository;
+
+import lombok.Value;
+
+/**
+ * 원장에 추가할 이체 한건 (entry_id, created_at 은 DB 가 채운다)
+ */
+@Value
+public class LedgerPosting {
+    String fromId;
+    String toId;
+    int money;
+}
@@ -0,0 +1,148 @@
+package hello.jdbc.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import java.util.*;
+
+/**
+ * 이체 원장 - 잔액을 덮어쓰지 않고 이체를 transfer_ledger 에 insert 만 한다
+ * insert 는 서로 다른 row 를 만들기 때문에 같은 계좌로 이체가 몰려도 row 락 경합이 없다
+ *
+ * 현재 잔액 = member.money(마지막으로 합친 스냅샷) + 아직 합치지 않은 원장(compacted = false)
+ * compact() 가 원장을 계좌별로 모아서 member.money 에 한번에 더하고 합친 원장을 표시한다 (원장은 지우지 않는다 -> 감사 이력)
+ *
+ * 잔액 조회는 한번의 select 로 스냅샷과 원장을 함께 읽는다. compact() 는 하나의 트랜잭션이므로 합치기 전/후 어느 쪽을 읽어도 잔액이 같다
+ * 원장의 entry_id 는 insert 순서이지 커밋 순서가 아니므로 "어디까지 합쳤다" 를 id 로 기록하지 않고 row 마다 표시한다
+ */
+@Slf4j
+public class LedgerRepository {
+
+    private final JdbcTemplate template;
+    private int batchSize = MemberRepository.DEFAULT_BATCH_SIZE;
+
+    public LedgerRepository(DataSource dataSource) {
+        this.template = new JdbcTemplate(dataSource);
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive batchSize=" + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 이체를 원장에 추가한다 (batchSize 단위로 executeBatch)
+     * 잔액 검증은 하지 않는다. 호출하는 쪽에서 출금 계좌의 잔액을 확인해야 한다
+     */
+    public void append(List<LedgerPosting> postings) {
+        String sql = "insert into transfer_ledger(from_id, to_id, money) values (?,?,?)";
+        template.batchUpdate(sql, postings, batchSize, (ps, posting) -> {
+            ps.setString(1, posting.getFromId());
+            ps.setString(2, posting.getToId());
+            ps.setInt(3, posting.getMoney());
+        });
+    }
+
+    /**
+     * @throws NoSuchElementException 회원이 없을때
+     */
+    public int balanceOf(String memberId) {
+        Integer balance = balancesOf(List.of(memberId)).get(memberId);
+        if (balance == null) {
+            throw new NoSuchElementException("member not found memberId=" + memberId);
+        }
+        return balance;
+    }
+
+    /**
+     * @return member_id -> 현재 잔액 (없는 회원은 빠진다)
+     */
+    public Map<String, Integer> balancesOf(Collection<String> memberIds) {
+        List<String> ids = memberIds.stream().distinct().sorted().toList();
+        Map<String, Integer> balances = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<String> chunk = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            String sql = "select m.member_id, m.money"
+                    + " + coalesce((select sum(l.money) from transfer_ledger l where l.to_id = m.member_id and l.compacted = false), 0)"
+                    + " - coalesce((select sum(l.money) from transfer_ledger l where l.from_id = m.member_id and l.compacted = false), 0)"
+                    + " from member m where m.member_id in (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+            template.query(sql, rs -> {
+                balances.put(rs.getString(1), rs.getInt(2));
+            }, chunk.toArray());
+        }
+        return balances;
+    }
+
+    /**
+     * 회원의 원장 이력 (최근 것부터 limit 건)
+     */
+    public List<LedgerEntry> findEntries(String memberId, int limit) {
+        MemberPage.validateLimit(limit);
+        String sql = "select * from transfer_ledger where from_id = ? or to_id = ? order by entry_id desc limit ?";
+        return template.query(sql, entryRowMapper(), memberId, memberId, limit);
+    }
+
+    /**
+     * 아직 합치지 않은 원장 수
+     */
+    public long countPending() {
+        Long count = template.queryForObject("select count(*) from transfer_ledger where compacted = false", Long.class);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * 합치지 않은 원장을 오래된 것부터 최대 limit 건 모아서 member.money 에 더한다
+     * 트랜잭션 안에서 호출해야 한다 (잔액 반영과 원장 표시가 함께 커밋되어야 한다)
+     * 계좌별로 합계를 내서 member_id 순으로 한번의 배치로 반영한다 (원장 건수가 아니라 계좌 수 만큼만 update)
+     * @return 합친 원장 수
+     */
+    public int compact(int limit) {
+        MemberPage.validateLimit(limit);
+        String select = "select entry_id, from_id, to_id, money from transfer_ledger where compacted = false order by entry_id limit ?";
+        List<Long> entryIds = new ArrayList<>();
+        Map<String, Integer> deltas = new TreeMap<>(); //member_id 순으로 정렬 -> 항상 같은 순서로 row 락을 잡는다
+        template.query(select, rs -> {
+            entryIds.add(rs.getLong("entry_id"));
+            int money = rs.getInt("money");
+            deltas.merge(rs.getString("from_id"), -money, Integer::sum);
+            deltas.merge(rs.getString("to_id"), money, Integer::sum);
+        }, limit);
+        if (entryIds.isEmpty()) {
+            return 0;
+        }
+
+        String mark = "update transfer_ledger set compacted = true where entry_id = ? and compacted = false";
+        int[][] marked = template.batchUpdate(mark, entryIds, batchSize, (ps, entryId) -> ps.setLong(1, entryId));
+        for (int[] counts : marked) {
+            for (int count : counts) {
+                if (count == 0) {
+                    //다른 compact() 가 먼저 합쳤다. 두번 더하지 않도록 트랜잭션을 롤백해야 한다
+                    throw new IllegalStateException("ledger entries already compacted by another compaction");
+                }
+            }
+        }
+
+        String apply = "update member set money = money + ?, version = version + 1 where member_id=?";
+        List<Map.Entry<String, Integer>> changed = deltas.entrySet().stream().filter(e -> e.getValue() != 0).toList();
+        template.batchUpdate(apply, changed, batchSize, (ps, delta) -> {
+            ps.setInt(1, delta.getValue());
+            ps.setString(2, delta.getKey());
+        });
+        log.debug("compact entries={}, members={}", entryIds.size(), changed.size());
+        return entryIds.size();
+    }
+
+    private RowMapper<LedgerEntry> entryRowMapper() {
+        return (rs, rowNum) -> new LedgerEntry(
+                rs.getLong("entry_id"),
+                rs.getString("from_id"),
+                rs.getString("to_id"),
+                rs.getInt("money"),
+                rs.getTimestamp("created_at").toLocalDateTime(),
+                rs.getBoolean("compacted"));
+    }
+}
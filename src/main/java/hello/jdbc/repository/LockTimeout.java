@@ -0,0 +1,125 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * select ... for update 의 락 대기 시간 적용
+ * H2 는 락 대기를 queryTimeout 이 아니라 세션의 LOCK_TIMEOUT(밀리초, 기본 1초) 으로 끊는다
+ * -> 같은 커넥션에서 SET LOCK_TIMEOUT 후 조회하고, 끝나면 원래 값으로 되돌린다 (커넥션 풀로 돌아가는 세션에 남기지 않는다)
+ *    되돌리지 못한 커넥션은 풀에서 제거한다
+ * H2 가 아니면 JDBC queryTimeout(초 단위로 올림) 을 사용한다
+ */
+@Slf4j
+abstract class LockTimeout {
+
+    /**
+     * @param lockTimeout null 이면 드라이버 기본값
+     */
+    static <T> List<T> query(Connection con, DataSource dataSource, Duration lockTimeout,
+                             String sql, Object[] args, RowMapper<T> rowMapper) throws SQLException {
+        boolean h2 = lockTimeout != null && isH2(con);
+        long previous = h2 ? current(con) : 0;
+        if (h2) {
+            set(con, lockTimeout.toMillis());
+        }
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        Throwable failure = null;
+        try {
+            pstmt = con.prepareStatement(sql);
+            if (lockTimeout != null && !h2) {
+                pstmt.setQueryTimeout((int) Math.min(Integer.MAX_VALUE, (lockTimeout.toMillis() + 999) / 1000));
+            }
+            DataSourceUtils.applyTransactionTimeout(pstmt, dataSource); //트랜잭션 남은 시간이 더 짧으면 그것을 사용
+            for (int i = 0; i < args.length; i++) {
+                pstmt.setObject(i + 1, args[i]);
+            }
+            rs = pstmt.executeQuery();
+            List<T> result = new ArrayList<>();
+            int rowNum = 0;
+            while (rs.next()) {
+                result.add(rowMapper.mapRow(rs, rowNum++));
+            }
+            return result;
+        } catch (SQLException | RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            JdbcUtils.closeResultSet(rs);
+            JdbcUtils.closeStatement(pstmt);
+            if (h2) {
+                restore(con, dataSource, previous, failure);
+            }
+        }
+    }
+
+    /**
+     * 되돌리지 못하면 조회 중에 난 예외(락 타임아웃 등)를 가리지 않도록 그 예외에 suppressed 로 붙인다 (조회가 성공했으면 예외)
+     * 바뀐 LOCK_TIMEOUT 이 남은 커넥션은 다시 사용하지 않도록 버린다
+     */
+    private static void restore(Connection con, DataSource dataSource, long previous, Throwable failure) throws SQLException {
+        try {
+            set(con, previous);
+        } catch (SQLException | RuntimeException e) {
+            discard(con, dataSource);
+            if (failure == null) {
+                throw e;
+            }
+            failure.addSuppressed(e);
+            log.warn("failed to restore lock_timeout={}, connection discarded", previous, e);
+        }
+    }
+
+    /**
+     * 히카리 풀이면 풀에서 제거하고(evictConnection, 히카리 커넥션이 아니면 무시된다), 물리 커넥션도 abort 한다
+     * 트랜잭션 중이면 이후의 커밋/롤백은 실패한다 (이미 실패한 조회이거나, 되돌리기 실패를 던지므로 롤백된다)
+     */
+    private static void discard(Connection con, DataSource dataSource) {
+        try {
+            if (dataSource != null && dataSource.isWrapperFor(HikariDataSource.class)) {
+                dataSource.unwrap(HikariDataSource.class).evictConnection(con);
+            }
+            con.abort(Runnable::run);
+        } catch (SQLException | RuntimeException e) {
+            log.warn("failed to discard connection", e);
+        }
+    }
+
+    static void validate(Duration lockTimeout) {
+        if (lockTimeout.isNegative()) {
+            throw new IllegalArgumentException("lockTimeout must not be negative lockTimeout=" + lockTimeout);
+        }
+    }
+
+    private static boolean isH2(Connection con) throws SQLException {
+        return "H2".equals(con.getMetaData().getDatabaseProductName());
+    }
+
+    private static long current(Connection con) throws SQLException {
+        try (Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("call lock_timeout()")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static void set(Connection con, long millis) throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("set lock_timeout " + Math.min(Integer.MAX_VALUE, millis));
+        }
+    }
+}
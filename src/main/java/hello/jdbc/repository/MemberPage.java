@@ -0,0 +1,38 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * 키셋 페이지 조회 결과
+ * nextKey: 다음 페이지를 조회할때 넘겨줄 키 (마지막 페이지면 null)
+ */
+@Value
+public class MemberPage {
+    List<Member> members;
+    String nextKey;
+
+    public boolean hasNext() {
+        return nextKey != null;
+    }
+
+    public static void validateLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive limit=" + limit);
+        }
+    }
+
+    /**
+     * limit + 1 건을 조회한 결과로 페이지를 만든다
+     * 한건이 더 조회되었으면 다음 페이지가 있다는 뜻이다 (count 쿼리 없이 판단)
+     */
+    public static MemberPage of(List<Member> rows, int limit) {
+        if (rows.size() <= limit) {
+            return new MemberPage(List.copyOf(rows), null);
+        }
+        List<Member> members = List.copyOf(rows.subList(0, limit));
+        return new MemberPage(members, members.get(limit - 1).getMemberId());
+    }
+}
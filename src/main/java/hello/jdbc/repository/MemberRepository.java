@@ -3,13 +3,109 @@ package hello.jdbc.repository;
 import hello.jdbc.domain.Member;
 
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
 
 public interface MemberRepository {
+
+    /**
+     * 배치 메서드에서 한번의 executeBatch 로 전송할 기본 row 수
+     */
+    int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * 스트림 조회에서 한번의 왕복으로 가져올 기본 row 수
+     */
+    int DEFAULT_FETCH_SIZE = 500;
+
     Member save(Member member);
 
     Member findById(String memberId);
 
+    /**
+     * 여러 회원을 member_id 순으로 한번에 조회한다 (없는 회원은 결과에서 빠진다)
+     */
+    List<Member> findAllById(Collection<String> memberIds);
+
+    /**
+     * 비관적 락 - select ... where member_id = ? for update
+     * 트랜잭션 안에서 호출해야 한다. 커밋/롤백 할때까지 다른 트랜잭션은 이 회원을 변경하거나 락을 걸수 없다.
+     * 락 대기 시간은 구현체의 lockTimeout 으로 제한한다 (넘으면 CannotAcquireLockException 등 스프링 예외)
+     */
+    Member findByIdForUpdate(String memberId);
+
+    /**
+     * 여러 회원을 member_id 순으로 한번에 락을 건다 - select ... where member_id in (...) order by member_id for update
+     * 인자 순서와 관계없이 항상 같은 순서로 락을 잡으므로 A->B, B->A 이체가 동시에 실행되어도 데드락이 생기지 않는다
+     */
+    List<Member> findAllByIdForUpdate(Collection<String> memberIds);
+
     void update(String memberId, int money);
 
     void delete(String memberId);
+
+    /**
+     * 조회 없이 DB 에서 바로 잔액을 변경한다 (money = money + ?)
+     * 잔액을 바꾸는 메서드는 모두 version 도 1 증가시킨다 (낙관적 락으로 읽은 쪽이 변경을 알수 있도록)
+     * @return 회원이 없으면 false
+     */
+    boolean addMoney(String memberId, int delta);
+
+    /**
+     * 잔액이 amount 이상일때만 차감한다 (money >= ? 조건)
+     * @return 회원이 없거나 잔액이 부족하면 false
+     */
+    boolean withdrawIfSufficient(String memberId, int amount);
+
+    /**
+     * 배치 메서드
+     * addBatch 로 모아서 batchSize 단위로 executeBatch 한다 (row 마다 왕복하지 않는다)
+     * 반환값은 입력 순서대로 각 row 의 영향받은 row 수
+     */
+    int[] saveAll(List<Member> members);
+
+    int[] updateAll(List<Member> members);
+
+    int[] deleteAll(List<String> memberIds);
+
+    /**
+     * 낙관적 락 - 조회할때 읽은 version 이 그대로일때만 변경하고 version 을 1 증가시킨다
+     * update member set money=?, version=version+1 where member_id=? and version=?
+     * 성공하면 member 의 version 도 증가한다
+     * @throws org.springframework.dao.OptimisticLockingFailureException 다른 트랜잭션이 먼저 변경했거나 회원이 없을때
+     */
+    void updateWithVersion(Member member);
+
+    /**
+     * updateWithVersion 의 배치 버전 - 하나라도 version 이 맞지 않으면 예외 (호출한 트랜잭션을 롤백해야 한다)
+     */
+    int[] updateAllWithVersion(List<Member> members);
+
+    /**
+     * 스트림 조회
+     * 열린 ResultSet 을 커서로 fetchSize 만큼씩 읽으므로 row 수와 관계없이 메모리 사용량이 일정하다
+     * 커넥션을 스트림이 잡고 있으므로 반드시 close() 해야 한다 (try-with-resources)
+     * 트랜잭션 안에서 호출하면 트랜잭션의 커넥션을 사용한다
+     */
+    Stream<Member> streamAll();
+
+    /**
+     * @param whereClause 조건절 예) "money >= ?" (값은 반드시 ? 로 바인딩한다)
+     */
+    Stream<Member> streamWhere(String whereClause, Object... args);
+
+    /**
+     * 키셋(seek) 페이지 조회 - where member_id > ? order by member_id limit ?
+     * OFFSET 처럼 앞의 row 를 읽고 버리지 않고 PK 인덱스에서 바로 시작 위치를 찾으므로 몇번째 페이지든 비용이 같다
+     * @param afterMemberId 이전 페이지의 nextKey (첫 페이지는 null)
+     */
+    MemberPage findPage(String afterMemberId, int limit);
+
+    /**
+     * 역방향 키셋 페이지 조회 - where member_id < ? order by member_id desc limit ?
+     * 결과는 member_id 내림차순
+     * @param beforeMemberId 이전 페이지의 nextKey (마지막 회원부터 조회하려면 null)
+     */
+    MemberPage findPageBefore(String beforeMemberId, int limit);
 }
@@ -18,7 +18,7 @@ import java.util.NoSuchElementException;
  * rs.getString("member_id) 현재 커서가 가리키고 있는 row 의 member_id 를 반환한다.
  */
 @Slf4j
-public class MemberRepositoryV0 {
+public class MemberRepositoryV0 implements MemberRepositoryEx {
 
     public Member save(Member member) throws SQLException {
         String sql = "insert into member(member_id, money) values (?,?)";
@@ -17,7 +17,7 @@ import java.util.NoSuchElementException;
  * 제공해서 커넥션을 편리하게 Close() 리소스 반환을 할수 있다.
  */
 @Slf4j
-public class MemberRepositoryV1 {
+public class MemberRepositoryV1 implements MemberRepositoryEx {
 
     private final DataSource dataSource;
 
@@ -18,7 +18,7 @@ import java.util.NoSuchElementException;
  * JDBC - ConnectionParam
  */
 @Slf4j
-public class MemberRepositoryV2 {
+public class MemberRepositoryV2 implements MemberRepositoryEx {
 
     private final DataSource dataSource;
 
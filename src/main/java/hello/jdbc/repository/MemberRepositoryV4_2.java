@@ -1,18 +1,29 @@
 package hello.jdbc.repository;
 
+import hello.jdbc.connection.ConnectionLookup;
 import hello.jdbc.domain.Member;
 import hello.jdbc.repository.ex.MyDbException;
 import lombok.AllArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
 import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
 import org.springframework.jdbc.support.SQLExceptionTranslator;
 
 import javax.sql.DataSource;
 import java.sql.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * SQLExceptionTranslator 추가
@@ -29,10 +40,45 @@ public class MemberRepositoryV4_2 implements MemberRepository {
 
     private final DataSource dataSource;
     private final SQLExceptionTranslator sqlExceptionTranslator;//SQLErrorCodeSQLExceptionTranslator 를 추상화 한것이다
+    private final ConnectionLookup connectionLookup;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private Duration lockTimeout; //null 이면 드라이버 기본값
 
     public MemberRepositoryV4_2(DataSource dataSource) {
+        this(dataSource, ConnectionLookup.SYNCHRONIZATION);
+    }
+
+    /**
+     * @param connectionLookup 트랜잭션 커넥션을 찾는 방법 (ScopedConnectionContext 를 쓰려면 ConnectionLookup.SCOPED)
+     */
+    public MemberRepositoryV4_2(DataSource dataSource, ConnectionLookup connectionLookup) {
         this.dataSource = dataSource;
         this.sqlExceptionTranslator = new SQLErrorCodeSQLExceptionTranslator(dataSource);
+        this.connectionLookup = connectionLookup;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive batchSize=" + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("fetchSize must be positive fetchSize=" + fetchSize);
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * select ... for update 가 락을 기다리는 최대 시간 (H2 는 세션 LOCK_TIMEOUT, 밀리초 단위)
+     * 0 이면 드라이버 기본값 (H2 는 URL 의 LOCK_TIMEOUT, 기본 1초)
+     */
+    public void setLockTimeout(Duration lockTimeout) {
+        LockTimeout.validate(lockTimeout);
+        this.lockTimeout = lockTimeout.isZero() ? null : lockTimeout;
     }
 
     @Override
@@ -69,10 +115,7 @@ public class MemberRepositoryV4_2 implements MemberRepository {
             pstmt.setString(1, memberId);
             rs = pstmt.executeQuery();
             if (rs.next()) {
-                Member member = new Member();
-                member.setMemberId(rs.getString("member_id"));
-                member.setMoney(rs.getInt("money"));
-                return member;
+                return mapMember(rs);
             } else {
                 throw new NoSuchElementException("member not found memberId=" + memberId);
             }
@@ -83,9 +126,178 @@ public class MemberRepositoryV4_2 implements MemberRepository {
         }
     }
 
+    /**
+     * IN 절의 파라메터 수가 너무 커지지 않도록 batchSize 단위로 나누어 조회한다
+     * 정렬된 id 를 나누므로 전체 결과도 member_id 순이다
+     */
+    @Override
+    public List<Member> findAllById(Collection<String> memberIds) {
+        List<String> ids = memberIds.stream().distinct().sorted().toList();
+        List<Member> result = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            result.addAll(findChunk(ids.subList(from, Math.min(from + batchSize, ids.size()))));
+        }
+        return result;
+    }
+
+    private List<Member> findChunk(List<String> memberIds) {
+        String sql = "select * from member where member_id in (" + placeholders(memberIds.size()) + ") order by member_id";
+        return queryMembers("findAllById", sql, memberIds.toArray());
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        String sql = "select * from member where member_id = ? for update";
+        List<Member> members = lockMembers("findByIdForUpdate", sql, memberId);
+        if (members.isEmpty()) {
+            throw new NoSuchElementException("member not found memberId=" + memberId);
+        }
+        return members.get(0);
+    }
+
+    /**
+     * 정렬된 id 를 batchSize 단위로 나누어 앞에서 부터 락을 건다 -> 어떤 트랜잭션이든 같은 순서로 락을 잡는다
+     */
+    @Override
+    public List<Member> findAllByIdForUpdate(Collection<String> memberIds) {
+        List<String> ids = memberIds.stream().distinct().sorted().toList();
+        List<Member> result = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<String> chunk = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            String sql = "select * from member where member_id in (" + placeholders(chunk.size()) + ") order by member_id for update";
+            result.addAll(lockMembers("findAllByIdForUpdate", sql, chunk.toArray()));
+        }
+        return result;
+    }
+
+    @Override
+    public MemberPage findPage(String afterMemberId, int limit) {
+        MemberPage.validateLimit(limit);
+        if (afterMemberId == null) {
+            return MemberPage.of(queryMembers("findPage", "select * from member order by member_id limit ?", limit + 1), limit);
+        }
+        String sql = "select * from member where member_id > ? order by member_id limit ?";
+        return MemberPage.of(queryMembers("findPage", sql, afterMemberId, limit + 1), limit);
+    }
+
+    @Override
+    public MemberPage findPageBefore(String beforeMemberId, int limit) {
+        MemberPage.validateLimit(limit);
+        if (beforeMemberId == null) {
+            return MemberPage.of(queryMembers("findPageBefore", "select * from member order by member_id desc limit ?", limit + 1), limit);
+        }
+        String sql = "select * from member where member_id < ? order by member_id desc limit ?";
+        return MemberPage.of(queryMembers("findPageBefore", sql, beforeMemberId, limit + 1), limit);
+    }
+
+    private List<Member> queryMembers(String task, String sql, Object... args) {
+        return selectMembers(task, sql, args);
+    }
+
+    private List<Member> lockMembers(String task, String sql, Object... args) {
+        Connection con = null;
+        try {
+            con = getConnection();
+            return LockTimeout.query(con, dataSource, lockTimeout, sql, args, (rs, rowNum) -> mapMember(rs));
+        } catch (SQLException e) {
+            throw sqlExceptionTranslator.translate(task, sql, e);
+        } finally {
+            close(con, null, null);
+        }
+    }
+
+    private List<Member> selectMembers(String task, String sql, Object[] args) {
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            for (int i = 0; i < args.length; i++) {
+                pstmt.setObject(i + 1, args[i]);
+            }
+            rs = pstmt.executeQuery();
+            List<Member> members = new ArrayList<>();
+            while (rs.next()) {
+                members.add(mapMember(rs));
+            }
+            return members;
+        } catch (SQLException e) {
+            throw sqlExceptionTranslator.translate(task, sql, e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    @Override
+    public Stream<Member> streamAll() {
+        return stream("streamAll", "select * from member order by member_id");
+    }
+
+    @Override
+    public Stream<Member> streamWhere(String whereClause, Object... args) {
+        return stream("streamWhere", "select * from member where " + whereClause + " order by member_id", args);
+    }
+
+    /**
+     * ResultSet 을 열어둔 채로 Stream 을 반환한다. rs.next() 는 스트림을 소비할때 호출된다
+     * 리소스 정리(ResultSet, Statement, 커넥션 반환)는 Stream.close() 에서 한다
+     */
+    private Stream<Member> stream(String task, String sql, Object... args) {
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(fetchSize); //한번의 왕복으로 가져올 row 수
+            for (int i = 0; i < args.length; i++) {
+                pstmt.setObject(i + 1, args[i]);
+            }
+            rs = pstmt.executeQuery();
+        } catch (SQLException e) {
+            close(con, pstmt, rs);
+            throw sqlExceptionTranslator.translate(task, sql, e);
+        }
+
+        Connection streamCon = con;
+        Statement streamStmt = pstmt;
+        ResultSet streamRs = rs;
+        Spliterator<Member> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Member> action) {
+                try {
+                    if (!streamRs.next()) {
+                        return false;
+                    }
+                    action.accept(mapMember(streamRs));
+                    return true;
+                } catch (SQLException e) {
+                    throw sqlExceptionTranslator.translate(task, sql, e);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false)
+                .onClose(() -> close(streamCon, streamStmt, streamRs));
+    }
+
+    private Member mapMember(ResultSet rs) throws SQLException {
+        Member member = new Member();
+        member.setMemberId(rs.getString("member_id"));
+        member.setMoney(rs.getInt("money"));
+        member.setVersion(rs.getLong("version"));
+        return member;
+    }
+
+    private String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
     @Override
     public void update(String memberId, int money) {
-        String sql = "update member set money=? where member_id=?";  //개별행을 where 로 찾은 후 set 으로 갱신하기
+        String sql = "update member set money=?, version=version+1 where member_id=?";  //개별행을 where 로 찾은 후 set 으로 갱신하기
 
         Connection con = null;
         PreparedStatement pstmt = null;
@@ -124,6 +336,138 @@ public class MemberRepositoryV4_2 implements MemberRepository {
         }
     }
 
+    @Override
+    public boolean addMoney(String memberId, int delta) {
+        String sql = "update member set money = money + ?, version = version + 1 where member_id=?"; //읽고 쓰는 대신 DB 에서 원자적으로 변경
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setInt(1, delta);
+            pstmt.setString(2, memberId);
+            return pstmt.executeUpdate() == 1;
+        } catch (SQLException e) {
+            throw sqlExceptionTranslator.translate("addMoney", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    @Override
+    public boolean withdrawIfSufficient(String memberId, int amount) {
+        String sql = "update member set money = money - ?, version = version + 1 where member_id=? and money >= ?"; //잔액이 부족하면 0 row
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setInt(1, amount);
+            pstmt.setString(2, memberId);
+            pstmt.setInt(3, amount);
+            return pstmt.executeUpdate() == 1;
+        } catch (SQLException e) {
+            throw sqlExceptionTranslator.translate("withdrawIfSufficient", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    @Override
+    public int[] saveAll(List<Member> members) {
+        String sql = "insert into member(member_id, money) values (?,?)";
+        return executeBatch("saveAll", sql, members, (pstmt, member) -> {
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+        });
+    }
+
+    @Override
+    public int[] updateAll(List<Member> members) {
+        String sql = "update member set money=?, version=version+1 where member_id=?";
+        return executeBatch("updateAll", sql, members, (pstmt, member) -> {
+            pstmt.setInt(1, member.getMoney());
+            pstmt.setString(2, member.getMemberId());
+        });
+    }
+
+    @Override
+    public void updateWithVersion(Member member) {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setInt(1, member.getMoney());
+            pstmt.setString(2, member.getMemberId());
+            pstmt.setLong(3, member.getVersion());
+            VersionCheck.check(member, pstmt.executeUpdate());
+        } catch (SQLException e) {
+            throw sqlExceptionTranslator.translate("updateWithVersion", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    @Override
+    public int[] updateAllWithVersion(List<Member> members) {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
+        int[] result = executeBatch("updateAllWithVersion", sql, members, (pstmt, member) -> {
+            pstmt.setInt(1, member.getMoney());
+            pstmt.setString(2, member.getMemberId());
+            pstmt.setLong(3, member.getVersion());
+        });
+        VersionCheck.check(members, result);
+        return result;
+    }
+
+    @Override
+    public int[] deleteAll(List<String> memberIds) {
+        String sql = "delete from member where member_id=?";
+        return executeBatch("deleteAll", sql, memberIds, (pstmt, memberId) -> pstmt.setString(1, memberId));
+    }
+
+    /**
+     * 하나의 PreparedStatement 에 addBatch 로 파라메터를 모은 후 batchSize 마다 executeBatch 로 한번에 전송한다
+     * 반환값은 입력 순서대로 각 row 의 영향받은 row 수
+     */
+    private <T> int[] executeBatch(String task, String sql, List<T> items, ParameterizedPreparedStatementSetter<T> setter) {
+        int[] result = new int[items.size()];
+        if (items.isEmpty()) {
+            return result;
+        }
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            int offset = 0;
+            for (int i = 0; i < items.size(); i++) {
+                setter.setValues(pstmt, items.get(i));
+                pstmt.addBatch();
+                if ((i + 1) % batchSize == 0 || i == items.size() - 1) {
+                    int[] counts = pstmt.executeBatch(); //모아둔 row 들을 한번의 왕복으로 전송한다
+                    System.arraycopy(counts, 0, result, offset, counts.length);
+                    offset += counts.length;
+                }
+            }
+            return result;
+        } catch (SQLException e) {
+            throw sqlExceptionTranslator.translate(task, sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
     /**
      *      * 트랜잭션을 사용하기 위해 동기화된 커넥션은 커넥션을 닫지 않고 그대로 유지해준다.
      *      * 트랜잭션 동기화 매니저가 관리하는 커넥션이 없는 경우 해당 커넥션을 닫는다.
@@ -131,8 +475,8 @@ public class MemberRepositoryV4_2 implements MemberRepository {
     private void close(Connection con, Statement stmt, ResultSet rs) {
         JdbcUtils.closeResultSet(rs);
         JdbcUtils.closeStatement(stmt);
-        //주의! 트랜잭션 동기화를 사용하려면 DataSourceUtils 를 사용해야 한다.
-        DataSourceUtils.releaseConnection(con, dataSource);
+        //주의! 트랜잭션 동기화를 사용하려면 DataSourceUtils 를 사용해야 한다. (ConnectionLookup.SYNCHRONIZATION)
+        connectionLookup.releaseConnection(con, dataSource);
     }
 
     /**
@@ -141,8 +485,8 @@ public class MemberRepositoryV4_2 implements MemberRepository {
      * TransactionSynchronizationManager 가 관리하는 커넥션이 없다면 새로운 커넥션을 생성해서 반환한다.
      */
     private Connection getConnection() throws SQLException {
-        //주의! 트랜잭션 동기화를 사용하려면 DataSourceUtils 를 사용해야 한다.
-        Connection con = DataSourceUtils.getConnection(dataSource);
+        //주의! 트랜잭션 동기화를 사용하려면 DataSourceUtils 를 사용해야 한다. (ConnectionLookup.SYNCHRONIZATION)
+        Connection con = connectionLookup.getConnection(dataSource);
         log.info("get connection={}, class={}", con, con.getClass());
         return con;
     }
@@ -2,6 +2,9 @@ package hello.jdbc.repository;
 
 import hello.jdbc.domain.Member;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.datasource.DataSourceUtils;
@@ -11,7 +14,14 @@ import org.springframework.jdbc.support.SQLExceptionTranslator;
 
 import javax.sql.DataSource;
 import java.sql.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.stream.Stream;
 
 /**
  * JdbcTemplate 사용
@@ -22,11 +32,38 @@ import java.util.NoSuchElementException;
 public class MemberRepositoryV5 implements MemberRepository {
 
     private final JdbcTemplate template;
+    private Duration lockTimeout; //select ... for update 의 락 대기 시간, null 이면 드라이버 기본값
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
 
     public MemberRepositoryV5(DataSource dataSource) {
         this.template = new JdbcTemplate(dataSource);
     }
 
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive batchSize=" + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("fetchSize must be positive fetchSize=" + fetchSize);
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * select ... for update 가 락을 기다리는 최대 시간 (H2 는 세션 LOCK_TIMEOUT, 밀리초 단위)
+     * 트랜잭션 타임아웃이 더 짧으면 남은 트랜잭션 시간을 사용한다
+     * 0 이면 드라이버 기본값 (H2 는 URL 의 LOCK_TIMEOUT, 기본 1초)
+     */
+    public void setLockTimeout(Duration lockTimeout) {
+        LockTimeout.validate(lockTimeout);
+        this.lockTimeout = lockTimeout.isZero() ? null : lockTimeout;
+    }
+
     @Override
     public Member save(Member member) {
         String sql = "insert into member(member_id, money) values (?,?)";
@@ -41,18 +78,112 @@ public class MemberRepositoryV5 implements MemberRepository {
         return  template.queryForObject(sql, memberRowMapper(), memberId);//한건 조회하는것.
     }
 
+    /**
+     * IN 절의 파라메터 수가 너무 커지지 않도록 batchSize 단위로 나누어 조회한다
+     */
+    @Override
+    public List<Member> findAllById(Collection<String> memberIds) {
+        List<String> ids = memberIds.stream().distinct().sorted().toList();
+        List<Member> result = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<String> chunk = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            String sql = "select * from member where member_id in (" + placeholders(chunk.size()) + ") order by member_id";
+            result.addAll(template.query(sql, memberRowMapper(), chunk.toArray()));
+        }
+        return result;
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        String sql = "select * from member where member_id = ? for update";
+        return DataAccessUtils.requiredSingleResult(lock(sql, memberId));
+    }
+
+    /**
+     * 정렬된 id 를 batchSize 단위로 나누어 앞에서 부터 락을 건다 -> 어떤 트랜잭션이든 같은 순서로 락을 잡는다
+     */
+    @Override
+    public List<Member> findAllByIdForUpdate(Collection<String> memberIds) {
+        List<String> ids = memberIds.stream().distinct().sorted().toList();
+        List<Member> result = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<String> chunk = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            String sql = "select * from member where member_id in (" + placeholders(chunk.size()) + ") order by member_id for update";
+            result.addAll(lock(sql, chunk.toArray()));
+        }
+        return result;
+    }
+
+    /**
+     * 락 대기 시간을 조회하는 커넥션에 걸어야 하므로 ConnectionCallback 으로 같은 커넥션에서 실행한다
+     */
+    private List<Member> lock(String sql, Object... args) {
+        return template.execute((ConnectionCallback<List<Member>>) con ->
+                LockTimeout.query(con, template.getDataSource(), lockTimeout, sql, args, memberRowMapper()));
+    }
+
+    @Override
+    public MemberPage findPage(String afterMemberId, int limit) {
+        MemberPage.validateLimit(limit);
+        if (afterMemberId == null) {
+            String sql = "select * from member order by member_id limit ?";
+            return MemberPage.of(template.query(sql, memberRowMapper(), limit + 1), limit);
+        }
+        String sql = "select * from member where member_id > ? order by member_id limit ?";
+        return MemberPage.of(template.query(sql, memberRowMapper(), afterMemberId, limit + 1), limit);
+    }
+
+    @Override
+    public MemberPage findPageBefore(String beforeMemberId, int limit) {
+        MemberPage.validateLimit(limit);
+        if (beforeMemberId == null) {
+            String sql = "select * from member order by member_id desc limit ?";
+            return MemberPage.of(template.query(sql, memberRowMapper(), limit + 1), limit);
+        }
+        String sql = "select * from member where member_id < ? order by member_id desc limit ?";
+        return MemberPage.of(template.query(sql, memberRowMapper(), beforeMemberId, limit + 1), limit);
+    }
+
+    @Override
+    public Stream<Member> streamAll() {
+        return stream("select * from member order by member_id");
+    }
+
+    @Override
+    public Stream<Member> streamWhere(String whereClause, Object... args) {
+        return stream("select * from member where " + whereClause + " order by member_id", args);
+    }
+
+    /**
+     * queryForStream 은 ResultSet 을 열어둔 채로 Stream 을 반환하고, Stream.close() 때 커넥션을 반환한다
+     * fetchSize 는 스트림 조회에만 적용하기 위해 PreparedStatementCreator 에서 지정한다
+     */
+    private Stream<Member> stream(String sql, Object... args) {
+        return template.queryForStream(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            new ArgumentPreparedStatementSetter(args).setValues(ps);
+            return ps;
+        }, memberRowMapper());
+    }
+
+    private String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
     private RowMapper<Member> memberRowMapper() {
         return(rs, rowNum)->{
             Member member = new Member();
             member.setMemberId(rs.getString("member_id"));
             member.setMoney(rs.getInt("money"));
+            member.setVersion(rs.getLong("version"));
             return member;
         };
     }
 
     @Override
     public void update(String memberId, int money) {
-        String sql = "update member set money=? where member_id=?";  //개별행을 where 로 찾은 후 set 으로 갱신하기
+        String sql = "update member set money=?, version=version+1 where member_id=?";  //개별행을 where 로 찾은 후 set 으로 갱신하기
         template.update(sql, money, memberId);
     }
 
@@ -62,4 +193,66 @@ public class MemberRepositoryV5 implements MemberRepository {
         template.update(sql, memberId);
     }
 
+    @Override
+    public boolean addMoney(String memberId, int delta) {
+        String sql = "update member set money = money + ?, version = version + 1 where member_id=?"; //읽고 쓰는 대신 DB 에서 원자적으로 변경
+        return template.update(sql, delta, memberId) == 1;
+    }
+
+    @Override
+    public boolean withdrawIfSufficient(String memberId, int amount) {
+        String sql = "update member set money = money - ?, version = version + 1 where member_id=? and money >= ?"; //잔액이 부족하면 0 row
+        return template.update(sql, amount, memberId, amount) == 1;
+    }
+
+    /**
+     * batchUpdate 는 batchSize 단위로 나누어 executeBatch 하고, 묶음별 결과를 int[][] 로 반환한다
+     * 예외는 JdbcTemplate 이 가지고 있는 SQLExceptionTranslator 로 변환된다
+     */
+    @Override
+    public int[] saveAll(List<Member> members) {
+        String sql = "insert into member(member_id, money) values (?,?)";
+        return flatten(template.batchUpdate(sql, members, batchSize, (ps, member) -> {
+            ps.setString(1, member.getMemberId());
+            ps.setInt(2, member.getMoney());
+        }));
+    }
+
+    @Override
+    public int[] updateAll(List<Member> members) {
+        String sql = "update member set money=?, version=version+1 where member_id=?";
+        return flatten(template.batchUpdate(sql, members, batchSize, (ps, member) -> {
+            ps.setInt(1, member.getMoney());
+            ps.setString(2, member.getMemberId());
+        }));
+    }
+
+    @Override
+    public void updateWithVersion(Member member) {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
+        VersionCheck.check(member, template.update(sql, member.getMoney(), member.getMemberId(), member.getVersion()));
+    }
+
+    @Override
+    public int[] updateAllWithVersion(List<Member> members) {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
+        int[] result = flatten(template.batchUpdate(sql, members, batchSize, (ps, member) -> {
+            ps.setInt(1, member.getMoney());
+            ps.setString(2, member.getMemberId());
+            ps.setLong(3, member.getVersion());
+        }));
+        VersionCheck.check(members, result);
+        return result;
+    }
+
+    @Override
+    public int[] deleteAll(List<String> memberIds) {
+        String sql = "delete from member where member_id=?";
+        return flatten(template.batchUpdate(sql, memberIds, batchSize, (ps, memberId) -> ps.setString(1, memberId)));
+    }
+
+    private int[] flatten(int[][] counts) {
+        return Arrays.stream(counts).flatMapToInt(Arrays::stream).toArray();
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,491 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.retry.RetryPolicy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * 인기 계좌의 잔액을 여러 row(member_balance_slot) 로 나누어 row 락 경합을 분산하는 MemberRepository 데코레이터
+ * reshard() 로 샤딩한 계좌만 해당된다. 나머지 계좌는 delegate 가 그대로 처리한다 (MemberServiceV4 는 바뀌지 않는다)
+ *
+ * 샤딩된 계좌
+ * - 잔액 = member.money + 슬롯 money 합계, version = member.version + 슬롯 version 합계 (어디가 바뀌든 version 이 증가한다)
+ * - 입금(addMoney) : 무작위 슬롯 하나만 갱신 -> 동시 입금이 서로 다른 row 락을 잡는다
+ * - 출금(withdrawIfSufficient) : 잔액이 충분한 슬롯 하나에서 차감. 없으면 트랜잭션 안에서 member row 와 모든 슬롯을 잠그고 여러 슬롯에서 빌려온다
+ * - 조회 : member row 와 슬롯 합계를 하나의 SQL 로 읽는다 (두번 나누어 읽으면 진행중인 reshard 가 반쯤 보여서 잔액이 두배로 보일수 있다)
+ * - 잔액을 덮어쓰는 메서드(update, updateAll, updateWithVersion, updateAllWithVersion)와 for update 조회는 모든 슬롯을 잠근다 (분산 효과 없음)
+ *   덮어쓰기는 member.money 를 0 으로, 새 잔액을 슬롯에 고르게 나누어 쓴다. 여러 row 를 바꾸므로 트랜잭션 안에서 호출해야 한다
+ *
+ * 락 순서
+ * - 여러 슬롯을 잠그는 쪽(reshard, 빌려오기, 덮어쓰기, for update 조회)은 member row -> 슬롯(slot 순)
+ * - 빠른 입출금은 member row 없이 슬롯 하나만 잠근다. 같은 트랜잭션에서 나중에 member row 를 잠글수 있다 (슬롯 -> member row)
+ * 두 순서가 섞이므로 member row 를 잡은 쪽은 슬롯 락을 기다리지 않는다 (SLOT_LOCK_TIMEOUT)
+ * -> 이 계좌의 락을 기다리는 쪽은 member row 를 기다리는 쪽 뿐이고, member row 를 잡은 쪽은 이 계좌의 슬롯을 기다리지 않으므로
+ *    한 계좌 안에서는 대기가 순환(데드락)하지 않는다. 슬롯이 잠겨 있으면 CannotAcquireLockException 으로 트랜잭션을 롤백해서 member row 를 놓는다
+ *    (트랜잭션 밖에서 호출한 reshard, withdrawIfSufficient 는 여기서 다시 시도하고, 트랜잭션 안이면 @RetryableTransaction 등 호출한 쪽이 다시 시도한다)
+ * 샤딩된 계좌 목록은 메모리에 둔다. 다른 인스턴스에서 reshard 했다면 refresh() 로 다시 읽는다
+ * delegate 는 같은 DataSource 를 사용하고 트랜잭션 동기화를 지원해야 한다 (V3 이후, V5)
+ */
+@Slf4j
+public class ShardedMemberRepository implements MemberRepository {
+
+    public static final int MAX_SLOTS = 64;
+
+    /**
+     * member row 를 잡은 채로 슬롯 락을 기다리는 최대 시간 (H2 가 아니면 queryTimeout 1초로 올림)
+     */
+    static final Duration SLOT_LOCK_TIMEOUT = Duration.ofMillis(1);
+
+    private final MemberRepository delegate;
+    private final JdbcTemplate template;
+    private final TransactionTemplate transactionTemplate;
+    private final RetryPolicy escalationRetry =
+            new RetryPolicy(10, Duration.ofMillis(1), Duration.ofMillis(50), RetryPolicy.retryOn(CannotAcquireLockException.class));
+    private final Map<String, Integer> slotCounts = new ConcurrentHashMap<>();
+
+    public ShardedMemberRepository(MemberRepository delegate, DataSource dataSource) {
+        this.delegate = delegate;
+        this.template = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        refresh();
+    }
+
+    /**
+     * DB 에서 샤딩된 계좌 목록을 다시 읽는다
+     */
+    public void refresh() {
+        Map<String, Integer> loaded = new HashMap<>();
+        template.query("select member_id, count(*) from member_balance_slot group by member_id",
+                rs -> {
+                    loaded.put(rs.getString(1), rs.getInt(2));
+                });
+        slotCounts.keySet().retainAll(loaded.keySet());
+        slotCounts.putAll(loaded);
+    }
+
+    /**
+     * @return 계좌의 슬롯 수 (샤딩되지 않았으면 0)
+     */
+    public int getSlotCount(String memberId) {
+        return slotCounts.getOrDefault(memberId, 0);
+    }
+
+    /**
+     * 계좌를 slots 개로 다시 나눈다 (1 이하면 샤딩 해제). 서비스를 멈추지 않고 실행할수 있다.
+     * member row 와 모든 슬롯을 잠그고 합계를 새 슬롯에 고르게 나눈다. 진행중인 입출금이 있으면 롤백하고 다시 시도한다.
+     * 이미 트랜잭션 안이면 그 트랜잭션에 참여하고(다시 시도하지 않는다), 목록은 커밋 후에 바뀐다
+     */
+    public void reshard(String memberId, int slots) {
+        if (slots < 0 || slots > MAX_SLOTS) {
+            throw new IllegalArgumentException("slots must be between 0 and " + MAX_SLOTS + " slots=" + slots);
+        }
+        inLockingTransaction("reshard", () -> {
+            List<Member> locked = delegate.findAllByIdForUpdate(List.of(memberId));
+            if (locked.isEmpty()) {
+                throw new NoSuchElementException("member not found memberId=" + memberId);
+            }
+            Member member = locked.get(0);
+            SlotTotal current = lockSlots(List.of(memberId)).getOrDefault(memberId, SlotTotal.EMPTY);
+            int total = Math.addExact(member.getMoney(), current.money);
+            long version = member.getVersion() + current.version + 1;
+
+            template.update("delete from member_balance_slot where member_id=?", memberId);
+            int memberMoney = total;
+            if (slots > 1) {
+                List<Object[]> rows = new ArrayList<>(slots);
+                for (int slot = 0; slot < slots; slot++) {
+                    int money = total / slots + (slot == 0 ? total % slots : 0);
+                    rows.add(new Object[]{memberId, slot, money});
+                }
+                template.batchUpdate("insert into member_balance_slot(member_id, slot, money) values (?,?,?)", rows);
+                memberMoney = 0;
+            }
+            //version 은 합산 값보다 커야 한다 (이전에 읽은 version 으로 덮어쓰지 못하도록)
+            template.update("update member set money=?, version=? where member_id=?", memberMoney, version, memberId);
+            log.info("reshard memberId={}, slots={} -> {}, total={}", memberId, current.count, slots, total);
+
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    if (slots > 1) {
+                        slotCounts.put(memberId, slots);
+                    } else {
+                        slotCounts.remove(memberId);
+                    }
+                }
+            });
+            return null;
+        });
+    }
+
+    @Override
+    public Member save(Member member) {
+        return delegate.save(member);
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        if (!isSharded(memberId)) {
+            return delegate.findById(memberId);
+        }
+        Member member = readMerged(List.of(memberId)).get(memberId);
+        return member != null ? member : delegate.findById(memberId); //없으면 delegate 의 예외
+    }
+
+    @Override
+    public List<Member> findAllById(Collection<String> memberIds) {
+        return mergeAll(delegate.findAllById(memberIds), false);
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        Member member = delegate.findByIdForUpdate(memberId);
+        return isSharded(memberId) ? merge(member, lockSlots(List.of(memberId))) : member;
+    }
+
+    @Override
+    public List<Member> findAllByIdForUpdate(Collection<String> memberIds) {
+        return mergeAll(delegate.findAllByIdForUpdate(memberIds), true);
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        SlotTotal total = isSharded(memberId) ? lockSharded(List.of(memberId)).get(memberId) : null;
+        if (total == null) {
+            delegate.update(memberId, money);
+            return;
+        }
+        delegate.update(memberId, 0);
+        spread(memberId, money, total.count);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        template.update("delete from member_balance_slot where member_id=?", memberId);
+        delegate.delete(memberId);
+        slotCounts.remove(memberId);
+    }
+
+    /**
+     * 입금은 무작위 슬롯 하나에 더한다
+     * 슬롯이 없으면(다른 곳에서 샤딩을 해제) 목록을 다시 읽고 member row 에 더한다 (member row 도 잔액의 일부이므로 항상 맞다)
+     */
+    @Override
+    public boolean addMoney(String memberId, int delta) {
+        int slots = getSlotCount(memberId);
+        if (slots > 0 && delta >= 0) {
+            String sql = "update member_balance_slot set money = money + ?, version = version + 1 where member_id=? and slot=?";
+            if (template.update(sql, delta, memberId, ThreadLocalRandom.current().nextInt(slots)) == 1) {
+                return true;
+            }
+            refresh();
+        }
+        return delegate.addMoney(memberId, delta);
+    }
+
+    /**
+     * 1. 잔액이 충분한 슬롯 중 하나를 무작위로 골라서 조건부 차감 (money >= ? 조건이므로 동시에 골라도 음수가 되지 않는다)
+     * 2. 하나로 부족하면 member row 와 슬롯을 모두 잠그고 합계를 확인한 후 member row, 슬롯 순으로 빌려온다
+     *    잠근 후에 차감해야 하므로 트랜잭션 안에서 실행한다 (이미 트랜잭션 안이면 참여한다)
+     */
+    @Override
+    public boolean withdrawIfSufficient(String memberId, int amount) {
+        if (!isSharded(memberId)) {
+            return delegate.withdrawIfSufficient(memberId, amount);
+        }
+        List<Integer> candidates = template.queryForList(
+                "select slot from member_balance_slot where member_id=? and money >= ?", Integer.class, memberId, amount);
+        if (!candidates.isEmpty()) {
+            Collections.rotate(candidates, ThreadLocalRandom.current().nextInt(candidates.size()));
+            String sql = "update member_balance_slot set money = money - ?, version = version + 1 where member_id=? and slot=? and money >= ?";
+            for (Integer slot : candidates) {
+                if (template.update(sql, amount, memberId, slot, amount) == 1) {
+                    return true;
+                }
+            }
+        }
+        return Boolean.TRUE.equals(inLockingTransaction("borrow", () -> borrow(memberId, amount)));
+    }
+
+    /**
+     * 잠근 값을 기준으로 차감하지만, 슬롯 차감에도 money >= ? 조건을 둔다 (0 row 면 예외로 트랜잭션을 롤백한다)
+     */
+    private boolean borrow(String memberId, int amount) {
+        List<Member> locked = delegate.findAllByIdForUpdate(List.of(memberId));
+        if (locked.isEmpty()) {
+            return false;
+        }
+        int memberMoney = locked.get(0).getMoney();
+        List<int[]> slots = lockSlotRows("select slot, money from member_balance_slot where member_id=? order by slot for update",
+                new Object[]{memberId}, (rs, rowNum) -> new int[]{rs.getInt(1), rs.getInt(2)});
+        long total = memberMoney + slots.stream().mapToLong(slot -> slot[1]).sum();
+        if (total < amount) {
+            return false;
+        }
+        int remaining = amount;
+        if (memberMoney > 0) {
+            int take = Math.min(memberMoney, remaining);
+            delegate.addMoney(memberId, -take);
+            remaining -= take;
+        }
+        String sql = "update member_balance_slot set money = money - ?, version = version + 1 where member_id=? and slot=? and money >= ?";
+        for (int i = 0; i < slots.size() && remaining > 0; i++) {
+            int take = Math.min(slots.get(i)[1], remaining);
+            if (take > 0) {
+                if (template.update(sql, take, memberId, slots.get(i)[0], take) != 1) {
+                    throw new IllegalStateException("slot changed while locked memberId=" + memberId + ", slot=" + slots.get(i)[0]);
+                }
+                remaining -= take;
+            }
+        }
+        log.debug("borrow memberId={}, amount={}, slots={}", memberId, amount, slots.size());
+        return true;
+    }
+
+    @Override
+    public int[] saveAll(List<Member> members) {
+        return delegate.saveAll(members);
+    }
+
+    @Override
+    public int[] updateAll(List<Member> members) {
+        Map<String, SlotTotal> totals = lockSharded(shardedIdsOf(members));
+        if (totals.isEmpty()) {
+            return delegate.updateAll(members);
+        }
+        List<Member> memberRows = members.stream()
+                .map(member -> totals.containsKey(member.getMemberId()) ? new Member(member.getMemberId(), 0) : member)
+                .toList();
+        int[] result = delegate.updateAll(memberRows);
+        for (Member member : members) {
+            SlotTotal total = totals.get(member.getMemberId());
+            if (total != null) {
+                spread(member.getMemberId(), member.getMoney(), total.count);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 샤딩된 계좌는 member row 의 version 을 (읽은 version - 현재 슬롯 version 합계) 로 검사한다
+     * 읽은 후에 슬롯에 입출금이 있었다면 슬롯 version 합계가 늘었으므로 0 row -> OptimisticLockingFailureException
+     */
+    @Override
+    public void updateWithVersion(Member member) {
+        if (!isSharded(member.getMemberId())) {
+            delegate.updateWithVersion(member);
+            return;
+        }
+        Map<String, SlotTotal> totals = lockSharded(List.of(member.getMemberId()));
+        updateShardedWithVersion(member, totals);
+    }
+
+    @Override
+    public int[] updateAllWithVersion(List<Member> members) {
+        List<String> sharded = shardedIdsOf(members);
+        if (sharded.isEmpty()) {
+            return delegate.updateAllWithVersion(members);
+        }
+        Map<String, SlotTotal> totals = lockSharded(sharded);
+        List<Member> plain = new ArrayList<>(members.size());
+        for (Member member : members) {
+            if (!totals.containsKey(member.getMemberId())) {
+                plain.add(member);
+            }
+        }
+        delegate.updateAllWithVersion(plain);
+        for (Member member : members) {
+            if (totals.containsKey(member.getMemberId())) {
+                updateShardedWithVersion(member, totals);
+            }
+        }
+        int[] result = new int[members.size()];
+        Arrays.fill(result, 1);
+        return result;
+    }
+
+    private void updateShardedWithVersion(Member member, Map<String, SlotTotal> totals) {
+        SlotTotal total = totals.getOrDefault(member.getMemberId(), SlotTotal.EMPTY);
+        int memberMoney = total.count > 0 ? 0 : member.getMoney();
+        delegate.updateWithVersion(new Member(member.getMemberId(), memberMoney, member.getVersion() - total.version));
+        if (total.count > 0) {
+            spread(member.getMemberId(), member.getMoney(), total.count);
+        }
+        member.setVersion(member.getVersion() + 1);
+    }
+
+    @Override
+    public int[] deleteAll(List<String> memberIds) {
+        template.batchUpdate("delete from member_balance_slot where member_id=?",
+                memberIds.stream().map(memberId -> new Object[]{memberId}).toList());
+        int[] result = delegate.deleteAll(memberIds);
+        memberIds.forEach(slotCounts::remove);
+        return result;
+    }
+
+    @Override
+    public MemberPage findPage(String afterMemberId, int limit) {
+        MemberPage page = delegate.findPage(afterMemberId, limit);
+        return new MemberPage(mergeAll(page.getMembers(), false), page.getNextKey());
+    }
+
+    @Override
+    public MemberPage findPageBefore(String beforeMemberId, int limit) {
+        MemberPage page = delegate.findPageBefore(beforeMemberId, limit);
+        return new MemberPage(mergeAll(page.getMembers(), false), page.getNextKey());
+    }
+
+    /**
+     * 샤딩된 계좌는 한건씩 슬롯을 합산한다 (샤딩된 계좌는 소수라고 가정한다)
+     * streamWhere 의 조건은 member row 에만 적용된다 (money 조건은 슬롯을 보지 않는다)
+     */
+    @Override
+    public Stream<Member> streamAll() {
+        return delegate.streamAll().map(this::withSlots);
+    }
+
+    @Override
+    public Stream<Member> streamWhere(String whereClause, Object... args) {
+        return delegate.streamWhere(whereClause, args).map(this::withSlots);
+    }
+
+    private boolean isSharded(String memberId) {
+        return slotCounts.containsKey(memberId);
+    }
+
+    private List<String> shardedIdsOf(List<Member> members) {
+        return members.stream().map(Member::getMemberId).filter(this::isSharded).distinct().toList();
+    }
+
+    private Member withSlots(Member member) {
+        if (!isSharded(member.getMemberId())) {
+            return member;
+        }
+        return readMerged(List.of(member.getMemberId())).getOrDefault(member.getMemberId(), member);
+    }
+
+    /**
+     * forUpdate: 이미 잠근 member row 에 슬롯을 잠그면서 합산한다
+     * 아니면 샤딩된 계좌를 member row 와 슬롯을 함께 다시 읽는다 (readMerged)
+     */
+    private List<Member> mergeAll(List<Member> members, boolean forUpdate) {
+        List<String> sharded = shardedIdsOf(members);
+        if (sharded.isEmpty()) {
+            return members;
+        }
+        if (forUpdate) {
+            Map<String, SlotTotal> totals = lockSlots(sharded);
+            return members.stream().map(member -> merge(member, totals)).toList();
+        }
+        Map<String, Member> merged = readMerged(sharded);
+        return members.stream().map(member -> merged.getOrDefault(member.getMemberId(), member)).toList();
+    }
+
+    /**
+     * member row 와 슬롯 합계를 하나의 SQL 로 읽는다 (H2 는 한 SQL 안에서는 같은 시점을 본다)
+     */
+    private Map<String, Member> readMerged(List<String> memberIds) {
+        String in = String.join(",", Collections.nCopies(memberIds.size(), "?"));
+        String sql = "select m.member_id, m.money + coalesce(s.money, 0), m.version + coalesce(s.version, 0)"
+                + " from member m left join (select member_id, sum(money) money, sum(version) version from member_balance_slot"
+                + " where member_id in (" + in + ") group by member_id) s on s.member_id = m.member_id"
+                + " where m.member_id in (" + in + ")";
+        Object[] args = new Object[memberIds.size() * 2];
+        for (int i = 0; i < memberIds.size(); i++) {
+            args[i] = memberIds.get(i);
+            args[i + memberIds.size()] = memberIds.get(i);
+        }
+        Map<String, Member> merged = new HashMap<>();
+        template.query(sql, rs -> {
+            merged.put(rs.getString(1), new Member(rs.getString(1), rs.getInt(2), rs.getLong(3)));
+        }, args);
+        return merged;
+    }
+
+    private Member merge(Member member, Map<String, SlotTotal> totals) {
+        SlotTotal total = totals.get(member.getMemberId());
+        if (total == null) {
+            return member;
+        }
+        return new Member(member.getMemberId(), member.getMoney() + total.money, member.getVersion() + total.version);
+    }
+
+    /**
+     * 덮어쓰기 전에 member row -> 슬롯 순으로 잠근다
+     */
+    private Map<String, SlotTotal> lockSharded(List<String> memberIds) {
+        if (memberIds.isEmpty()) {
+            return Map.of();
+        }
+        delegate.findAllByIdForUpdate(memberIds);
+        return lockSlots(memberIds);
+    }
+
+    /**
+     * member row 를 잠근 다음에 호출한다
+     */
+    private Map<String, SlotTotal> lockSlots(Collection<String> memberIds) {
+        List<String> ids = memberIds.stream().distinct().sorted().toList();
+        String sql = "select member_id, money, version from member_balance_slot where member_id in ("
+                + String.join(",", Collections.nCopies(ids.size(), "?")) + ") order by member_id, slot for update";
+        Map<String, SlotTotal> totals = new HashMap<>();
+        List<Object[]> rows = lockSlotRows(sql, ids.toArray(),
+                (rs, rowNum) -> new Object[]{rs.getString(1), new SlotTotal(rs.getInt(2), rs.getLong(3), 1)});
+        for (Object[] row : rows) {
+            totals.merge((String) row[0], (SlotTotal) row[1], SlotTotal::plus);
+        }
+        return totals;
+    }
+
+    /**
+     * 슬롯 락은 SLOT_LOCK_TIMEOUT 만큼만 기다린다 (넘으면 CannotAcquireLockException)
+     */
+    private <T> List<T> lockSlotRows(String sql, Object[] args, RowMapper<T> rowMapper) {
+        return template.execute((ConnectionCallback<List<T>>) con ->
+                LockTimeout.query(con, template.getDataSource(), SLOT_LOCK_TIMEOUT, sql, args, rowMapper));
+    }
+
+    /**
+     * member row 와 슬롯을 잠그는 작업을 트랜잭션에서 실행한다
+     * 트랜잭션 밖에서 호출되면 슬롯 락을 얻지 못했을때 트랜잭션을 처음부터 다시 실행한다 (롤백으로 member row 를 놓은 후 백오프)
+     */
+    private <T> T inLockingTransaction(String name, Supplier<T> action) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return transactionTemplate.execute(status -> action.get());
+        }
+        return escalationRetry.execute("sharded." + name, () -> transactionTemplate.execute(status -> action.get()));
+    }
+
+    /**
+     * 새 잔액을 슬롯에 고르게 나눈다 (나머지는 0번 슬롯). 슬롯은 이미 잠겨 있어야 한다
+     */
+    private void spread(String memberId, int money, int slots) {
+        String sql = "update member_balance_slot set money = case when slot = 0 then ? else ? end where member_id=?";
+        template.update(sql, money / slots + money % slots, money / slots, memberId);
+    }
+
+    private record SlotTotal(int money, long version, int count) {
+
+        static final SlotTotal EMPTY = new SlotTotal(0, 0, 0);
+
+        SlotTotal plus(SlotTotal other) {
+            return new SlotTotal(money + other.money, version + other.version, count + other.count);
+        }
+    }
+}
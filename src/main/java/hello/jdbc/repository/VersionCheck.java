@@ -0,0 +1,39 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.List;
+
+/**
+ * 낙관적 락(version) 갱신 결과 검사
+ * update ... where member_id=? and version=? 가 0 row 이면 그 사이 다른 트랜잭션이 먼저 변경한 것이다 (또는 회원이 없다)
+ * 성공하면 DB 와 같도록 객체의 version 도 1 증가시킨다
+ */
+abstract class VersionCheck {
+
+    static void check(Member member, int count) {
+        if (count == 0) {
+            throw stale(member);
+        }
+        member.setVersion(member.getVersion() + 1);
+    }
+
+    /**
+     * 배치는 모두 성공했을때만 version 을 증가시킨다 (하나라도 실패하면 호출한 트랜잭션이 롤백해야 한다)
+     * 드라이버가 row 수를 알려주지 않으면(SUCCESS_NO_INFO) 성공으로 본다
+     */
+    static void check(List<Member> members, int[] counts) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                throw stale(members.get(i));
+            }
+        }
+        members.forEach(member -> member.setVersion(member.getVersion() + 1));
+    }
+
+    private static OptimisticLockingFailureException stale(Member member) {
+        return new OptimisticLockingFailureException("stale member memberId=" + member.getMemberId()
+                + ", version=" + member.getVersion());
+    }
+}
@@ -0,0 +1,54 @@
+package hello.jdbc.retry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 재시도 예산 - 전체 호출 대비 재시도 비율을 제한한다
+ * 호출마다 ratio 만큼 토큰을 적립하고(최대 maxTokens), 재시도 할때마다 1개씩 쓴다
+ * DB 가 전체적으로 느려져서 모든 요청이 실패할때 재시도가 부하를 몇배로 키우지 않도록 한다
+ *
+ * 예) ratio = 0.2 -> 장기적으로 호출 5번에 재시도 1번 까지 (처음에는 maxTokens 만큼 여유가 있다)
+ */
+public class RetryBudget {
+
+    private static final long SCALE = 1000; //토큰을 1000 배 정수로 보관
+
+    private final long deposit;
+    private final long maxBalance;
+    private final AtomicLong balance;
+
+    public RetryBudget(double ratio, int maxTokens) {
+        if (ratio < 0 || maxTokens < 1) {
+            throw new IllegalArgumentException("invalid retry budget ratio=" + ratio + ", maxTokens=" + maxTokens);
+        }
+        this.deposit = Math.round(ratio * SCALE);
+        this.maxBalance = maxTokens * SCALE;
+        this.balance = new AtomicLong(maxBalance);
+    }
+
+    /**
+     * 호출 1회 적립
+     */
+    public void deposit() {
+        balance.accumulateAndGet(deposit, (current, amount) -> Math.min(maxBalance, current + amount));
+    }
+
+    /**
+     * @return 예산이 남아 있으면 1개를 쓰고 true
+     */
+    public boolean tryWithdraw() {
+        while (true) {
+            long current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    public double getTokens() {
+        return (double) balance.get() / SCALE;
+    }
+}
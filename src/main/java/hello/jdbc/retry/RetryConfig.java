@@ -0,0 +1,52 @@
+package hello.jdbc.retry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+
+/**
+ * @RetryableTransaction 어드바이저 등록
+ *
+ * 어드바이저 순서 (바깥 -> 안)
+ * RetryableTransaction(LOWEST - 100) -> 메트릭 애스펙트(LOWEST - 1) -> @Transactional(LOWEST)
+ * 재시도 할때마다 트랜잭션이 새로 시작되고, 메트릭은 시도 1번 단위로 기록된다
+ */
+@Configuration(proxyBeanMethods = false)
+@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+public class RetryConfig {
+
+    public static final int ORDER = Ordered.LOWEST_PRECEDENCE - 100;
+
+    /**
+     * hello.jdbc.retry.budget.ratio : 호출 1번당 적립되는 재시도 수 (기본 0.2)
+     * hello.jdbc.retry.budget.max-tokens : 최대 적립 재시도 수 (기본 100)
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static RetryBudget retryBudget(@Value("${hello.jdbc.retry.budget.ratio:0.2}") double ratio,
+                                          @Value("${hello.jdbc.retry.budget.max-tokens:100}") int maxTokens) {
+        return new RetryBudget(ratio, maxTokens);
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor retryableTransactionAdvisor(ObjectProvider<MeterRegistry> registry, RetryBudget retryBudget) {
+        ComposablePointcut pointcut = new ComposablePointcut(new AnnotationMatchingPointcut(RetryableTransaction.class, true))
+                .union(AnnotationMatchingPointcut.forMethodAnnotation(RetryableTransaction.class));
+        RetryableTransactionInterceptor interceptor = new RetryableTransactionInterceptor(
+                () -> registry.getIfUnique(() -> Metrics.globalRegistry), retryBudget);
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(pointcut, interceptor);
+        advisor.setOrder(ORDER);
+        return advisor;
+    }
+}
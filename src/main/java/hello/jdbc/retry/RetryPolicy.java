@@ -0,0 +1,188 @@
+package hello.jdbc.retry;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 재시도 정책 - 최대 시도 횟수 + 지터를 준 지수 백오프
+ * n 번째 재시도 전에 0 ~ min(maxBackoff, initialBackoff * 2^(n-1)) 사이에서 무작위로 기다린다 (full jitter)
+ * 동시에 실패한 요청들이 같은 시각에 다시 충돌하지 않도록 대기 시간을 흩어 놓는다
+ *
+ * 주의! 트랜잭션 밖에서 호출해야 한다. 재시도마다 새 트랜잭션으로 처음부터 다시 실행해야 의미가 있다.
+ * execute() 가 실행중인 동안은 재시도 범위(inRetryScope)다. 안쪽의 @RetryableTransaction 은 다시 재시도하지 않는다
+ * (두 층에서 재시도하면 시도 횟수가 곱해지고 백오프도 겹친다)
+ *
+ * 메트릭
+ * member.retry.calls   : name, outcome(success, recovered, exhausted, not_retryable, budget_exhausted) 별 호출 수
+ * member.retry.retries : name 별 재시도 수 (retries / calls 가 재시도율)
+ */
+@Slf4j
+public class RetryPolicy {
+
+    public static final String CALLS = "member.retry.calls";
+    public static final String RETRIES = "member.retry.retries";
+
+    private static final ThreadLocal<Boolean> retryScope = new ThreadLocal<>();
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final Predicate<Throwable> retryable;
+    private final MeterRegistry registry;
+    private RetryBudget retryBudget;
+
+    public RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff,
+                       Predicate<Throwable> retryable, MeterRegistry registry) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive maxAttempts=" + maxAttempts);
+        }
+        if (initialBackoff.isNegative() || maxBackoff.compareTo(initialBackoff) < 0) {
+            throw new IllegalArgumentException("invalid backoff initialBackoff=" + initialBackoff + ", maxBackoff=" + maxBackoff);
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = initialBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+        this.retryable = retryable;
+        this.registry = registry;
+    }
+
+    /**
+     * 메트릭을 전역 레지스트리(Metrics.globalRegistry)에 기록한다
+     */
+    public RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff, Predicate<Throwable> retryable) {
+        this(maxAttempts, initialBackoff, maxBackoff, retryable, Metrics.globalRegistry);
+    }
+
+    /**
+     * 예외 타입(하위 타입 포함)으로 재시도 여부를 정한다
+     */
+    @SafeVarargs
+    public static Predicate<Throwable> retryOn(Class<? extends Throwable>... types) {
+        return e -> {
+            for (Class<? extends Throwable> type : types) {
+                if (type.isInstance(e)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    /**
+     * 재시도 예산을 지정하면 예산이 남아 있을때만 재시도한다 (여러 정책이 하나의 예산을 공유할수 있다)
+     */
+    public void setRetryBudget(RetryBudget retryBudget) {
+        this.retryBudget = retryBudget;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public boolean isRetryable(Throwable e) {
+        return retryable.test(e);
+    }
+
+    /**
+     * @return 현재 스레드에서 RetryPolicy.execute() 가 실행중인지
+     */
+    public static boolean inRetryScope() {
+        return retryScope.get() != null;
+    }
+
+    public <T> T execute(String name, Supplier<T> action) {
+        if (retryScope.get() != null) {
+            return attempts(name, action);
+        }
+        retryScope.set(Boolean.TRUE);
+        try {
+            return attempts(name, action);
+        } finally {
+            retryScope.remove();
+        }
+    }
+
+    private <T> T attempts(String name, Supplier<T> action) {
+        if (retryBudget != null) {
+            retryBudget.deposit();
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = action.get();
+                record(name, attempt == 1 ? "success" : "recovered");
+                return result;
+            } catch (RuntimeException e) {
+                if (!isRetryable(e)) {
+                    record(name, "not_retryable");
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    record(name, "exhausted");
+                    log.info("재시도 횟수 초과 name={}, attempts={}", name, attempt);
+                    throw e;
+                }
+                if (retryBudget != null && !retryBudget.tryWithdraw()) {
+                    record(name, "budget_exhausted");
+                    log.info("재시도 예산 부족 name={}, attempts={}", name, attempt);
+                    throw e;
+                }
+                log.debug("재시도 name={}, attempt={}, cause={}", name, attempt, e.toString());
+                retried(name);
+                if (!backoff(attempt)) {
+                    record(name, "exhausted");
+                    throw e; //대기 중 인터럽트 되면 더 시도하지 않는다
+                }
+            }
+        }
+    }
+
+    public void execute(String name, Runnable action) {
+        execute(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * attempt 번째 실패 후 기다릴 시간 (full jitter)
+     */
+    public long backoffNanos(int attempt) {
+        long ceiling = initialBackoffNanos << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxBackoffNanos) {
+            ceiling = maxBackoffNanos;
+        }
+        return ceiling == 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * @return 인터럽트 되었으면 false
+     */
+    protected boolean backoff(int attempt) {
+        long nanos = backoffNanos(attempt);
+        if (nanos == 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(Duration.ofNanos(nanos));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    protected void retried(String name) {
+        Counter.builder(RETRIES).tag("name", name).register(registry).increment();
+    }
+
+    protected void record(String name, String outcome) {
+        Counter.builder(CALLS).tag("name", name).tag("outcome", outcome).register(registry).increment();
+    }
+}
@@ -0,0 +1,26 @@
+package hello.jdbc.retry;
+
+import java.lang.annotation.*;
+
+/**
+ * 일시적인 DB 오류(락 획득 실패, 데드락, 낙관적 락 충돌 등)가 나면 트랜잭션을 처음부터 다시 실행한다
+ * RetryableTransactionInterceptor 가 트랜잭션 어드바이저 보다 바깥에서 동작하므로 시도마다 새 트랜잭션이다
+ * 이미 트랜잭션 안에서 호출되면 바깥 트랜잭션이 있으므로 재시도하지 않는다
+ *
+ * 재시도 대상은 TransientFailures.isTransient() 참고
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+public @interface RetryableTransaction {
+
+    /**
+     * 최초 실행을 포함한 최대 시도 횟수
+     */
+    int maxAttempts() default 3;
+
+    long initialBackoffMillis() default 10;
+
+    long maxBackoffMillis() default 200;
+}
@@ -0,0 +1,102 @@
+package hello.jdbc.retry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * @RetryableTransaction 이 붙은 메서드를 일시적인 오류가 나면 다시 실행한다
+ * 트랜잭션 어드바이저 보다 먼저(바깥에서) 실행되어야 한다 -> RetryConfig 에서 순서를 지정한다
+ * 바깥에서 이미 재시도 중이면(RetryPolicy.inRetryScope) 한번만 실행하고 재시도는 바깥에 맡긴다
+ *
+ * 메서드별 RetryPolicy 를 만들어 두고, 재시도 예산(RetryBudget)은 모든 메서드가 공유한다
+ * 메트릭 이름 태그는 "클래스.메서드" (RetryPolicy 의 member.retry.calls, member.retry.retries)
+ */
+@Slf4j
+public class RetryableTransactionInterceptor implements MethodInterceptor {
+
+    private final Supplier<MeterRegistry> registry;
+    private final RetryBudget budget;
+    private final Map<Method, RetryPolicy> policies = new ConcurrentHashMap<>();
+
+    public RetryableTransactionInterceptor(MeterRegistry registry, RetryBudget budget) {
+        this(() -> registry, budget);
+    }
+
+    /**
+     * 어드바이저는 다른 빈보다 먼저 만들어지므로 레지스트리는 처음 호출될때 꺼낸다
+     */
+    public RetryableTransactionInterceptor(Supplier<MeterRegistry> registry, RetryBudget budget) {
+        this.registry = registry;
+        this.budget = budget;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return invocation.proceed(); //바깥 트랜잭션에 참여하므로 여기서 다시 시도해도 소용이 없다
+        }
+        if (RetryPolicy.inRetryScope()) {
+            return invocation.proceed(); //바깥 RetryPolicy 가 재시도한다
+        }
+        Class<?> targetClass = invocation.getThis() != null ? AopUtils.getTargetClass(invocation.getThis()) : invocation.getMethod().getDeclaringClass();
+        Method method = AopUtils.getMostSpecificMethod(invocation.getMethod(), targetClass);
+        RetryPolicy policy = policies.computeIfAbsent(method, key -> createPolicy(key, targetClass));
+        String name = targetClass.getSimpleName() + "." + method.getName();
+
+        try {
+            return policy.execute(name, () -> proceed(invocation));
+        } catch (CheckedFailure e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 같은 MethodInvocation 은 한번만 proceed 할수 있으므로 시도마다 복제해서 실행한다
+     */
+    private Object proceed(MethodInvocation invocation) {
+        try {
+            if (invocation instanceof ProxyMethodInvocation proxyInvocation) {
+                return proxyInvocation.invocableClone().proceed();
+            }
+            return invocation.proceed();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new CheckedFailure(e); //SQLException 같은 체크 예외도 원인으로 판단할수 있도록 감싸서 전달한다
+        }
+    }
+
+    private RetryPolicy createPolicy(Method method, Class<?> targetClass) {
+        RetryableTransaction retryable = AnnotatedElementUtils.findMergedAnnotation(method, RetryableTransaction.class);
+        if (retryable == null) {
+            retryable = AnnotatedElementUtils.findMergedAnnotation(targetClass, RetryableTransaction.class);
+        }
+        if (retryable == null) {
+            throw new IllegalStateException("@RetryableTransaction not found method=" + method);
+        }
+        RetryPolicy policy = new RetryPolicy(retryable.maxAttempts(),
+                Duration.ofMillis(retryable.initialBackoffMillis()),
+                Duration.ofMillis(retryable.maxBackoffMillis()),
+                TransientFailures::isTransient, registry.get());
+        policy.setRetryBudget(budget);
+        return policy;
+    }
+
+    private static class CheckedFailure extends RuntimeException {
+        CheckedFailure(Throwable cause) {
+            super(cause);
+        }
+    }
+}
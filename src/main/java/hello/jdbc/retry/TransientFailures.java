@@ -0,0 +1,39 @@
+package hello.jdbc.retry;
+
+import org.springframework.dao.TransientDataAccessException;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+
+/**
+ * 다시 시도하면 성공할 수 있는 예외인지 판단한다
+ *
+ * 1. 스프링 TransientDataAccessException 과 그 하위 타입
+ *    CannotAcquireLockException, DeadlockLoserDataAccessException, PessimisticLockingFailureException,
+ *    OptimisticLockingFailureException, QueryTimeoutException ...
+ * 2. 변환되지 않은 SQLException (MyDbException 으로 감싼 경우 포함)
+ *    SQLTransientException, SQLState 40001(직렬화 실패), H2 에러코드 50200(락 타임아웃), 40001(데드락)
+ */
+public abstract class TransientFailures {
+
+    public static final int H2_LOCK_TIMEOUT = 50200;
+    public static final int H2_DEADLOCK = 40001;
+
+    public static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof TransientDataAccessException || cause instanceof SQLTransientException) {
+                return true;
+            }
+            if (cause instanceof SQLException sqlException && isTransient(sqlException)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isTransient(SQLException e) {
+        return e.getErrorCode() == H2_LOCK_TIMEOUT
+                || e.getErrorCode() == H2_DEADLOCK
+                || "40001".equals(e.getSQLState());
+    }
+}
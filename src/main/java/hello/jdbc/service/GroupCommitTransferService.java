@@ -0,0 +1,157 @@
+package hello.jdbc.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 그룹 커밋 - 여러 호출자의 이체를 모아서 하나의 트랜잭션으로 커밋한다
+ * 이체마다 커밋(로그 flush)하는 대신 한번의 커밋 비용을 여러 이체가 나누어 낸다. 대신 모으는 시간(maxWait) 만큼 지연이 늘어난다
+ *
+ * 호출자는 큐에 넣고 바로 CompletableFuture 를 받는다. flusher 스레드 하나가
+ * 1. 첫 이체가 올때까지 기다렸다가, maxBatch 건이 모이거나 첫 이체로 부터 maxWait 이 지날때 까지 모은다
+ * 2. accountTransferAll 로 한 트랜잭션에서 실행한다 (accountTransfer 와 같은 잔액 검증)
+ * 3. 하나라도 실패하면 전체가 롤백되므로, accountTransferEach 로 다시 실행해서 실패한 이체만 세이브포인트로 건너뛴다
+ *    실패한 이체의 future 만 예외로 완료된다
+ *
+ * memberService 는 트랜잭션 프록시여야 한다
+ * flusher 가 하나이므로 커넥션도 하나만 사용한다 (배치끼리 row 락으로 경합하지 않는다)
+ */
+@Slf4j
+public class GroupCommitTransferService implements AutoCloseable {
+
+    private final MemberServiceV4 memberService;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    /**
+     * @param maxBatch 한 트랜잭션에 넣을 최대 이체 수
+     * @param maxWait  첫 이체가 들어온 후 더 모으기 위해 기다리는 최대 시간 (0 이면 큐에 이미 있는 만큼만)
+     */
+    public GroupCommitTransferService(MemberServiceV4 memberService, int maxBatch, Duration maxWait) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("maxBatch must be positive maxBatch=" + maxBatch);
+        }
+        if (maxWait.isNegative()) {
+            throw new IllegalArgumentException("maxWait must not be negative maxWait=" + maxWait);
+        }
+        this.memberService = memberService;
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.flusher = Thread.ofPlatform().name("group-commit-flusher").daemon(true).start(this::run);
+    }
+
+    public CompletableFuture<Void> accountTransfer(String fromId, String toId, int money) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new RejectedExecutionException("group commit is closed"));
+            return future;
+        }
+        Pending pending = new Pending(new Transfer(fromId, toId, money), future);
+        queue.add(pending);
+        if (closed && !flusher.isAlive() && queue.remove(pending)) { //close() 와 동시에 들어온 경우
+            future.completeExceptionally(new RejectedExecutionException("group commit is closed"));
+        }
+        return future;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                if (!closed) {
+                    log.warn("group commit flusher interrupted");
+                }
+                queue.drainTo(batch, maxBatch - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void collect(List<Pending> batch) throws InterruptedException {
+        Pending first = queue.poll(100, TimeUnit.MILLISECONDS); //closed 를 확인하기 위해 주기적으로 깨어난다
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (batch.size() < maxBatch) {
+            queue.drainTo(batch, maxBatch - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= maxBatch || remaining <= 0) {
+                return;
+            }
+            Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        List<Transfer> transfers = batch.stream().map(Pending::transfer).toList();
+        try {
+            memberService.accountTransferAll(transfers);
+            batch.forEach(pending -> pending.future().complete(null));
+            return;
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).future().completeExceptionally(e);
+                return;
+            }
+            log.debug("group commit failed, re-execute with savepoints size={}", batch.size(), e);
+        }
+
+        try {
+            TransferResult result = memberService.accountTransferEach(transfers);
+            boolean[] failed = new boolean[batch.size()];
+            for (TransferResult.Failure failure : result.getFailures()) {
+                failed[failure.getIndex()] = true;
+                batch.get(failure.getIndex()).future().completeExceptionally(failure.getCause());
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                if (!failed[i]) {
+                    batch.get(i).future().complete(null);
+                }
+            }
+        } catch (RuntimeException e) {
+            batch.forEach(pending -> pending.future().completeExceptionally(e)); //커밋 실패 등 배치 전체의 실패
+        }
+    }
+
+    /**
+     * 새 이체를 받지 않고, 큐에 남은 이체를 모두 처리한 후 종료한다
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future().completeExceptionally(new RejectedExecutionException("group commit is closed"));
+        }
+    }
+
+    private record Pending(Transfer transfer, CompletableFuture<Void> future) {
+    }
+}
@@ -0,0 +1,84 @@
+package hello.jdbc.service;
+
+import hello.jdbc.repository.LedgerRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 백그라운드에서 주기적으로 원장을 member.money 에 합친다 (LedgerRepository.compact)
+ * 한번에 batchSize 건씩, 남은 원장이 batchSize 보다 적어질때 까지 반복한다
+ * batchSize 가 트랜잭션 하나의 크기다. 너무 크면 member row 락을 오래 잡는다
+ *
+ * 실패하면 로그만 남기고 다음 주기에 다시 시도한다 (합치기 전의 원장은 그대로이므로 잔액은 항상 맞다)
+ */
+@Slf4j
+public class LedgerCompactor implements AutoCloseable {
+
+    private final LedgerRepository ledgerRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+
+    public LedgerCompactor(LedgerRepository ledgerRepository, PlatformTransactionManager transactionManager, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive batchSize=" + batchSize);
+        }
+        this.ledgerRepository = ledgerRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("ledger-compactor").daemon(true).factory());
+    }
+
+    /**
+     * interval 마다 compactNow() 를 실행한다 (이전 실행이 끝난 후 부터 interval)
+     */
+    public void start(Duration interval) {
+        long millis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::compactQuietly, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return 합친 원장 수
+     */
+    public int compactNow() {
+        int total = 0;
+        while (true) {
+            Integer compacted = transactionTemplate.execute(status -> ledgerRepository.compact(batchSize));
+            total += compacted == null ? 0 : compacted;
+            if (compacted == null || compacted < batchSize) {
+                return total;
+            }
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            int compacted = compactNow();
+            if (compacted > 0) {
+                log.debug("ledger compacted entries={}", compacted);
+            }
+        } catch (RuntimeException e) {
+            log.warn("ledger compaction failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
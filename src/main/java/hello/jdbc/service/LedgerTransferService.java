@@ -0,0 +1,78 @@
+package hello.jdbc.service;
+
+import hello.jdbc.repository.LedgerPosting;
+import hello.jdbc.repository.LedgerRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+/**
+ * 원장 방식 이체 - member.money 를 변경하지 않고 transfer_ledger 에 insert 만 한다
+ * member.money 로의 반영은 LedgerCompactor 가 백그라운드에서 모아서 한다
+ *
+ * 출금 계좌의 잔액 확인과 insert 사이에 다른 출금이 끼어들지 않도록 출금 계좌의 메모리 락(StripedLockManager)만 잡는다
+ * 입금 계좌는 잠그지 않는다 -> 한 계좌로 입금이 몰려도 서로 기다리지 않는다 (입금은 잔액을 늘리기만 하므로 잔액 확인에 영향이 없다)
+ * 메모리 락이므로 같은 DB 에 원장 방식으로 쓰는 애플리케이션 인스턴스는 하나여야 한다
+ */
+@Slf4j
+public class LedgerTransferService {
+
+    private final LedgerRepository ledgerRepository;
+    private final StripedLockManager lockManager;
+    private final TransactionTemplate transactionTemplate;
+
+    public LedgerTransferService(LedgerRepository ledgerRepository, StripedLockManager lockManager,
+                                 PlatformTransactionManager transactionManager) {
+        this.ledgerRepository = ledgerRepository;
+        this.lockManager = lockManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public void accountTransfer(String fromId, String toId, int money) {
+        transferAll(List.of(new Transfer(fromId, toId, money)));
+    }
+
+    /**
+     * 여러건의 이체를 하나의 배치 insert 로 추가한다 (하나라도 실패하면 아무것도 추가하지 않는다)
+     * 잔액 계산은 요청 순서대로 메모리에서 한다 (앞의 이체로 받은 돈을 뒤의 이체에서 보낼수 있다)
+     */
+    public TransferResult transferAll(List<Transfer> transfers) {
+        Set<String> fromIds = new HashSet<>();
+        Set<String> memberIds = new HashSet<>();
+        for (Transfer transfer : transfers) {
+            fromIds.add(transfer.getFromId());
+            memberIds.add(transfer.getFromId());
+            memberIds.add(transfer.getToId());
+        }
+        return lockManager.withLocks(fromIds, () -> transactionTemplate.execute(status -> {
+            Map<String, Integer> balances = ledgerRepository.balancesOf(memberIds);
+            List<LedgerPosting> postings = new ArrayList<>(transfers.size());
+            for (Transfer transfer : transfers) {
+                int fromBalance = balance(balances, transfer.getFromId());
+                int toBalance = balance(balances, transfer.getToId());
+                if (fromBalance < transfer.getMoney()) {
+                    throw new IllegalStateException("잔액 부족 memberId=" + transfer.getFromId());
+                }
+                balances.put(transfer.getFromId(), fromBalance - transfer.getMoney());
+                balances.put(transfer.getToId(), toBalance + transfer.getMoney());
+                postings.add(new LedgerPosting(transfer.getFromId(), transfer.getToId(), transfer.getMoney()));
+            }
+            ledgerRepository.append(postings);
+            return new TransferResult(transfers.size(), List.of());
+        }));
+    }
+
+    public int balanceOf(String memberId) {
+        return ledgerRepository.balanceOf(memberId);
+    }
+
+    private int balance(Map<String, Integer> balances, String memberId) {
+        Integer balance = balances.get(memberId);
+        if (balance == null) {
+            throw new NoSuchElementException("member not found memberId=" + memberId);
+        }
+        return balance;
+    }
+}
@@ -0,0 +1,71 @@
+package hello.jdbc.service;
+
+import hello.jdbc.retry.RetryPolicy;
+import hello.jdbc.retry.TransientFailures;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 이체하는 회원들의 메모리 락(StripedLockManager)을 먼저 잡고 나서 이체한다
+ *
+ * 인기 계좌로 이체가 몰리면 DB row 락에서 기다리는 트랜잭션마다 커넥션을 하나씩 붙잡고 있게 된다.
+ * 같은 계좌의 이체를 메모리에서 먼저 줄 세우면 커넥션은 락을 얻은 이체만 사용한다 (커넥션은 대기가 아니라 일에 사용된다)
+ *
+ * memberService 는 트랜잭션 프록시여야 한다. 락을 잡은 다음에 트랜잭션이 시작되고 커넥션을 얻는다.
+ * 주의! 트랜잭션 안에서 호출하면 이미 커넥션을 가지고 락을 기다리므로 의미가 없다.
+ * 같은 DB 를 여러 애플리케이션 인스턴스가 사용하면 인스턴스 끼리는 여전히 DB 락으로 충돌한다 (메모리 락은 인스턴스 안에서만 유효)
+ *
+ * 재시도는 메모리 락 바깥의 retryPolicy 에서 한다. 시도마다 락을 잡고 풀며, 백오프는 락을 푼 다음에 기다린다.
+ * 실행중에는 MemberServiceV4 의 @RetryableTransaction 이 다시 재시도하지 않는다 (RetryPolicy.inRetryScope)
+ * -> 락을 잡은 채로 백오프하면 같은 계좌의 다른 이체가 그 시간만큼 더 기다린다
+ */
+public class LockingTransferService {
+
+    private final MemberServiceV4 memberService;
+    private final StripedLockManager lockManager;
+    private final RetryPolicy retryPolicy;
+
+    public LockingTransferService(MemberServiceV4 memberService, StripedLockManager lockManager, RetryPolicy retryPolicy) {
+        this.memberService = memberService;
+        this.lockManager = lockManager;
+        this.retryPolicy = retryPolicy;
+    }
+
+    public LockingTransferService(MemberServiceV4 memberService, StripedLockManager lockManager) {
+        this(memberService, lockManager, defaultPolicy());
+    }
+
+    /**
+     * 기본 정책: @RetryableTransaction 기본값과 같다 (최대 3번, 10ms 부터 최대 200ms 까지 지터 백오프)
+     * 메모리 락 타임아웃(CannotAcquireLockException)도 일시적 오류이므로 재시도한다
+     */
+    public static RetryPolicy defaultPolicy() {
+        return new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(200), TransientFailures::isTransient);
+    }
+
+    public void accountTransfer(String fromId, String toId, int money) {
+        retryPolicy.execute("lockingAccountTransfer", () ->
+                lockManager.withLocks(List.of(fromId, toId), () -> memberService.accountTransfer(fromId, toId, money)));
+    }
+
+    public TransferResult transferAll(List<Transfer> transfers) {
+        return retryPolicy.execute("lockingTransferAll", () ->
+                lockManager.withLocks(memberIdsOf(transfers), () -> memberService.transferAll(transfers)));
+    }
+
+    public TransferResult transferAll(List<Transfer> transfers, boolean skipFailed) {
+        return retryPolicy.execute("lockingTransferAll", () ->
+                lockManager.withLocks(memberIdsOf(transfers), () -> memberService.transferAll(transfers, skipFailed)));
+    }
+
+    private static List<String> memberIdsOf(List<Transfer> transfers) {
+        List<String> memberIds = new ArrayList<>(transfers.size() * 2);
+        for (Transfer transfer : transfers) {
+            memberIds.add(transfer.getFromId());
+            memberIds.add(transfer.getToId());
+        }
+        return memberIds;
+    }
+}
@@ -2,6 +2,7 @@ package hello.jdbc.service;
 
 import hello.jdbc.domain.Member;
 import hello.jdbc.repository.MemberRepositoryV3;
+import hello.jdbc.retry.RetryableTransaction;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -20,6 +21,8 @@ public class MemberServiceV3_3 {
     private final MemberRepositoryV3 memberRepository;
 
     //Aop를 사용해서 프록시로 트랜잭션을 관리해줄것이므로 service 계층은 비즈니스로직만 담당한다
+    //락 타임아웃(50200), 데드락(40001) SQLException 은 트랜잭션을 처음부터 다시 실행한다
+    @RetryableTransaction
     @Transactional
     public void accountTransfer(String fromId, String toId, int money) throws SQLException {
         bizLogic(fromId, toId, money);
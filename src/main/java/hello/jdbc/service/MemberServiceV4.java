@@ -3,13 +3,16 @@ package hello.jdbc.service;
 import hello.jdbc.domain.Member;
 import hello.jdbc.repository.MemberRepository;
 import hello.jdbc.repository.MemberRepositoryV3;
-import lombok.RequiredArgsConstructor;
+import hello.jdbc.retry.RetryableTransaction;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import java.sql.SQLException;
+import java.util.*;
 
 /**
  * 예외 누수 문제 해결
@@ -18,33 +21,191 @@ import java.sql.SQLException;
  * MemberRepository 인터페이스 의존
  */
 @Slf4j
-@RequiredArgsConstructor
 public class MemberServiceV4 {
 
     private final MemberRepository memberRepository;
+    private final boolean pessimisticLock;
+
+    public MemberServiceV4(MemberRepository memberRepository) {
+        this(memberRepository, false);
+    }
+
+    /**
+     * @param pessimisticLock 비관적 락 모드
+     *                        이체 전에 관련된 계좌를 member_id 순으로 한번에 select ... for update 한다
+     *                        같은 계좌에 이체가 몰려서 transferAll 의 낙관적 락 재시도가 계속 실패하는 경우에 사용한다
+     */
+    public MemberServiceV4(MemberRepository memberRepository, boolean pessimisticLock) {
+        this.memberRepository = memberRepository;
+        this.pessimisticLock = pessimisticLock;
+    }
 
     //Aop를 사용해서 프록시로 트랜잭션을 관리해줄것이므로 service 계층은 비즈니스로직만 담당한다
+    //락 대기 타임아웃, 데드락 같은 일시적인 오류는 트랜잭션을 처음부터 다시 실행한다
+    @RetryableTransaction
     @Transactional
     public void accountTransfer(String fromId, String toId, int money) {
         bizLogic(fromId, toId, money);
     }
 
+    /**
+     * accountTransfer 여러건을 하나의 트랜잭션(커밋 1번)으로 실행한다. 하나라도 실패하면 전체 롤백
+     */
+    @RetryableTransaction
+    @Transactional
+    public void accountTransferAll(List<Transfer> transfers) {
+        for (Transfer transfer : transfers) {
+            bizLogic(transfer.getFromId(), transfer.getToId(), transfer.getMoney());
+        }
+    }
+
+    /**
+     * accountTransfer 여러건을 하나의 트랜잭션으로 실행하되, 실패한 이체만 세이브포인트로 되돌리고 건너뛴다
+     * 이체마다 세이브포인트를 만들고 해제하므로 accountTransferAll 보다 DB 왕복이 많다 (실패가 있을때 다시 실행하는 용도)
+     */
+    @RetryableTransaction
+    @Transactional
+    public TransferResult accountTransferEach(List<Transfer> transfers) {
+        TransactionStatus status = TransactionAspectSupport.currentTransactionStatus();
+        List<TransferResult.Failure> failures = new ArrayList<>();
+        for (int i = 0; i < transfers.size(); i++) {
+            Transfer transfer = transfers.get(i);
+            Object savepoint = status.createSavepoint();
+            try {
+                bizLogic(transfer.getFromId(), transfer.getToId(), transfer.getMoney());
+                status.releaseSavepoint(savepoint);
+            } catch (RuntimeException e) {
+                status.rollbackToSavepoint(savepoint);
+                status.releaseSavepoint(savepoint);
+                log.info("이체 건너뜀 index={}, transfer={}", i, transfer, e);
+                failures.add(new TransferResult.Failure(i, transfer, e));
+            }
+        }
+        return new TransferResult(transfers.size() - failures.size(), failures);
+    }
+
+    /**
+     * 여러건의 이체를 하나의 트랜잭션으로 처리한다 (하나라도 실패하면 전체 롤백)
+     */
+    @RetryableTransaction
+    @Transactional
+    public TransferResult transferAll(List<Transfer> transfers) {
+        return transferAll(transfers, false);
+    }
+
+    /**
+     * 1. 이체에 관련된 모든 계좌를 한번에 조회한다
+     * 2. 잔액 계산은 요청 순서대로 메모리에서 한다
+     * 3. 변경된 계좌를 member_id 순으로 정렬해서 하나의 JDBC 배치로 반영한다
+     *    동시에 실행되는 배치들이 항상 같은 순서로 row 락을 잡으므로 서로 데드락이 생기지 않는다
+     * 4. 반영은 조회한 version 이 그대로일때만 한다 (낙관적 락)
+     *    조회 후 다른 트랜잭션이 먼저 변경했다면 OptimisticLockingFailureException 으로 전체 롤백된다 (RetryingTransferService 로 재시도)
+     * skipFailed 가 true 이면 실패한 이체만 건너뛰고 결과에 담는다. false 이면 예외를 던져서 전체 롤백한다
+     */
+    @RetryableTransaction
+    @Transactional
+    public TransferResult transferAll(List<Transfer> transfers, boolean skipFailed) {
+        Set<String> memberIds = new HashSet<>();
+        for (Transfer transfer : transfers) {
+            memberIds.add(transfer.getFromId());
+            memberIds.add(transfer.getToId());
+        }
+        Map<String, Member> accounts = new HashMap<>();
+        List<Member> members = pessimisticLock ? memberRepository.findAllByIdForUpdate(memberIds) : memberRepository.findAllById(memberIds);
+        for (Member member : members) {
+            accounts.put(member.getMemberId(), member);
+        }
+
+        Set<String> changedIds = new TreeSet<>(); //member_id 순으로 정렬
+        List<TransferResult.Failure> failures = new ArrayList<>();
+        for (int i = 0; i < transfers.size(); i++) {
+            Transfer transfer = transfers.get(i);
+            try {
+                apply(accounts, transfer);
+                changedIds.add(transfer.getFromId());
+                changedIds.add(transfer.getToId());
+            } catch (RuntimeException e) {
+                if (!skipFailed) {
+                    throw e;
+                }
+                log.info("이체 건너뜀 index={}, transfer={}", i, transfer, e);
+                failures.add(new TransferResult.Failure(i, transfer, e));
+            }
+        }
+
+        List<Member> changed = new ArrayList<>(changedIds.size());
+        for (String memberId : changedIds) {
+            changed.add(accounts.get(memberId));
+        }
+        memberRepository.updateAllWithVersion(changed);
+        return new TransferResult(transfers.size() - failures.size(), failures);
+    }
+
+    /**
+     * 검증을 모두 통과한 후에 잔액을 바꾼다 (실패한 이체가 메모리의 잔액을 건드리지 않도록)
+     * 잔액 검사는 accountTransfer 의 withdrawIfSufficient 와 같다. 앞의 이체까지 반영한 메모리의 잔액으로 검사한다
+     */
+    private void apply(Map<String, Member> accounts, Transfer transfer) {
+        Member fromMember = getAccount(accounts, transfer.getFromId());
+        Member toMember = getAccount(accounts, transfer.getToId());
+        validation(toMember.getMemberId());
+        if (fromMember.getMoney() < transfer.getMoney()) {
+            throw new IllegalStateException("잔액 부족 memberId=" + fromMember.getMemberId());
+        }
+        fromMember.setMoney(fromMember.getMoney() - transfer.getMoney());
+        toMember.setMoney(toMember.getMoney() + transfer.getMoney());
+    }
+
+    private Member getAccount(Map<String, Member> accounts, String memberId) {
+        Member member = accounts.get(memberId);
+        if (member == null) {
+            throw new NoSuchElementException("member not found memberId=" + memberId);
+        }
+        return member;
+    }
+
+    /**
+     * 잔액을 조회해서 계산한 값으로 덮어쓰지 않고, DB 에서 바로 더하고 뺀다
+     * 조회 쿼리가 필요 없고(2번의 update 로 끝), 동시에 이체해도 갱신 손실이 생기지 않는다
+     *
+     * 두 update 는 항상 member_id 순으로 실행한다
+     * fromId 부터 락을 잡으면 A->B, B->A 가 서로 상대의 락을 기다리며 데드락. 입금이 먼저여도 출금이 실패하면 트랜잭션이 롤백된다
+     */
     private void bizLogic(String fromId, String toId, int money) {
         //비즈니스 로직
-        Member fromMember = memberRepository.findById(fromId);
-        Member toMember = memberRepository.findById(toId);
-        memberRepository.update(fromId, fromMember.getMoney() - money);
+        if (pessimisticLock) {
+            memberRepository.findAllByIdForUpdate(List.of(fromId, toId)); //member_id 순으로 한번에 잡는다
+        }
+        if (fromId.compareTo(toId) <= 0) {
+            withdraw(fromId, money);
 //        try{
 //            memberRepository.update(fromId, fromMember.getMoney() - money);
 //        } catch (DuplicateKeyException e){
 //            //복구하는 로직  이렇게 서비스 계층에서 예외처리를 해줄수 있다
 //        }
-        validation(toMember);
-        memberRepository.update(toId, toMember.getMoney() + money);
+            validation(toId);
+            deposit(toId, money);
+        } else {
+            validation(toId);
+            deposit(toId, money);
+            withdraw(fromId, money);
+        }
+    }
+
+    private void withdraw(String fromId, int money) {
+        if (!memberRepository.withdrawIfSufficient(fromId, money)) {
+            throw new IllegalStateException("잔액 부족 또는 회원 없음 memberId=" + fromId);
+        }
+    }
+
+    private void deposit(String toId, int money) {
+        if (!memberRepository.addMoney(toId, money)) {
+            throw new NoSuchElementException("member not found memberId=" + toId);
+        }
     }
 
-    private void validation(Member toMember) {
-        if (toMember.getMemberId().equals("ex")) {
+    private void validation(String toId) {
+        if (toId.equals("ex")) {
             throw new IllegalStateException("이체중 예외 발생");
         }
     }
@@ -0,0 +1,49 @@
+package hello.jdbc.service;
+
+import hello.jdbc.retry.RetryPolicy;
+import hello.jdbc.retry.TransientFailures;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 낙관적 락 충돌(OptimisticLockingFailureException) 이 나면 이체를 처음부터 다시 실행한다
+ * memberService 는 트랜잭션 프록시여야 한다. 시도마다 새 트랜잭션에서 다시 조회하고 계산한다.
+ * row 락을 트랜잭션 내내 잡지 않고도 갱신 손실 없이 이체할수 있다.
+ *
+ * 재시도는 이 정책 한곳에서만 한다. 실행중에는 MemberServiceV4 의 @RetryableTransaction 이 다시 재시도하지 않으므로
+ * (RetryPolicy.inRetryScope) 충돌 1번에 트랜잭션이 maxAttempts 번을 넘게 실행되지 않는다
+ * 충돌이 많은 배치 작업처럼 @RetryableTransaction 보다 오래 재시도해야 할때 사용한다
+ *
+ * accountTransfer 는 DB 에서 바로 더하고 빼므로(version 을 보지 않는다) 낙관적 락 충돌이 없다.
+ * 재시도하지 않고 MemberServiceV4 에 그대로 맡긴다 (락 타임아웃 같은 일시적 오류는 @RetryableTransaction 이 재시도)
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class RetryingTransferService {
+
+    private final MemberServiceV4 memberService;
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * 기본 정책: 최대 5번, 10ms 부터 최대 200ms 까지 지터 백오프
+     * 안쪽의 @RetryableTransaction 이 재시도하지 않으므로 낙관적 락 충돌 뿐 아니라 일시적인 오류 모두를 재시도한다
+     */
+    public static RetryPolicy defaultPolicy() {
+        return new RetryPolicy(5, Duration.ofMillis(10), Duration.ofMillis(200), TransientFailures::isTransient);
+    }
+
+    public void accountTransfer(String fromId, String toId, int money) {
+        memberService.accountTransfer(fromId, toId, money);
+    }
+
+    public TransferResult transferAll(List<Transfer> transfers) {
+        return retryPolicy.execute("transferAll", () -> memberService.transferAll(transfers));
+    }
+
+    public TransferResult transferAll(List<Transfer> transfers, boolean skipFailed) {
+        return retryPolicy.execute("transferAll", () -> memberService.transferAll(transfers, skipFailed));
+    }
+}
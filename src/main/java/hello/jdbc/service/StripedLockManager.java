@@ -0,0 +1,168 @@
+package hello.jdbc.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * memberId 별 메모리 락 (락 스트라이핑)
+ * 회원마다 락을 만들지 않고 stripes 개의 락 중 memberId 해시로 하나를 고른다. 다른 회원이 같은 락을 공유할수는 있지만(거짓 충돌)
+ * 메모리는 회원 수와 상관없이 일정하다.
+ *
+ * 여러 회원을 잠글때는 락 번호 오름차순으로 잡는다 (모든 호출이 같은 순서로 잡으므로 데드락이 없다)
+ * ReentrantLock 이므로 가상 스레드가 기다려도 캐리어 스레드를 붙잡지 않는다 (synchronized 와 다르다)
+ *
+ * 메트릭 (모두 name 태그로 인스턴스를 구분한다)
+ * member.lock.stripe.wait     : 다른 스레드가 잡고 있어서 기다린 시간 (바로 잡은 경우는 기록하지 않는다)
+ * member.lock.stripe.acquired : contended(true, false) 별 획득 수 (contended=true 비율이 경합률)
+ * member.lock.stripe.timeouts : acquireTimeout 안에 잡지 못한 수
+ * member.lock.stripe.waiting  : 지금 락을 기다리는 스레드 수
+ */
+public class StripedLockManager {
+
+    public static final String WAIT = "member.lock.stripe.wait";
+    public static final String ACQUIRED = "member.lock.stripe.acquired";
+    public static final String TIMEOUTS = "member.lock.stripe.timeouts";
+    public static final String WAITING = "member.lock.stripe.waiting";
+
+    private final String name;
+    private final ReentrantLock[] locks;
+    private final int mask;
+    private volatile long acquireTimeoutNanos;
+
+    private final Timer waitTimer;
+    private final Counter uncontended;
+    private final Counter contended;
+    private final Counter timeouts;
+
+    /**
+     * @param name    메트릭의 name 태그 (같은 레지스트리를 쓰는 인스턴스 끼리 메트릭이 섞이지 않도록 인스턴스마다 다르게 준다)
+     * @param stripes 락 개수. 2의 거듭제곱으로 올림한다 (동시에 이체하는 회원 수보다 충분히 크게 잡아야 거짓 충돌이 적다)
+     */
+    public StripedLockManager(String name, int stripes, MeterRegistry registry) {
+        if (stripes < 1 || stripes > (1 << 30)) {
+            throw new IllegalArgumentException("invalid stripes=" + stripes);
+        }
+        int size = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+
+        this.name = name;
+        this.waitTimer = Timer.builder(WAIT)
+                .tag("name", name)
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        this.uncontended = Counter.builder(ACQUIRED).tag("name", name).tag("contended", "false").register(registry);
+        this.contended = Counter.builder(ACQUIRED).tag("name", name).tag("contended", "true").register(registry);
+        this.timeouts = Counter.builder(TIMEOUTS).tag("name", name).register(registry);
+        Gauge.builder(WAITING, this, StripedLockManager::getWaitingCount).tag("name", name).register(registry);
+    }
+
+    /**
+     * 메트릭을 전역 레지스트리(Metrics.globalRegistry)에 기록한다
+     */
+    public StripedLockManager(String name, int stripes) {
+        this(name, stripes, Metrics.globalRegistry);
+    }
+
+    /**
+     * 락을 기다리는 최대 시간 (기본값 0 은 무한정 기다린다)
+     * 시간 안에 잡지 못하면 CannotAcquireLockException - TransientFailures 가 일시적 오류로 보므로 재시도 대상이다
+     */
+    public void setAcquireTimeout(Duration acquireTimeout) {
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+    }
+
+    public int getStripeCount() {
+        return locks.length;
+    }
+
+    public int getWaitingCount() {
+        int waiting = 0;
+        for (ReentrantLock lock : locks) {
+            waiting += lock.getQueueLength();
+        }
+        return waiting;
+    }
+
+    /**
+     * memberIds 의 락을 모두 잡고 action 을 실행한다
+     */
+    public <T> T withLocks(Collection<String> memberIds, Supplier<T> action) {
+        int[] stripes = stripesOf(memberIds);
+        int locked = 0;
+        try {
+            for (int stripe : stripes) {
+                acquire(locks[stripe]);
+                locked++;
+            }
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                locks[stripes[i]].unlock();
+            }
+        }
+    }
+
+    public void withLocks(Collection<String> memberIds, Runnable action) {
+        withLocks(memberIds, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    int stripeOf(String memberId) {
+        int h = memberId.hashCode();
+        return (h ^ (h >>> 16)) & mask; //HashMap 과 같이 상위 비트를 섞는다
+    }
+
+    /**
+     * 중복을 제거하고 오름차순 정렬한 락 번호 (정렬 순서가 곧 락을 잡는 순서)
+     */
+    private int[] stripesOf(Collection<String> memberIds) {
+        return memberIds.stream()
+                .mapToInt(this::stripeOf)
+                .distinct()
+                .sorted()
+                .toArray();
+    }
+
+    private void acquire(ReentrantLock lock) {
+        if (lock.tryLock()) {
+            uncontended.increment();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            if (acquireTimeoutNanos <= 0) {
+                lock.lockInterruptibly();
+            } else if (!lock.tryLock(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                timeouts.increment();
+                throw new CannotAcquireLockException("stripe lock timeout after " + Duration.ofNanos(acquireTimeoutNanos));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotAcquireLockException("interrupted while waiting for stripe lock", e);
+        }
+        waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        contended.increment();
+    }
+
+    @Override
+    public String toString() {
+        return "StripedLockManager{name=" + name + ", stripes=" + locks.length + ", waiting=" + getWaitingCount() + "}";
+    }
+}
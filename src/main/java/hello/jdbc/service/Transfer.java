@@ -0,0 +1,14 @@
+package hello.jdbc.service;
+
+import lombok.Value;
+
+/**
+ * 계좌 이체 한건
+ * fromId 를 가진 계좌에서 toId 를 가진 계좌로 money 만큼 이체
+ */
+@Value
+public class Transfer {
+    String fromId;
+    String toId;
+    int money;
+}
@@ -0,0 +1,151 @@
+package hello.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 이체를 가상 스레드에서 실행하고 CompletableFuture 로 결과를 돌려준다
+ *
+ * 요청마다 가상 스레드를 하나씩 만들지만, DB 에 동시에 들어가는 수는 세마포어로 커넥션 풀 크기(maximumPoolSize)까지만 허용한다
+ * 풀 크기는 실행중에 바뀔수 있으므로(PoolSizeController) 허가를 얻을때마다 현재 크기를 읽어서 세마포어를 맞춘다
+ * 나머지는 세마포어에서 기다린다. 가상 스레드는 기다리는 동안 캐리어 스레드를 놓아주므로 수천개가 대기해도 비용이 작고,
+ * 풀의 getConnection 에서 기다리다 connectionTimeout 으로 실패하는 일이 없다.
+ *
+ * memberService 는 트랜잭션 프록시여야 한다 (이체 1건 = 트랜잭션 1개 = 커넥션 1개)
+ */
+@Slf4j
+public class TransferExecutor implements AutoCloseable {
+
+    private final MemberServiceV4 memberService;
+    private final IntSupplier limit;
+    private final ResizableSemaphore permits;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile int maxConcurrency;
+
+    public TransferExecutor(MemberServiceV4 memberService, int maxConcurrency) {
+        this(memberService, validate(maxConcurrency));
+    }
+
+    /**
+     * 히카리 풀 크기만큼 동시에 실행한다 (실행중에 바뀐 maximumPoolSize 도 따라간다)
+     */
+    public TransferExecutor(MemberServiceV4 memberService, HikariDataSource dataSource) {
+        this(memberService, (IntSupplier) dataSource::getMaximumPoolSize);
+    }
+
+    /**
+     * @param limit 동시에 실행할 수, 허가를 얻을때마다 읽는다 (1 보다 작으면 1)
+     */
+    public TransferExecutor(MemberServiceV4 memberService, IntSupplier limit) {
+        this.memberService = memberService;
+        this.limit = limit;
+        this.maxConcurrency = currentLimit();
+        this.permits = new ResizableSemaphore(maxConcurrency); //먼저 온 요청부터 처리
+    }
+
+    private static IntSupplier validate(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be positive maxConcurrency=" + maxConcurrency);
+        }
+        return () -> maxConcurrency;
+    }
+
+    public CompletableFuture<Void> accountTransfer(String fromId, String toId, int money) {
+        return submit(() -> {
+            memberService.accountTransfer(fromId, toId, money);
+            return null;
+        });
+    }
+
+    public CompletableFuture<TransferResult> transferAll(List<Transfer> transfers) {
+        return submit(() -> memberService.transferAll(transfers));
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(() -> withPermit(task), executor);
+    }
+
+    private <T> T withPermit(Supplier<T> task) {
+        resize();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while waiting for a connection permit");
+        }
+        try {
+            return task.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 세마포어 크기를 현재 limit 에 맞춘다
+     * 줄일때 이미 실행중인 이체는 그대로 두고, 끝나서 반환된 허가가 줄어든 만큼 사라진다
+     */
+    private synchronized void resize() {
+        int target = currentLimit();
+        int diff = target - maxConcurrency;
+        if (diff > 0) {
+            permits.release(diff);
+        } else if (diff < 0) {
+            permits.reducePermits(-diff);
+        }
+        if (diff != 0) {
+            log.info("transfer concurrency resized {} -> {}", maxConcurrency, target);
+            maxConcurrency = target;
+        }
+    }
+
+    private int currentLimit() {
+        return Math.max(1, limit.getAsInt());
+    }
+
+    public int getMaxConcurrency() {
+        resize();
+        return maxConcurrency;
+    }
+
+    /**
+     * 현재 DB 작업중인 이체 수
+     */
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * 세마포어에서 기다리는 이체 수 (추정값)
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * 이미 받은 이체가 모두 끝날때까지 기다린다
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    /**
+     * reducePermits 는 protected 이므로 열어준다
+     */
+    private static final class ResizableSemaphore extends Semaphore {
+
+        private ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
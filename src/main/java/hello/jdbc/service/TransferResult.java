@@ -0,0 +1,30 @@
+package hello.jdbc.service;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * 여러건 이체의 결과
+ * succeeded: 반영된 이체 수
+ * failures: 건너뛴 이체 (skipFailed 모드에서만 채워진다)
+ */
+@Value
+public class TransferResult {
+    int succeeded;
+    List<Failure> failures;
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    /**
+     * index: 요청 목록에서 실패한 이체의 위치
+     */
+    @Value
+    public static class Failure {
+        int index;
+        Transfer transfer;
+        RuntimeException cause;
+    }
+}
@@ -0,0 +1,183 @@
+package hello.jdbc.warmup;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 시작 직후 첫 요청들이 커넥션 생성, H2 세션 준비, SQL 파싱 비용을 내지 않도록 미리 실행한다
+ *
+ * 1. 풀 채우기: minimumIdle 개의 커넥션을 동시에 빌렸다가 반납한다 (히카리가 아니면 1개)
+ *    LazyConnectionDataSourceProxy 의 커넥션은 사용하기 전에는 풀에서 꺼내지 않으므로 unwrap 한 HikariDataSource 에서 직접 빌린다
+ * 2. 쿼리: 커넥션 수 만큼의 스레드가 동시에 findById, update 를 iterations 번 실행한다
+ *    동시에 실행하므로 풀의 커넥션마다 쿼리가 실행된다 (StatementCachingDataSource 라면 커넥션별 캐시도 채워진다)
+ *    WARM_UP_MEMBER_ID 는 member_id(varchar(10)) 보다 길어서 실제 회원이 있을수 없다
+ *    update 는 한 row 도 바꾸지 않고, findById 는 '없음' 으로 끝난다 (SQL 파싱, 실행 경로는 같다)
+ *
+ * ApplicationRunner 로 등록하면 스프링 부트는 러너가 모두 끝난 후에 ReadinessState.ACCEPTING_TRAFFIC 을 발행한다
+ * 워밍업이 끝나기 전에는 준비 완료로 보고되지 않는다
+ */
+@Slf4j
+public class PoolWarmer implements ApplicationRunner {
+
+    public static final String WARM_UP_MEMBER_ID = "warmup-absent"; //13자, 저장할수 없는 id
+    public static final String FIND_BY_ID = "findById";
+    public static final String UPDATE = "update";
+
+    private final DataSource dataSource;
+    private final MemberRepository repository;
+    private int iterations = 100;
+    private Set<String> queries = Set.of(FIND_BY_ID, UPDATE);
+    private volatile WarmUpReport lastReport;
+
+    public PoolWarmer(DataSource dataSource, MemberRepository repository) {
+        this.dataSource = dataSource;
+        this.repository = repository;
+    }
+
+    /**
+     * 쿼리 종류마다 실행할 횟수 (모든 스레드 합계)
+     */
+    public void setIterations(int iterations) {
+        if (iterations < 0) {
+            throw new IllegalArgumentException("iterations must not be negative iterations=" + iterations);
+        }
+        this.iterations = iterations;
+    }
+
+    /**
+     * 실행할 쿼리 (findById, update)
+     */
+    public void setQueries(Set<String> queries) {
+        for (String query : queries) {
+            if (!query.equals(FIND_BY_ID) && !query.equals(UPDATE)) {
+                throw new IllegalArgumentException("unknown warm-up query=" + query);
+            }
+        }
+        this.queries = Set.copyOf(queries);
+    }
+
+    /**
+     * @return 마지막 워밍업 결과 (아직 실행하지 않았으면 null)
+     */
+    public WarmUpReport getLastReport() {
+        return lastReport;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        warmUp();
+    }
+
+    public WarmUpReport warmUp() {
+        long start = System.nanoTime();
+        int connections = fillPool();
+        long filled = System.nanoTime();
+        int executed = runQueries(connections);
+        long end = System.nanoTime();
+
+        WarmUpReport report = new WarmUpReport(connections, executed,
+                TimeUnit.NANOSECONDS.toMillis(filled - start), TimeUnit.NANOSECONDS.toMillis(end - filled));
+        lastReport = report;
+        log.info("warm-up finished connections={}, queries={}, poolFill={}ms, queries={}ms, total={}ms",
+                report.getConnections(), report.getQueries(), report.getPoolFillMillis(), report.getQueryMillis(), report.totalMillis());
+        return report;
+    }
+
+    /**
+     * 한번에 target 개를 빌려야 풀이 그만큼의 물리 커넥션을 만든다
+     */
+    private int fillPool() {
+        HikariDataSource hikari = hikari();
+        DataSource pool = hikari != null ? hikari : dataSource;
+        int target = hikari != null ? Math.max(1, hikari.getMinimumIdle()) : 1;
+        List<Connection> borrowed = new ArrayList<>(target);
+        try {
+            for (int i = 0; i < target; i++) {
+                borrowed.add(pool.getConnection());
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("warm-up pool fill failed borrowed=" + borrowed.size() + ", target=" + target, e);
+        } finally {
+            borrowed.forEach(JdbcUtils::closeConnection);
+        }
+        return target;
+    }
+
+    private HikariDataSource hikari() {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource.unwrap(HikariDataSource.class);
+            }
+        } catch (SQLException e) {
+            log.debug("unwrap failed", e);
+        }
+        return null;
+    }
+
+    private int runQueries(int threads) {
+        if (queries.isEmpty() || iterations == 0) {
+            return 0;
+        }
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("warm-up-", 0).factory())) {
+            List<Future<Integer>> futures = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                int share = iterations / threads + (t < iterations % threads ? 1 : 0);
+                futures.add(executor.submit(() -> execute(share)));
+            }
+            int executed = 0;
+            for (Future<Integer> future : futures) {
+                executed += future.get();
+            }
+            return executed;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("warm-up query failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("warm-up interrupted", e);
+        }
+    }
+
+    private int execute(int count) {
+        int executed = 0;
+        for (int i = 0; i < count; i++) {
+            if (queries.contains(FIND_BY_ID)) {
+                findAbsent();
+                executed++;
+            }
+            if (queries.contains(UPDATE)) {
+                repository.update(WARM_UP_MEMBER_ID, 0); //where 에 맞는 row 가 없다
+                executed++;
+            }
+        }
+        return executed;
+    }
+
+    /**
+     * 구현체마다 '없음' 을 알리는 예외가 다르다 (V4: NoSuchElementException, V5: EmptyResultDataAccessException)
+     */
+    private void findAbsent() {
+        try {
+            repository.findById(WARM_UP_MEMBER_ID);
+        } catch (EmptyResultDataAccessException | NoSuchElementException e) {
+            //예상한 결과
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package hello.jdbc.warmup;
+
+import hello.jdbc.repository.MemberRepositoryV5;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.Set;
+
+/**
+ * hello.jdbc.warmup.enabled=true 이면 시작할때 PoolWarmer 를 실행한다
+ * hello.jdbc.warmup.iterations : 쿼리 종류마다 실행할 횟수 (기본 100)
+ * hello.jdbc.warmup.queries : 실행할 쿼리 (기본 findById,update)
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "hello.jdbc.warmup.enabled", havingValue = "true")
+public class WarmUpConfig {
+
+    @Bean
+    public PoolWarmer poolWarmer(DataSource dataSource,
+                                 @Value("${hello.jdbc.warmup.iterations:100}") int iterations,
+                                 @Value("${hello.jdbc.warmup.queries:findById,update}") Set<String> queries) {
+        PoolWarmer warmer = new PoolWarmer(dataSource, new MemberRepositoryV5(dataSource));
+        warmer.setIterations(iterations);
+        warmer.setQueries(queries);
+        return warmer;
+    }
+}
@@ -0,0 +1,19 @@
+package hello.jdbc.warmup;
+
+import lombok.Value;
+
+/**
+ * 워밍업 결과
+ * connections: 채운 커넥션 수, queries: 실행한 쿼리 수
+ */
+@Value
+public class WarmUpReport {
+    int connections;
+    int queries;
+    long poolFillMillis;
+    long queryMillis;
+
+    public long totalMillis() {
+        return poolFillMillis + queryMillis;
+    }
+}
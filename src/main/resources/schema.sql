@@ -0,0 +1,30 @@
+create table if not exists member (
+    member_id varchar(10),
+    money integer not null default 0,
+    primary key (member_id)
+);
+
+-- 낙관적 락 (기존 TCP 서버 DB 에도 SchemaInitializer, spring.sql.init 이 실행해서 컬럼을 추가한다)
+alter table member add column if not exists version bigint default 0 not null;
+
+-- 인기 계좌의 잔액 분산 (ShardedMemberRepository). 샤딩된 계좌의 잔액 = member.money + 슬롯 money 합계
+create table if not exists member_balance_slot (
+    member_id varchar(10),
+    slot integer not null,
+    money integer not null default 0,
+    version bigint default 0 not null,
+    primary key (member_id, slot)
+);
+
+-- 이체 원장 (LedgerRepository). 잔액 = member.money + 아직 합치지 않은(compacted = false) 원장 합계
+create table if not exists transfer_ledger (
+    entry_id bigint auto_increment primary key,
+    from_id varchar(10) not null,
+    to_id varchar(10) not null,
+    money integer not null,
+    created_at timestamp default current_timestamp not null,
+    compacted boolean default false not null
+);
+create index if not exists transfer_ledger_from on transfer_ledger (from_id, compacted);
+create index if not exists transfer_ledger_to on transfer_ledger (to_id, compacted);
+create index if not exists transfer_ledger_compacted on transfer_ledger (compacted, entry_id);
@@ -0,0 +1,84 @@
+package hello.jdbc.connection;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.*;
+
+class ConnectionProfileTest {
+
+    @Test
+    @DisplayName("이름으로 프로필을 선택하고, 없으면 TCP")
+    void from() {
+        assertThat(ConnectionProfile.from(null)).isEqualTo(ConnectionProfile.TCP);
+        assertThat(ConnectionProfile.from(" ")).isEqualTo(ConnectionProfile.TCP);
+        assertThat(ConnectionProfile.from("memory")).isEqualTo(ConnectionProfile.MEMORY);
+        assertThat(ConnectionProfile.from("FILE")).isEqualTo(ConnectionProfile.FILE);
+        assertThatThrownBy(() -> ConnectionProfile.from("oracle"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("파일 DB 는 MVStore 캐시 크기를 설정할수 있다")
+    void fileCacheSize() {
+        String before = System.getProperty("hello.jdbc.file.cacheSize");
+        System.setProperty("hello.jdbc.file.cacheSize", "1024");
+        try {
+            assertThat(ConnectionProfile.FILE.getUrl()).startsWith("jdbc:h2:file:").contains("CACHE_SIZE=1024");
+        } finally {
+            if (before == null) {
+                System.clearProperty("hello.jdbc.file.cacheSize");
+            } else {
+                System.setProperty("hello.jdbc.file.cacheSize", before);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("같은 JVM 의 DB 는 initializeDefault 로 member 테이블이 만들어진다")
+    void schemaInitialized() throws SQLException {
+        if (!PROFILE.isEmbedded()) {
+            return;
+        }
+        SchemaInitializer.initializeDefault();
+        try (Connection con = DriverManager.getConnection(URL, USERNAME, PASSWORD);
+             ResultSet rs = con.getMetaData().getTables(null, null, "MEMBER", null)) {
+            assertThat(rs.next()).isTrue();
+        }
+    }
+
+    @Test
+    @DisplayName("version 컬럼이 없는 기존 DB 에 schema.sql 을 실행하면 컬럼이 추가되고 기존 회원은 version 0")
+    void migrateLegacySchema() throws SQLException {
+        String legacyUrl = "jdbc:h2:mem:legacy;DB_CLOSE_DELAY=-1";
+        try (Connection con = DriverManager.getConnection(legacyUrl, USERNAME, PASSWORD);
+             Statement stmt = con.createStatement()) {
+            stmt.execute("drop table if exists member");
+            stmt.execute("create table member (member_id varchar(10), money integer not null default 0, primary key (member_id))");
+            stmt.execute("insert into member(member_id, money) values ('memberA', 10000)");
+        }
+
+        SchemaInitializer.initialize(legacyUrl, USERNAME, PASSWORD);
+
+        try (Connection con = DriverManager.getConnection(legacyUrl, USERNAME, PASSWORD);
+             Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("select money, version from member where member_id = 'memberA'")) {
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getInt("money")).isEqualTo(10000);
+            assertThat(rs.getLong("version")).isZero();
+        }
+    }
+
+    @Test
+    @DisplayName("접속할수 없는 TCP 서버면 예외 없이 건너뛴다")
+    void initializeIfReachable() {
+        assertThat(SchemaInitializer.initializeIfReachable("jdbc:h2:tcp://localhost:1/~/none", USERNAME, PASSWORD)).isFalse();
+    }
+}
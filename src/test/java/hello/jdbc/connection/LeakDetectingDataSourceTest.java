@@ -0,0 +1,118 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.env.MockEnvironment;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class LeakDetectingDataSourceTest {
+
+    @Test
+    @DisplayName("임계치를 넘겨 보유한 커넥션은 호출 위치와 함께 한번만 보고된다")
+    void longHold() throws SQLException, InterruptedException {
+        LeakDetectingDataSource dataSource = new LeakDetectingDataSource(
+                new DriverManagerDataSource(URL, USERNAME, PASSWORD), Duration.ofMillis(50), 1);
+
+        try (Connection con = dataSource.getConnection()) {
+            assertThat(dataSource.detectLongHolds()).isZero();
+            Thread.sleep(100);
+            assertThat(dataSource.detectLongHolds()).isEqualTo(1);
+            assertThat(dataSource.detectLongHolds()).isZero(); //이미 보고한 커넥션
+        }
+        assertThat(dataSource.getActiveCount()).isZero();
+
+        List<LeakDetectingDataSource.Offender> offenders = dataSource.topOffenders(10);
+        log.info("offenders={}", offenders);
+        assertThat(offenders).hasSize(1);
+        LeakDetectingDataSource.Offender offender = offenders.get(0);
+        assertThat(offender.getCallSite()).startsWith("LeakDetectingDataSourceTest.longHold:");
+        assertThat(offender.getLongHolds()).isEqualTo(1);
+        assertThat(offender.getLeaks()).isZero();
+        assertThat(offender.getMaxHoldMillis()).isGreaterThanOrEqualTo(100);
+        assertThat(offender.getSampleStack()).contains("LeakDetectingDataSourceTest.longHold");
+    }
+
+    @Test
+    @DisplayName("close() 하지 않은 커넥션은 GC 될때 누수로 보고되고 풀로 돌아간다")
+    void neverReturned() throws SQLException, InterruptedException {
+        HikariDataSource hikari = new HikariDataSource();
+        hikari.setJdbcUrl(URL);
+        hikari.setUsername(USERNAME);
+        hikari.setPassword(PASSWORD);
+        hikari.setMaximumPoolSize(1);
+
+        try (hikari) {
+            LeakDetectingDataSource dataSource = new LeakDetectingDataSource(hikari, Duration.ofSeconds(10), 100);
+            leak(dataSource);
+
+            for (int i = 0; i < 50 && dataSource.getActiveCount() > 0; i++) {
+                System.gc();
+                Thread.sleep(100);
+            }
+
+            List<LeakDetectingDataSource.Offender> offenders = dataSource.topOffenders(10);
+            log.info("offenders={}", offenders);
+            assertThat(offenders).hasSize(1);
+            assertThat(offenders.get(0).getCallSite()).startsWith("LeakDetectingDataSourceTest.leak:");
+            assertThat(offenders.get(0).getLeaks()).isEqualTo(1);
+            assertThat(hikari.getHikariPoolMXBean().getActiveConnections()).isZero();
+
+            //풀 크기가 1 이지만 누수된 커넥션이 돌아왔으므로 다시 빌릴수 있다
+            try (Connection con = dataSource.getConnection()) {
+                assertThat(con.isValid(1)).isTrue();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("정상적으로 반납한 커넥션은 보고하지 않는다")
+    void noOffender() throws SQLException {
+        LeakDetectingDataSource dataSource = new LeakDetectingDataSource(
+                new DriverManagerDataSource(URL, USERNAME, PASSWORD), Duration.ofSeconds(10), 100);
+
+        for (int i = 0; i < 3; i++) {
+            try (Connection con = dataSource.getConnection()) {
+                con.setAutoCommit(true);
+            }
+        }
+
+        assertThat(dataSource.detectLongHolds()).isZero();
+        assertThat(dataSource.getActiveCount()).isZero();
+        assertThat(dataSource.topOffenders(10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("컨텍스트가 닫히면 감싼 DataSource 의 주기 실행을 멈춘다")
+    void stopOnContextClose() {
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.setEnvironment(new MockEnvironment().withProperty("hello.jdbc.leak-detection.threshold", "10s"));
+            context.registerBean("dataSource", DataSource.class, () -> new DriverManagerDataSource(URL, USERNAME, PASSWORD));
+            context.register(LeakDetectionConfig.class);
+            context.refresh();
+
+            LeakDetectingDataSource dataSource = context.getBean(LeakDetectingDataSource.class);
+            assertThat(dataSource.isRunning()).isTrue();
+
+            context.close();
+            assertThat(dataSource.isRunning()).isFalse();
+        }
+    }
+
+    private void leak(LeakDetectingDataSource dataSource) throws SQLException {
+        Connection con = dataSource.getConnection();
+        con.setAutoCommit(true); //close() 하지 않고 버린다
+    }
+}
@@ -0,0 +1,192 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 부하 시뮬레이션 - demand 개의 요청이 동시에 커넥션을 원한다
+ * active = min(demand, 풀 크기), pending = 나머지
+ * DB 는 DB_CAPACITY 개의 동시 실행까지는 2ms, 넘으면 하나당 10ms 씩 느려진다 (latencyCeiling 50ms -> 34개까지 허용)
+ */
+@Slf4j
+class PoolSizeControllerTest {
+
+    static final int DB_CAPACITY = 30;
+
+    private HikariConfig config;
+    private SimulatedLoad load;
+    private PoolSizeController controller;
+
+    @BeforeEach
+    void before() {
+        config = new HikariConfig();
+        config.setMaximumPoolSize(10);
+        config.setMinimumIdle(2);
+        load = new SimulatedLoad(config);
+        controller = new PoolSizeController(config, load, 2, 40);
+    }
+
+    @Test
+    @DisplayName("낮과 밤(20배 차이) 부하에서 각각 한 크기로 수렴하고 진동하지 않는다")
+    void convergeDayAndNight() {
+        load.demand = 40;
+        List<Integer> day = run(200);
+        log.info("day={}", day);
+        assertThat(last(day, 50)).containsOnly(34); //DB 왕복 시간이 latencyCeiling 을 넘지 않는 가장 큰 크기
+        assertThat(day).allMatch(size -> size <= 40);
+        assertThat(resizes(day)).isLessThanOrEqualTo(12);
+        assertThat(peakAfterFirstBackOff(day)).isLessThanOrEqualTo(36); //과부하 후에는 그 크기로 돌아가지 않는다
+
+        load.demand = 2;
+        List<Integer> night = run(400);
+        log.info("night={}", night);
+        assertThat(last(night, 50)).containsOnly(night.get(night.size() - 1));
+        assertThat(controller.getPoolSize()).isBetween(3, 4); //active 2 를 highUtilization(0.85) 이하로 받을수 있는 크기
+        assertThat(config.getMinimumIdle()).isLessThanOrEqualTo(controller.getPoolSize());
+
+        load.demand = 40;
+        List<Integer> nextDay = run(200);
+        log.info("nextDay={}", nextDay);
+        assertThat(last(nextDay, 50)).containsOnly(34);
+        //과부하 크기를 기억하므로 다시 과부하를 만들지 않고 바로 34 까지 늘린다
+        assertThat(nextDay).allMatch(size -> size <= 34);
+        assertThat(resizes(nextDay)).isLessThanOrEqualTo(8);
+    }
+
+    @Test
+    @DisplayName("과부하 크기는 DB 에 여유가 생겼을때만 잊는다")
+    void forgetOverloadOnHeadroom() {
+        load.demand = 40;
+        run(200);
+        assertThat(controller.getPoolSize()).isEqualTo(34);
+
+        load.dbCapacity = 60; //DB 증설 -> 34 개에서 왕복 시간이 낮아진다
+        List<Integer> sizes = run(100);
+        log.info("sizes={}", sizes);
+        assertThat(last(sizes, 50)).containsOnly(40);
+    }
+
+    @Test
+    @DisplayName("일정한 부하에서는 사용률이 highUtilization 아래로 내려가면 멈춘다")
+    void steadyLoad() {
+        load.demand = 12;
+        List<Integer> sizes = run(200);
+        log.info("sizes={}", sizes);
+
+        int settled = sizes.get(sizes.size() - 1);
+        assertThat(last(sizes, 150)).containsOnly(settled);
+        assertThat((double) load.demand / settled).isLessThan(0.85).isGreaterThan(0.4);
+    }
+
+    @Test
+    @DisplayName("DB 가 과부하면 대기 스레드가 있어도 늘리지 않고 줄인다")
+    void dbOverloaded() {
+        config.setMaximumPoolSize(40);
+        load.demand = 60;
+        List<Integer> sizes = run(100);
+        log.info("sizes={}", sizes);
+
+        assertThat(sizes.get(sizes.size() - 1)).isLessThanOrEqualTo(34);
+        assertThat(last(sizes, 30)).containsOnly(sizes.get(sizes.size() - 1));
+        assertThat(resizes(sizes)).isLessThanOrEqualTo(8);
+        assertThat(peakAfterFirstBackOff(sizes)).isLessThanOrEqualTo(35);
+    }
+
+    @Test
+    @DisplayName("히카리 풀의 maximumPoolSize 를 실행 중에 바꾼다")
+    void resizeHikari() throws SQLException {
+        HikariDataSource hikari = new HikariDataSource();
+        hikari.setJdbcUrl(URL);
+        hikari.setUsername(USERNAME);
+        hikari.setPassword(PASSWORD);
+        hikari.setMaximumPoolSize(2);
+        hikari.setMinimumIdle(1);
+
+        try (hikari) {
+            PoolSizeController hikariController = PoolSizeController.forHikari(hikari, 1, 4);
+            hikariController.setTicks(1, 1, 0);
+
+            List<Connection> borrowed = new ArrayList<>();
+            borrowed.add(hikari.getConnection());
+            borrowed.add(hikari.getConnection()); //사용률 100%
+            try {
+                assertThat(hikariController.tick()).isEqualTo(3);
+                borrowed.add(hikari.getConnection()); //늘어난 크기 만큼 더 빌릴수 있다
+                assertThat(hikari.getHikariPoolMXBean().getActiveConnections()).isEqualTo(3);
+            } finally {
+                for (Connection con : borrowed) {
+                    con.close();
+                }
+            }
+            assertThat(hikari.getMaximumPoolSize()).isEqualTo(3);
+        }
+    }
+
+    private List<Integer> run(int ticks) {
+        List<Integer> sizes = new ArrayList<>(ticks);
+        for (int i = 0; i < ticks; i++) {
+            sizes.add(controller.tick());
+        }
+        return sizes;
+    }
+
+    private static List<Integer> last(List<Integer> sizes, int count) {
+        return sizes.subList(sizes.size() - count, sizes.size());
+    }
+
+    private static int resizes(List<Integer> sizes) {
+        int count = 0;
+        for (int i = 1; i < sizes.size(); i++) {
+            if (!sizes.get(i).equals(sizes.get(i - 1))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 처음 줄어든(과부하로 물러난) 이후의 최대 크기
+     */
+    private static int peakAfterFirstBackOff(List<Integer> sizes) {
+        for (int i = 1; i < sizes.size(); i++) {
+            if (sizes.get(i) < sizes.get(i - 1)) {
+                return sizes.subList(i, sizes.size()).stream().max(Integer::compare).orElseThrow();
+            }
+        }
+        throw new AssertionError("never backed off sizes=" + sizes);
+    }
+
+    static class SimulatedLoad implements Supplier<PoolSignals> {
+
+        private final HikariConfig config;
+        int demand;
+        int dbCapacity = DB_CAPACITY;
+
+        SimulatedLoad(HikariConfig config) {
+            this.config = config;
+        }
+
+        @Override
+        public PoolSignals get() {
+            int size = config.getMaximumPoolSize();
+            int active = Math.min(demand, size);
+            int pending = Math.max(0, demand - size);
+            double acquireWait = pending > 0 ? 20.0 * pending / size : 0.5;
+            double dbLatency = 2 + 10.0 * Math.max(0, active - dbCapacity);
+            return new PoolSignals(active, pending, acquireWait, dbLatency);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package hello.jdbc.connection;
+
+import hello.jdbc.domain.Member;
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 메모리 DB 두개(rwprimary, rwreplica)를 프라이머리, 레플리카로 사용한다
+ * 복제는 하지 않는다. 같은 회원을 서로 다른 잔액으로 넣어두고 어느 DB 에서 읽었는지 확인한다
+ */
+class ReadWriteRoutingDataSourceTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:rwprimary;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:rwreplica;DB_CLOSE_DELAY=-1";
+    static final String MEMBER_A = "memberA";
+
+    private ReadWriteRoutingDataSource routing;
+    private DataSource dataSource;
+    private MemberRepositoryV5 repository;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initialize(PRIMARY_URL, USERNAME, PASSWORD);
+        SchemaInitializer.initialize(REPLICA_URL, USERNAME, PASSWORD);
+    }
+
+    @BeforeEach
+    void before() {
+        reset(PRIMARY_URL, 1000);
+        reset(REPLICA_URL, 2000);
+        routing = new ReadWriteRoutingDataSource(dataSource(PRIMARY_URL), List.of(dataSource(REPLICA_URL)));
+        dataSource = new LazyConnectionDataSourceProxy(routing);
+        repository = new MemberRepositoryV5(dataSource);
+
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    @DisplayName("읽기 전용 트랜잭션과 readReplica 는 레플리카, 나머지는 프라이머리")
+    void routing() {
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(1000);
+        assertThat(readOnly.execute(status -> repository.findById(MEMBER_A).getMoney())).isEqualTo(2000);
+        assertThat(readWrite.execute(status -> repository.findById(MEMBER_A).getMoney())).isEqualTo(1000);
+        assertThat(ReadWriteRoutingDataSource.readReplica(() -> repository.findById(MEMBER_A).getMoney())).isEqualTo(2000);
+
+        //readReplica 라도 읽기/쓰기 트랜잭션 안이면 프라이머리
+        readWrite.executeWithoutResult(status -> assertThat(
+                ReadWriteRoutingDataSource.readReplica(() -> repository.findById(MEMBER_A).getMoney())).isEqualTo(1000));
+
+        //쓰기는 프라이머리
+        repository.update(MEMBER_A, 1500);
+        assertThat(readWrite.execute(status -> repository.findById(MEMBER_A).getMoney())).isEqualTo(1500);
+        assertThat(readOnly.execute(status -> repository.findById(MEMBER_A).getMoney())).isEqualTo(2000);
+    }
+
+    @Test
+    @DisplayName("레플리카를 라운드 로빈으로 사용한다")
+    void roundRobin() {
+        String secondUrl = "jdbc:h2:mem:rwreplica2;DB_CLOSE_DELAY=-1";
+        SchemaInitializer.initialize(secondUrl, USERNAME, PASSWORD);
+        reset(secondUrl, 3000);
+        routing = new ReadWriteRoutingDataSource(dataSource(PRIMARY_URL), List.of(dataSource(REPLICA_URL), dataSource(secondUrl)));
+        repository = new MemberRepositoryV5(new LazyConnectionDataSourceProxy(routing));
+
+        List<Integer> reads = List.of(read(), read(), read(), read());
+        assertThat(reads).containsExactlyInAnyOrder(2000, 2000, 3000, 3000);
+        assertThat(reads.get(0)).isNotEqualTo(reads.get(1));
+    }
+
+    @Test
+    @DisplayName("커넥션을 얻지 못한 레플리카는 제외하고, 회복 시간이 지나면 다시 시도한다")
+    void healthExclusion() throws InterruptedException {
+        //아무도 듣지 않는 포트라서 커넥션을 얻지 못한다
+        DataSource broken = dataSource("jdbc:h2:tcp://localhost:1/~/none");
+        routing = new ReadWriteRoutingDataSource(dataSource(PRIMARY_URL), List.of(broken, dataSource(REPLICA_URL)));
+        routing.setRecoveryInterval(Duration.ofMillis(100));
+        repository = new MemberRepositoryV5(new LazyConnectionDataSourceProxy(routing));
+
+        assertThat(read()).isEqualTo(2000);
+        assertThat(read()).isEqualTo(2000);
+        assertThat(routing.getHealthyReplicas()).containsExactly("replica-1");
+
+        Thread.sleep(150);
+        assertThat(routing.getHealthyReplicas()).containsExactly("replica-0", "replica-1");
+        routing.checkHealth();
+        assertThat(routing.getHealthyReplicas()).containsExactly("replica-1");
+    }
+
+    @Test
+    @DisplayName("사용할수 있는 레플리카가 없으면 프라이머리")
+    void fallbackToPrimary() {
+        routing = new ReadWriteRoutingDataSource(dataSource(PRIMARY_URL),
+                List.of(dataSource("jdbc:h2:tcp://localhost:1/~/none")));
+        repository = new MemberRepositoryV5(new LazyConnectionDataSourceProxy(routing));
+
+        assertThat(read()).isEqualTo(1000);
+        assertThat(routing.getHealthyReplicas()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("사용자, 비밀번호를 지정해도 장애 레플리카를 제외하고 다음 레플리카로 간다")
+    void credentialsFailover() throws SQLException {
+        routing = new ReadWriteRoutingDataSource(dataSource(PRIMARY_URL),
+                List.of(dataSource("jdbc:h2:tcp://localhost:1/~/none"), dataSource(REPLICA_URL)));
+
+        Connection con = ReadWriteRoutingDataSource.readReplica(() -> {
+            try {
+                return routing.getConnection(USERNAME, PASSWORD);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        try (con) {
+            assertThat(con.getMetaData().getURL()).contains("rwreplica");
+        }
+        assertThat(routing.getHealthyReplicas()).containsExactly("replica-1");
+    }
+
+    @Test
+    @DisplayName("ReplicaReadMemberRepository 는 트랜잭션 밖의 조회를 레플리카로, 쓰기는 프라이머리로 보낸다")
+    void replicaReadRepository() {
+        MemberRepository replicaRead = new ReplicaReadMemberRepository(repository);
+
+        assertThat(replicaRead.findById(MEMBER_A).getMoney()).isEqualTo(2000);
+        assertThat(replicaRead.findAllById(List.of(MEMBER_A))).extracting(Member::getMoney).containsExactly(2000);
+        assertThat(replicaRead.findPage(null, 10).getMembers()).extracting(Member::getMoney).containsExactly(2000);
+
+        replicaRead.update(MEMBER_A, 1500);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(1500); //프라이머리
+        assertThat(replicaRead.findById(MEMBER_A).getMoney()).isEqualTo(2000); //복제하지 않으므로 레플리카는 그대로
+
+        //읽기/쓰기 트랜잭션 안의 조회는 프라이머리
+        assertThat(readWrite.execute(status -> replicaRead.findById(MEMBER_A).getMoney())).isEqualTo(1500);
+    }
+
+    @Test
+    @DisplayName("회복 시간은 양수만 허용한다")
+    void recoveryIntervalMustBePositive() {
+        assertThatThrownBy(() -> routing.setRecoveryInterval(Duration.ZERO))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> routing.setRecoveryInterval(Duration.ofMillis(-1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("컨텍스트가 닫히면 프라이머리, 레플리카 풀을 닫는다")
+    void closeTargets() {
+        HikariDataSource primary = new HikariDataSource();
+        primary.setJdbcUrl(PRIMARY_URL);
+        HikariDataSource replica = new HikariDataSource();
+        replica.setJdbcUrl(REPLICA_URL);
+
+        new ReadWriteRoutingConfig.RoutingTargets(primary, List.of(replica)).close();
+
+        assertThat(primary.isClosed()).isTrue();
+        assertThat(replica.isClosed()).isTrue();
+    }
+
+    private int read() {
+        return ReadWriteRoutingDataSource.readReplica(() -> repository.findById(MEMBER_A).getMoney());
+    }
+
+    private static void reset(String url, int money) {
+        JdbcTemplate template = new JdbcTemplate(dataSource(url));
+        template.update("delete from member where member_id=?", MEMBER_A);
+        template.update("insert into member(member_id, money) values (?,?)", MEMBER_A, money);
+    }
+
+    private static DataSource dataSource(String url) {
+        return new DriverManagerDataSource(url, USERNAME, PASSWORD);
+    }
+}
@@ -0,0 +1,124 @@
+package hello.jdbc.connection;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ScopedConnectionContextTest {
+
+    public static final String MEMBER_A = "scopedA";
+    public static final String MEMBER_B = "scopedB";
+
+    private DriverManagerDataSource dataSource;
+    private MemberRepositoryV4_2 repository;
+
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initializeDefault();
+    }
+
+    @BeforeEach
+    void before() {
+        dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        repository = new MemberRepositoryV4_2(dataSource, ConnectionLookup.SCOPED);
+    }
+
+    @AfterEach
+    void after() {
+        repository.deleteAll(List.of(MEMBER_A, MEMBER_B));
+    }
+
+    @Test
+    @DisplayName("스코프 안의 조회는 같은 커넥션, 스코프 밖은 바인딩이 없다")
+    void sameConnectionInScope() throws Exception {
+        Connection[] bound = new Connection[2];
+        ScopedConnectionContext.inTransaction(dataSource, () -> {
+            bound[0] = ConnectionLookup.SCOPED.getConnection(dataSource);
+            bound[1] = ConnectionLookup.SCOPED.getConnection(dataSource);
+            ConnectionLookup.SCOPED.releaseConnection(bound[0], dataSource); //트랜잭션 커넥션은 닫지 않는다
+            assertThat(bound[0].isClosed()).isFalse();
+            assertThat(TransactionSynchronizationManager.getResourceMap()).isEmpty(); //ThreadLocal 을 사용하지 않는다
+            return null;
+        });
+
+        assertThat(bound[0]).isSameAs(bound[1]);
+        assertThat(bound[0].isClosed()).isTrue();
+        assertThat(ScopedConnectionContext.currentConnection(dataSource)).isNull();
+    }
+
+    @Test
+    @DisplayName("정상 종료하면 커밋")
+    void commit() throws Exception {
+        ScopedConnectionContext.inTransaction(dataSource, () -> {
+            repository.save(new Member(MEMBER_A, 10000));
+            repository.save(new Member(MEMBER_B, 20000));
+            return null;
+        });
+
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(20000);
+    }
+
+    @Test
+    @DisplayName("예외가 나면 롤백, 예외는 그대로 던진다")
+    void rollback() {
+        assertThatThrownBy(() -> ScopedConnectionContext.inTransaction(dataSource, () -> {
+            repository.save(new Member(MEMBER_A, 10000));
+            throw new IllegalStateException("예외 발생");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThatThrownBy(() -> repository.findById(MEMBER_A))
+                .isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    @DisplayName("같은 DataSource 로 중첩하면 바깥 트랜잭션에 참여한다")
+    void nested() throws Exception {
+        assertThatThrownBy(() -> ScopedConnectionContext.inTransaction(dataSource, () -> {
+            Connection outer = ScopedConnectionContext.currentConnection(dataSource);
+            ScopedConnectionContext.inTransaction(dataSource, () -> {
+                assertThat(ScopedConnectionContext.currentConnection(dataSource)).isSameAs(outer);
+                return repository.save(new Member(MEMBER_A, 10000));
+            });
+            throw new IllegalStateException("바깥에서 예외");
+        })).isInstanceOf(IllegalStateException.class);
+
+        //안쪽에서 저장한 회원도 함께 롤백
+        assertThatThrownBy(() -> repository.findById(MEMBER_A))
+                .isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    @DisplayName("가상 스레드마다 자신의 스코프를 가진다")
+    void virtualThreads() throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Integer> a = executor.submit(() -> ScopedConnectionContext.inTransaction(dataSource, () -> {
+                repository.save(new Member(MEMBER_A, 10000));
+                return repository.findById(MEMBER_A).getMoney();
+            }));
+            Future<Integer> b = executor.submit(() -> ScopedConnectionContext.inTransaction(dataSource, () -> {
+                repository.save(new Member(MEMBER_B, 20000));
+                return repository.findById(MEMBER_B).getMoney();
+            }));
+            assertThat(a.get()).isEqualTo(10000);
+            assertThat(b.get()).isEqualTo(20000);
+        }
+    }
+}
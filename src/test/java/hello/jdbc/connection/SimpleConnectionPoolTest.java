@@ -0,0 +1,152 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class SimpleConnectionPoolTest {
+
+    private SimpleConnectionPool pool;
+
+    @AfterEach
+    void after() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    @DisplayName("반납한 물리 커넥션을 다시 빌려준다")
+    void reuse() throws SQLException {
+        pool = new SimpleConnectionPool(URL, USERNAME, PASSWORD, 2, false, Duration.ofSeconds(1));
+
+        Connection physical;
+        try (Connection con = pool.getConnection()) {
+            physical = con.unwrap(Connection.class);
+        }
+        try (Connection con = pool.getConnection()) {
+            assertThat(con.unwrap(Connection.class)).isSameAs(physical);
+        }
+
+        SimpleConnectionPool.Stats stats = pool.stats();
+        log.info("stats={}", stats);
+        assertThat(stats.getCreatedCount()).isEqualTo(1);
+        assertThat(stats.getActiveCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("maxSize 만큼 빌려가면 connectionTimeout 후에 실패한다")
+    void timeout() throws SQLException {
+        pool = new SimpleConnectionPool(URL, USERNAME, PASSWORD, 1, false, Duration.ofMillis(100));
+
+        try (Connection con = pool.getConnection()) {
+            assertThatThrownBy(() -> pool.getConnection())
+                    .isInstanceOf(SQLTransientConnectionException.class);
+        }
+        try (Connection con = pool.getConnection()) {
+            assertThat(con.isValid(1)).isTrue();
+        }
+    }
+
+    @Test
+    @DisplayName("반납할때 커밋하지 않은 트랜잭션은 롤백하고 autoCommit, readOnly 를 되돌린다")
+    void resetOnReturn() throws SQLException {
+        pool = new SimpleConnectionPool(URL, USERNAME, PASSWORD, 1, false, Duration.ofSeconds(1));
+
+        Connection con = pool.getConnection();
+        con.setAutoCommit(false);
+        con.setReadOnly(true);
+        con.close();
+        con.close(); //두번 닫아도 한번만 반납한다
+
+        assertThat(con.isClosed()).isTrue();
+        assertThatThrownBy(con::createStatement).isInstanceOf(SQLException.class);
+
+        try (Connection next = pool.getConnection()) {
+            assertThat(next.getAutoCommit()).isTrue();
+            assertThat(next.isReadOnly()).isFalse();
+        }
+        assertThat(pool.stats().getActiveCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("플랫폼 스레드는 마지막에 반납한 커넥션을 다시 받는다")
+    void threadAffinity() throws Exception {
+        pool = new SimpleConnectionPool(URL, USERNAME, PASSWORD, 4, true, Duration.ofSeconds(1));
+
+        List<Connection> physicals = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            try (Connection con = pool.getConnection()) {
+                physicals.add(con.unwrap(Connection.class));
+            }
+        }
+        assertThat(physicals).containsOnly(physicals.get(0));
+        assertThat(pool.stats().getAffinityHitCount()).isEqualTo(2);
+
+        //가상 스레드는 친화를 사용하지 않는다
+        Thread virtual = Thread.ofVirtual().start(() -> {
+            for (int i = 0; i < 2; i++) {
+                try (Connection con = pool.getConnection()) {
+                    con.isValid(1);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        virtual.join();
+        assertThat(pool.stats().getAffinityHitCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("동시에 빌려도 maxSize 를 넘는 커넥션을 만들지 않고 같은 커넥션을 두 스레드에 주지 않는다")
+    void concurrentBorrow() throws Exception {
+        int maxSize = 4;
+        pool = new SimpleConnectionPool(URL, USERNAME, PASSWORD, maxSize, true, Duration.ofSeconds(10));
+        AtomicInteger inUse = new AtomicInteger();
+        AtomicInteger maxInUse = new AtomicInteger();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        try (Connection con = pool.getConnection()) {
+                            maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+                            con.setAutoCommit(false); //다른 스레드와 같은 커넥션이면 반납 전에 상태가 섞인다
+                            assertThat(con.getAutoCommit()).isFalse();
+                            inUse.decrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        SimpleConnectionPool.Stats stats = pool.stats();
+        log.info("stats={}", stats);
+        assertThat(maxInUse.get()).isLessThanOrEqualTo(maxSize);
+        assertThat(stats.getTotalCount()).isLessThanOrEqualTo(maxSize);
+        assertThat(stats.getBorrowCount()).isEqualTo(16 * 200);
+        assertThat(stats.getActiveCount()).isZero();
+    }
+}
@@ -0,0 +1,133 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV3;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class StatementCachingDataSourceTest {
+
+    /**
+     * 커넥션 풀에서 같은 물리 커넥션을 다시 받으면 이전에 준비한 PreparedStatement 를 재사용한다
+     */
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initializeDefault();
+    }
+
+    @Test
+    void reuseStatement() throws SQLException {
+        HikariDataSource hikari = new HikariDataSource();
+        hikari.setJdbcUrl(URL);
+        hikari.setUsername(USERNAME);
+        hikari.setPassword(PASSWORD);
+        hikari.setMaximumPoolSize(1);
+
+        try (hikari) {
+            StatementCachingDataSource dataSource = new StatementCachingDataSource(hikari, 16);
+            MemberRepositoryV3 repository = new MemberRepositoryV3(dataSource);
+
+            repository.save(new Member("memberA", 10000));
+            for (int i = 0; i < 3; i++) {
+                repository.findById("memberA"); //첫번째만 prepare, 나머지는 캐시에서 꺼낸다
+            }
+            repository.delete("memberA");
+
+            StatementCachingDataSource.Stats stats = dataSource.stats();
+            log.info("stats={}", stats);
+            assertThat(stats.getHitCount()).isEqualTo(2);
+            assertThat(stats.getMissCount()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void evictLeastRecentlyUsed() throws SQLException {
+        HikariDataSource hikari = new HikariDataSource();
+        hikari.setJdbcUrl(URL);
+        hikari.setUsername(USERNAME);
+        hikari.setPassword(PASSWORD);
+        hikari.setMaximumPoolSize(1);
+
+        try (hikari) {
+            StatementCachingDataSource dataSource = new StatementCachingDataSource(hikari, 1);
+            Connection con = dataSource.getConnection();
+            JdbcUtils.closeStatement(con.prepareStatement("select 1"));
+            JdbcUtils.closeStatement(con.prepareStatement("select 2")); //캐시 크기 1 을 넘어서 select 1 제거
+            JdbcUtils.closeStatement(con.prepareStatement("select 2"));
+            con.close();
+
+            assertThat(dataSource.stats().getEvictionCount()).isEqualTo(1);
+            assertThat(dataSource.stats().getHitCount()).isEqualTo(1);
+        }
+    }
+
+    /**
+     * 풀이 없으면 close() 때 물리 커넥션이 닫히므로 캐시도 함께 버린다
+     */
+    @Test
+    void invalidateOnPhysicalClose() throws SQLException {
+        StatementCachingDataSource dataSource = new StatementCachingDataSource(new DriverManagerDataSource(URL, USERNAME, PASSWORD), 16);
+
+        Connection con = dataSource.getConnection();
+        PreparedStatement pstmt = con.prepareStatement("select 1");
+        pstmt.executeQuery().close();
+        pstmt.close();
+        assertThat(pstmt.isClosed()).isTrue();
+        con.close();
+
+        assertThat(dataSource.stats().getInvalidatedCount()).isEqualTo(1);
+        assertThat(dataSource.stats().getCachedConnections()).isEqualTo(0);
+    }
+
+    /**
+     * 히카리는 물리 커넥션의 Statement 실행을 모르므로, 트랜잭션 중에 닫으면 이 DataSource 가 롤백해야 한다
+     */
+    @Test
+    void rollbackOnCloseInTransaction() throws SQLException {
+        HikariDataSource hikari = new HikariDataSource();
+        hikari.setJdbcUrl(URL);
+        hikari.setUsername(USERNAME);
+        hikari.setPassword(PASSWORD);
+        hikari.setMaximumPoolSize(1);
+
+        try (hikari) {
+            StatementCachingDataSource dataSource = new StatementCachingDataSource(hikari, 16);
+            MemberRepositoryV3 repository = new MemberRepositoryV3(dataSource);
+            repository.delete("memberA");
+
+            Connection con = dataSource.getConnection();
+            con.setAutoCommit(false);
+            PreparedStatement pstmt = con.prepareStatement("insert into member(member_id, money) values (?, ?)");
+            pstmt.setString(1, "memberA");
+            pstmt.setInt(2, 10000);
+            pstmt.executeUpdate();
+            pstmt.close();
+            con.close(); //commit, rollback 없이 반납
+
+            try (Connection next = dataSource.getConnection()) {
+                assertThat(next.getAutoCommit()).isTrue();
+                PreparedStatement select = next.prepareStatement("select count(*) from member where member_id = ?");
+                select.setString(1, "memberA");
+                try (var rs = select.executeQuery()) {
+                    rs.next();
+                    assertThat(rs.getInt(1)).isZero();
+                }
+                select.close();
+            } finally {
+                repository.delete("memberA");
+            }
+        }
+    }
+}
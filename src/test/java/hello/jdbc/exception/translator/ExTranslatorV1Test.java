@@ -1,11 +1,13 @@
 package hello.jdbc.exception.translator;
 
 import hello.jdbc.connection.ConnectionConst;
+import hello.jdbc.connection.SchemaInitializer;
 import hello.jdbc.domain.Member;
 import hello.jdbc.repository.ex.MyDbException;
 import hello.jdbc.repository.ex.MyDuplicateKeyException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
@@ -26,6 +28,11 @@ public class ExTranslatorV1Test {
     Repository repository;
     Service service;
 
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initializeDefault();
+    }
+
     @BeforeEach
     void init(){
         DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
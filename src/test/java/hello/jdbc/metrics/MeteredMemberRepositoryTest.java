@@ -0,0 +1,84 @@
+package hello.jdbc.metrics;
+
+import hello.jdbc.connection.SchemaInitializer;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static hello.jdbc.metrics.MeteredMemberRepository.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MeteredMemberRepositoryTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    private SimpleMeterRegistry registry;
+    private MeteredMemberRepository repository;
+
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initializeDefault();
+    }
+
+    @BeforeEach
+    void beforeEach() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        registry = new SimpleMeterRegistry();
+        repository = new MeteredMemberRepository(new MemberRepositoryV5(dataSource), registry);
+    }
+
+    @AfterEach
+    void after() {
+        repository.deleteAll(List.of(MEMBER_A, MEMBER_B));
+    }
+
+    @Test
+    @DisplayName("메서드별 실행 시간과 row 수를 기록한다")
+    void calls() {
+        repository.saveAll(List.of(new Member(MEMBER_A, 10000), new Member(MEMBER_B, 20000)));
+        repository.findById(MEMBER_A);
+        repository.findById(MEMBER_B);
+        repository.findAllById(List.of(MEMBER_A, MEMBER_B, "none"));
+
+        assertThat(registry.get(CALLS).tag("method", "findById").timer().count()).isEqualTo(2);
+        assertThat(registry.get(ROWS).tag("method", "saveAll").summary().totalAmount()).isEqualTo(2);
+        assertThat(registry.get(ROWS).tag("method", "findAllById").summary().totalAmount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("실패는 변환된 예외 타입으로 센다")
+    void errors() {
+        repository.save(new Member(MEMBER_A, 10000));
+        assertThatThrownBy(() -> repository.save(new Member(MEMBER_A, 10000)))
+                .isInstanceOf(DuplicateKeyException.class);
+
+        assertThat(registry.get(ERRORS).tags("method", "save", "exception", "DuplicateKeyException")
+                .counter().count()).isEqualTo(1);
+        //실패한 호출도 실행 시간은 기록된다
+        assertThat(registry.get(CALLS).tag("method", "save").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("스트림은 닫을때 읽은 row 수를 기록한다")
+    void stream() {
+        repository.saveAll(List.of(new Member(MEMBER_A, 10000), new Member(MEMBER_B, 20000)));
+
+        try (Stream<Member> stream = repository.streamWhere("member_id in (?,?)", MEMBER_A, MEMBER_B)) {
+            assertThat(stream.count()).isEqualTo(2);
+        }
+        assertThat(registry.get(ROWS).tag("method", "streamWhere").summary().totalAmount()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,81 @@
+package hello.jdbc.metrics;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.service.MemberServiceV4;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = "hello.jdbc.metrics.enabled=true")
+class MetricsConfigTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private MemberServiceV4 memberService;
+    @Autowired
+    private MeterRegistry registry;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        private final DataSource dataSource;
+
+        public TestConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepositoryV5() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        MemberServiceV4 memberServiceV4(MemberRepository memberRepository) {
+            return new MemberServiceV4(memberRepository);
+        }
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+
+    @Test
+    @DisplayName("리포지토리 빈은 데코레이터로 감싸지고, 이체와 트랜잭션 시간이 기록된다")
+    void metrics() {
+        assertThat(memberRepository).isInstanceOf(MeteredMemberRepository.class);
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000);
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_B, 100000))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(registry.get(TransferMetricsAspect.TRANSFER)
+                .tags("method", "accountTransfer", "exception", "none").timer().count()).isEqualTo(1);
+        assertThat(registry.get(TransferMetricsAspect.TRANSFER)
+                .tags("method", "accountTransfer", "exception", "IllegalStateException").timer().count()).isEqualTo(1);
+        assertThat(registry.get(TransactionMetricsListener.TRANSACTION).tag("outcome", "commit").timer().count()).isEqualTo(1);
+        assertThat(registry.get(TransactionMetricsListener.TRANSACTION).tag("outcome", "rollback").timer().count()).isEqualTo(1);
+        assertThat(registry.get(MeteredMemberRepository.CALLS).tag("method", "withdrawIfSufficient").timer().count()).isEqualTo(2);
+        //트랜잭션 커넥션은 트랜잭션 프록시를 호출한 서비스 메서드가 caller
+        assertThat(registry.get(PoolMetricsDataSource.HOLD).tag("caller", "MemberServiceV4.accountTransfer").timer().count()).isEqualTo(2);
+    }
+}
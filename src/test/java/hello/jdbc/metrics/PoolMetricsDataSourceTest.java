@@ -0,0 +1,114 @@
+package hello.jdbc.metrics;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.SchemaInitializer;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV2;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.service.MemberServiceV2;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PoolMetricsDataSourceTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    private HikariDataSource hikari;
+    private SimpleMeterRegistry registry;
+    private PoolMetricsDataSource dataSource;
+
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initializeDefault();
+    }
+
+    @BeforeEach
+    void before() {
+        hikari = new HikariDataSource();
+        hikari.setJdbcUrl(URL);
+        hikari.setUsername(USERNAME);
+        hikari.setPassword(PASSWORD);
+        hikari.setMaximumPoolSize(1);
+        hikari.setConnectionTimeout(250);
+        hikari.setPoolName("PoolMetricsTest");
+        registry = new SimpleMeterRegistry();
+        dataSource = new PoolMetricsDataSource(hikari, registry);
+    }
+
+    @AfterEach
+    void after() {
+        MemberRepositoryV5 repository = new MemberRepositoryV5(dataSource);
+        repository.delete(MEMBER_A);
+        repository.delete(MEMBER_B);
+        hikari.close();
+    }
+
+    @Test
+    @DisplayName("풀 상태와 대기 시간, 타임아웃을 기록한다")
+    void poolStats() throws Exception {
+        try (Connection con = dataSource.getConnection()) {
+            PoolMetricsDataSource.PoolStats stats = dataSource.stats();
+            assertThat(stats.getActive()).isEqualTo(1);
+            assertThat(stats.getTotal()).isEqualTo(1);
+            assertThat(registry.get(PoolMetricsDataSource.ACTIVE).gauge().value()).isEqualTo(1);
+
+            //풀 크기가 1 이므로 두번째 커넥션은 connectionTimeout 후 실패
+            assertThatThrownBy(dataSource::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+        }
+
+        PoolMetricsDataSource.PoolStats stats = dataSource.stats();
+        assertThat(stats.getActive()).isZero();
+        assertThat(stats.getIdle()).isEqualTo(1);
+        assertThat(stats.getAcquireCount()).isEqualTo(2);
+        assertThat(stats.getTimeoutCount()).isEqualTo(1);
+        assertThat(stats.getAcquireMaxMillis()).isGreaterThanOrEqualTo(200);
+    }
+
+    @Test
+    @DisplayName("사용자, 비밀번호를 지정한 getConnection 도 대기 시간과 보유 시간을 기록한다")
+    void credentials() throws SQLException {
+        //히카리는 getConnection(username, password) 를 지원하지 않으므로 DriverManagerDataSource 로 확인한다
+        PoolMetricsDataSource plain = new PoolMetricsDataSource(new DriverManagerDataSource(URL), registry);
+        plain.setCallerTracking(false);
+
+        Connection con = plain.getConnection(USERNAME, PASSWORD);
+        con.close();
+        con.close(); //두번 닫아도 한번만 기록
+
+        assertThat(plain.stats().getAcquireCount()).isEqualTo(1);
+        assertThat(plain.getHoldTimers().get("all").count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("커넥션 보유 시간을 커넥션을 얻은 서비스, 리포지토리 메서드 별로 기록한다")
+    void holdTimeByCaller() throws Exception {
+        MemberRepositoryV5 repository = new MemberRepositoryV5(dataSource);
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_B, 10000));
+
+        new MemberServiceV2(dataSource, new MemberRepositoryV2(dataSource))
+                .accountTransfer(MEMBER_A, MEMBER_B, 2000);
+
+        assertThat(dataSource.getHoldTimers()).containsKeys("MemberRepositoryV5.save", "MemberServiceV2.accountTransfer");
+        assertThat(registry.get(PoolMetricsDataSource.HOLD).tag("caller", "MemberRepositoryV5.save").timer().count()).isEqualTo(2);
+        assertThat(registry.get(PoolMetricsDataSource.HOLD).tag("caller", "MemberServiceV2.accountTransfer").timer().count()).isEqualTo(1);
+
+        dataSource.setCallerTracking(false);
+        repository.findById(MEMBER_A);
+        assertThat(dataSource.getHoldTimers()).containsKey("all");
+    }
+}
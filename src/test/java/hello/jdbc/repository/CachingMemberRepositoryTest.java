@@ -0,0 +1,112 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.connection.SchemaInitializer;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class CachingMemberRepositoryTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    private MemberRepositoryV5 delegate;
+    private TransactionTemplate txTemplate;
+    private CachingMemberRepository repository;
+
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initializeDefault();
+    }
+
+    @BeforeEach
+    void before() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        delegate = new MemberRepositoryV5(dataSource);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        repository = new CachingMemberRepository(delegate, 100, Duration.ofMinutes(1));
+        delegate.saveAll(List.of(new Member(MEMBER_A, 10000), new Member(MEMBER_B, 10000)));
+    }
+
+    @AfterEach
+    void after() {
+        delegate.deleteAll(List.of(MEMBER_A, MEMBER_B));
+    }
+
+    @Test
+    void readThrough() {
+        repository.findById(MEMBER_A);
+        Member findMember = repository.findById(MEMBER_A);
+
+        assertThat(findMember.getMoney()).isEqualTo(10000);
+        assertThat(repository.stats().getMissCount()).isEqualTo(1);
+        assertThat(repository.stats().getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void commitInvalidates() {
+        repository.findById(MEMBER_A);
+
+        txTemplate.executeWithoutResult(status -> {
+            repository.update(MEMBER_A, 5000);
+            //트랜잭션 안에서 자신이 변경한 값은 DB 에서 조회
+            assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(5000);
+        });
+
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(5000);
+    }
+
+    @Test
+    void rollbackDiscards() {
+        repository.findById(MEMBER_A);
+
+        txTemplate.executeWithoutResult(status -> {
+            repository.update(MEMBER_A, 5000);
+            status.setRollbackOnly();
+        });
+
+        //롤백되었으므로 캐시에 있던 커밋된 값이 그대로 유효하다
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(repository.stats().getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void cachedMemberIsCopied() {
+        repository.findById(MEMBER_A).setMoney(0);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void eviction() {
+        repository = new CachingMemberRepository(delegate, 1, Duration.ofMinutes(1));
+        repository.findById(MEMBER_A);
+        repository.findById(MEMBER_B); //maxSize 를 넘어서 memberA 제거
+
+        assertThat(repository.stats().getEvictionCount()).isEqualTo(1);
+        assertThat(repository.stats().getSize()).isEqualTo(1);
+    }
+
+    @Test
+    void expire() throws InterruptedException {
+        repository = new CachingMemberRepository(delegate, 100, Duration.ofMillis(50));
+        repository.findById(MEMBER_A);
+        Thread.sleep(100);
+        repository.findById(MEMBER_A);
+
+        assertThat(repository.stats().getExpiredCount()).isEqualTo(1);
+        assertThat(repository.stats().getMissCount()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,71 @@
+package hello.jdbc.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LockTimeoutTest {
+
+    static final String LOCK_TIMEOUT_URL = "jdbc:h2:mem:locktimeout;DB_CLOSE_DELAY=-1";
+
+    @Test
+    @DisplayName("LOCK_TIMEOUT 을 되돌리지 못해도 조회 예외를 그대로 던지고, 커넥션은 버린다")
+    void restoreFailureKeepsQueryFailure() throws SQLException {
+        Connection physical = DriverManager.getConnection(LOCK_TIMEOUT_URL, USERNAME, PASSWORD);
+        Connection con = failing(physical, true);
+
+        assertThatThrownBy(() -> LockTimeout.query(con, null, Duration.ofMillis(100),
+                "select 1", new Object[0], (rs, rowNum) -> rs.getInt(1)))
+                .isInstanceOfSatisfying(SQLException.class, e -> {
+                    assertThat(e.getErrorCode()).isEqualTo(50200);
+                    assertThat(e.getSuppressed()).extracting(Throwable::getMessage).containsExactly("restore failed");
+                });
+        assertThat(physical.isClosed()).isTrue();
+    }
+
+    @Test
+    @DisplayName("조회가 성공했는데 되돌리지 못하면 되돌리기 실패를 던진다")
+    void restoreFailureAfterSuccess() throws SQLException {
+        Connection physical = DriverManager.getConnection(LOCK_TIMEOUT_URL, USERNAME, PASSWORD);
+        Connection con = failing(physical, false);
+
+        assertThatThrownBy(() -> LockTimeout.query(con, null, Duration.ofMillis(100),
+                "select 1", new Object[0], (rs, rowNum) -> rs.getInt(1)))
+                .isInstanceOf(SQLException.class)
+                .hasMessage("restore failed");
+        assertThat(physical.isClosed()).isTrue();
+    }
+
+    /**
+     * 세번째 createStatement(조회 후 set lock_timeout) 를 실패시킨다
+     * @param lockTimeout true 면 조회(prepareStatement)도 락 타임아웃으로 실패시킨다
+     */
+    private static Connection failing(Connection physical, boolean lockTimeout) {
+        AtomicInteger statements = new AtomicInteger();
+        return (Connection) Proxy.newProxyInstance(LockTimeoutTest.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("createStatement") && statements.incrementAndGet() == 3) {
+                        throw new SQLException("restore failed");
+                    }
+                    if (method.getName().equals("prepareStatement") && lockTimeout) {
+                        throw new SQLException("Timeout trying to lock table", "HYT00", 50200);
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
@@ -0,0 +1,131 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.connection.SchemaInitializer;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 키셋 페이지 vs OFFSET 페이지 - 1 페이지와 10,000 페이지의 조회 시간 비교
+ * OFFSET 은 앞의 row 를 모두 읽고 버리므로 깊은 페이지일수록 느려지고, 키셋은 일정하다
+ * 시간은 공유 CI 에서 흔들리므로 로그로만 남기고, 검증은 실행 계획(EXPLAIN ANALYZE 의 scanCount)으로 한다
+ * 지연시간 비교는 JMH 벤치마크 MemberPageBenchmark 에서 한다 (./gradlew jmh -PjmhIncludes=MemberPageBenchmark)
+ * 실행: ./gradlew benchmarkTest
+ */
+@Slf4j
+@Tag("benchmark")
+class MemberPageBenchmarkTest {
+
+    private static final int PAGE_SIZE = 10;
+    private static final int PAGES = 10_000;
+    private static final int ITERATIONS = 200;
+
+    private MemberRepositoryV5 repository;
+    private JdbcTemplate template;
+
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initializeDefault();
+    }
+
+    @BeforeEach
+    void before() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        repository = new MemberRepositoryV5(dataSource);
+        template = new JdbcTemplate(dataSource);
+
+        List<Member> members = new ArrayList<>(PAGE_SIZE * PAGES);
+        for (int i = 0; i < PAGE_SIZE * PAGES; i++) {
+            members.add(new Member(memberId(i), i));
+        }
+        repository.saveAll(members);
+    }
+
+    @AfterEach
+    void after() {
+        template.update("delete from member where member_id like 'pg%'");
+    }
+
+    @Test
+    void keysetVsOffset() {
+        //10,000 페이지의 시작 키 = 바로 앞 페이지의 마지막 회원
+        String deepKey = memberId(PAGE_SIZE * (PAGES - 1) - 1);
+
+        long keysetFirst = measure(() -> repository.findPage("pg", PAGE_SIZE));
+        long keysetDeep = measure(() -> repository.findPage(deepKey, PAGE_SIZE));
+        long offsetFirst = measure(() -> offsetPage(0));
+        long offsetDeep = measure(() -> offsetPage(PAGE_SIZE * (PAGES - 1)));
+
+        log.info("keyset  page 1={}us, page {}={}us", keysetFirst / 1000, PAGES, keysetDeep / 1000);
+        log.info("offset  page 1={}us, page {}={}us", offsetFirst / 1000, PAGES, offsetDeep / 1000);
+
+        assertThat(repository.findPage(deepKey, PAGE_SIZE).getMembers())
+                .extracting(Member::getMemberId)
+                .containsExactlyElementsOf(offsetPage(PAGE_SIZE * (PAGES - 1)).stream().map(Member::getMemberId).toList());
+
+        //키셋은 PK 인덱스에서 시작 키를 찾아 한 페이지만 읽고, OFFSET 은 앞의 페이지를 모두 읽고 버린다
+        String keysetPlan = explainAnalyze("select * from member where member_id > '" + deepKey + "' order by member_id limit " + (PAGE_SIZE + 1));
+        String offsetPlan = explainAnalyze("select * from member where member_id like 'pg%' order by member_id limit " + PAGE_SIZE
+                + " offset " + PAGE_SIZE * (PAGES - 1));
+        log.info("keyset plan={}", keysetPlan);
+        log.info("offset plan={}", offsetPlan);
+
+        assertThat(keysetPlan).containsIgnoringCase("PRIMARY_KEY");
+        assertThat(scanCount(keysetPlan)).isLessThanOrEqualTo(PAGE_SIZE * 10);
+        assertThat(scanCount(offsetPlan)).isGreaterThanOrEqualTo(PAGE_SIZE * (PAGES - 1));
+    }
+
+    private String explainAnalyze(String sql) {
+        return template.queryForObject("explain analyze " + sql, String.class);
+    }
+
+    /**
+     * H2 EXPLAIN ANALYZE 는 테이블마다 읽은 row 수를 scanCount 로 보여준다
+     */
+    private static long scanCount(String plan) {
+        Matcher matcher = Pattern.compile("scanCount: (\\d+)").matcher(plan);
+        long total = 0;
+        while (matcher.find()) {
+            total += Long.parseLong(matcher.group(1));
+        }
+        return total;
+    }
+
+    private List<Member> offsetPage(int offset) {
+        String sql = "select * from member where member_id like 'pg%' order by member_id limit ? offset ?";
+        return template.query(sql, (rs, rowNum) -> new Member(rs.getString("member_id"), rs.getInt("money")), PAGE_SIZE, offset);
+    }
+
+    /**
+     * 워밍업 후 평균 시간(ns)
+     */
+    private long measure(Supplier<?> query) {
+        for (int i = 0; i < ITERATIONS; i++) {
+            query.get();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            query.get();
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    private static String memberId(int i) {
+        return String.format("pg%06d", i); //member_id 는 varchar(10)
+    }
+}
@@ -1,7 +1,9 @@
 package hello.jdbc.repository;
 
+import hello.jdbc.connection.SchemaInitializer;
 import hello.jdbc.domain.Member;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.sql.SQLException;
@@ -13,6 +15,11 @@ class MemberRepositoryV0Test {
 
     MemberRepositoryV0 repository = new MemberRepositoryV0();
 
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initializeDefault();
+    }
+
     @Test
     void crud() throws SQLException{
         //save
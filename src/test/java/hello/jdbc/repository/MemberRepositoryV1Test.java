@@ -2,8 +2,10 @@ package hello.jdbc.repository;
 
 import com.zaxxer.hikari.HikariDataSource;
 import hello.jdbc.connection.ConnectionConst;
+import hello.jdbc.connection.SchemaInitializer;
 import hello.jdbc.domain.Member;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
@@ -20,6 +22,11 @@ class MemberRepositoryV1Test {
 
     MemberRepositoryV1 repository; //먼저 선언후, @BeforeEach 에서 초기화
 
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initializeDefault();
+    }
+
     @BeforeEach
     void beforeEach() throws Exception {
         //기본 DriverManager - 항상 새로운 커넥션 획득
@@ -0,0 +1,205 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.connection.SchemaInitializer;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class MemberRepositoryV5Test {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+    public static final String MEMBER_C = "memberC";
+
+    private DriverManagerDataSource dataSource;
+    private MemberRepositoryV5 repository;
+
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initializeDefault();
+    }
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        repository = new MemberRepositoryV5(dataSource);
+        repository.setBatchSize(2); //3건을 2건 + 1건 두번의 executeBatch 로 나누어 보낸다
+    }
+
+    @AfterEach
+    void after() {
+        repository.deleteAll(List.of(MEMBER_A, MEMBER_B, MEMBER_C));
+    }
+
+    @Test
+    void batch() {
+        //saveAll
+        List<Member> members = List.of(new Member(MEMBER_A, 10000), new Member(MEMBER_B, 20000), new Member(MEMBER_C, 30000));
+        assertThat(repository.saveAll(members)).containsExactly(1, 1, 1);
+        assertThat(repository.findById(MEMBER_C).getMoney()).isEqualTo(30000);
+
+        //updateAll: 없는 회원은 0
+        List<Member> updates = List.of(new Member(MEMBER_A, 1000), new Member("none", 2000), new Member(MEMBER_C, 3000));
+        assertThat(repository.updateAll(updates)).containsExactly(1, 0, 1);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(1000);
+
+        //deleteAll
+        assertThat(repository.deleteAll(List.of(MEMBER_A, MEMBER_B))).containsExactly(1, 1);
+        assertThatThrownBy(() -> repository.findById(MEMBER_A))
+                .isInstanceOf(EmptyResultDataAccessException.class);
+    }
+
+    @Test
+    void batchDuplicateKey() {
+        List<Member> members = List.of(new Member(MEMBER_A, 10000), new Member(MEMBER_A, 20000));
+        //JdbcTemplate 이 BatchUpdateException 을 스프링 예외로 변환한다
+        assertThatThrownBy(() -> repository.saveAll(members))
+                .isInstanceOf(DuplicateKeyException.class);
+    }
+
+    @Test
+    void findAllById() {
+        repository.saveAll(List.of(new Member(MEMBER_C, 30000), new Member(MEMBER_A, 10000), new Member(MEMBER_B, 20000)));
+
+        //없는 회원은 빠지고, member_id 순으로 조회된다
+        List<Member> members = repository.findAllById(List.of(MEMBER_B, "none", MEMBER_C, MEMBER_A));
+        assertThat(members).extracting(Member::getMemberId).containsExactly(MEMBER_A, MEMBER_B, MEMBER_C);
+    }
+
+    @Test
+    void findAllByIdForUpdate() {
+        repository.saveAll(List.of(new Member(MEMBER_A, 10000), new Member(MEMBER_B, 20000)));
+        repository.setLockTimeout(Duration.ofSeconds(1));
+        TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        tx.executeWithoutResult(status -> {
+            //인자 순서와 관계없이 member_id 순으로 락을 건다
+            List<Member> locked = repository.findAllByIdForUpdate(List.of(MEMBER_B, MEMBER_A));
+            assertThat(locked).extracting(Member::getMemberId).containsExactly(MEMBER_A, MEMBER_B);
+
+            //다른 트랜잭션은 락을 기다리다 실패한다
+            CompletableFuture<Member> other = CompletableFuture.supplyAsync(
+                    () -> tx.execute(s -> repository.findByIdForUpdate(MEMBER_A)));
+            assertThatThrownBy(other::join).hasCauseInstanceOf(TransientDataAccessException.class);
+        });
+
+        //커밋 후에는 다시 락을 걸수 있다
+        Member member = tx.execute(status -> repository.findByIdForUpdate(MEMBER_A));
+        assertThat(member.getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void lockTimeoutLongerThanDefault() {
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.setLockTimeout(Duration.ofMillis(2500)); //H2 기본 LOCK_TIMEOUT(1초) 보다 길다
+        TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        tx.executeWithoutResult(status -> {
+            JdbcTemplate session = new JdbcTemplate(dataSource); //트랜잭션 커넥션에서 실행된다
+            Long before = session.queryForObject("call lock_timeout()", Long.class);
+            repository.findByIdForUpdate(MEMBER_A);
+            //조회가 끝나면 세션의 LOCK_TIMEOUT 은 원래 값으로 돌아온다
+            assertThat(session.queryForObject("call lock_timeout()", Long.class)).isEqualTo(before);
+
+            long start = System.nanoTime();
+            CompletableFuture<Member> other = CompletableFuture.supplyAsync(
+                    () -> tx.execute(s -> repository.findByIdForUpdate(MEMBER_A)));
+            assertThatThrownBy(other::join).hasCauseInstanceOf(TransientDataAccessException.class);
+            //설정한 시간 만큼 기다린 뒤에 실패한다
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(2000));
+        });
+    }
+
+    @Test
+    void addMoney() {
+        repository.save(new Member(MEMBER_A, 10000));
+
+        assertThat(repository.addMoney(MEMBER_A, 2000)).isTrue();
+        assertThat(repository.addMoney("none", 2000)).isFalse();
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(12000);
+
+        //잔액이 부족하면 차감하지 않는다
+        assertThat(repository.withdrawIfSufficient(MEMBER_A, 12000)).isTrue();
+        assertThat(repository.withdrawIfSufficient(MEMBER_A, 1)).isFalse();
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(0);
+    }
+
+    @Test
+    void updateWithVersion() {
+        repository.save(new Member(MEMBER_A, 10000));
+        Member first = repository.findById(MEMBER_A);
+        Member second = repository.findById(MEMBER_A);
+
+        //먼저 변경한 쪽은 성공하고 version 이 증가한다
+        first.setMoney(5000);
+        repository.updateWithVersion(first);
+        assertThat(first.getVersion()).isEqualTo(second.getVersion() + 1);
+
+        //같은 version 을 읽었던 쪽은 실패한다
+        second.setMoney(7000);
+        assertThatThrownBy(() -> repository.updateWithVersion(second))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+        assertThatThrownBy(() -> repository.updateAllWithVersion(List.of(second)))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(5000);
+
+        //잔액을 바꾸는 다른 메서드도 version 을 증가시킨다
+        repository.addMoney(MEMBER_A, 1000);
+        assertThatThrownBy(() -> repository.updateWithVersion(first))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+    }
+
+    @Test
+    void stream() {
+        repository.setFetchSize(1);
+        repository.saveAll(List.of(new Member(MEMBER_A, 10000), new Member(MEMBER_B, 20000), new Member(MEMBER_C, 30000)));
+
+        try (Stream<Member> stream = repository.streamWhere("member_id in (?,?,?)", MEMBER_A, MEMBER_B, MEMBER_C)) {
+            assertThat(stream.mapToInt(Member::getMoney).sum()).isEqualTo(60000);
+        }
+        try (Stream<Member> stream = repository.streamWhere("money >= ? and member_id like ?", 20000, "member%")) {
+            assertThat(stream.map(Member::getMemberId)).contains(MEMBER_B, MEMBER_C).doesNotContain(MEMBER_A);
+        }
+        try (Stream<Member> stream = repository.streamAll()) {
+            assertThat(stream.filter(member -> member.getMemberId().equals(MEMBER_A)).count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void findPage() {
+        repository.saveAll(List.of(new Member(MEMBER_A, 10000), new Member(MEMBER_B, 20000), new Member(MEMBER_C, 30000)));
+
+        //memberA 다음부터 1건씩
+        MemberPage page = repository.findPage(MEMBER_A, 1);
+        assertThat(page.getMembers()).extracting(Member::getMemberId).containsExactly(MEMBER_B);
+        assertThat(page.hasNext()).isTrue();
+
+        MemberPage next = repository.findPage(page.getNextKey(), 1);
+        assertThat(next.getMembers()).extracting(Member::getMemberId).containsExactly(MEMBER_C);
+
+        //역방향은 member_id 내림차순
+        MemberPage before = repository.findPageBefore(MEMBER_C, 2);
+        assertThat(before.getMembers()).extracting(Member::getMemberId).containsExactly(MEMBER_B, MEMBER_A);
+    }
+}
@@ -0,0 +1,185 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.connection.SchemaInitializer;
+import hello.jdbc.domain.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShardedMemberRepositoryTest {
+
+    public static final String MEMBER_A = "shardA";
+    public static final String MEMBER_B = "shardB";
+
+    private DriverManagerDataSource dataSource;
+    private ShardedMemberRepository repository;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initializeDefault();
+    }
+
+    @BeforeEach
+    void before() {
+        dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        repository = new ShardedMemberRepository(new MemberRepositoryV5(dataSource), dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_B, 0));
+    }
+
+    @AfterEach
+    void after() {
+        repository.deleteAll(List.of(MEMBER_A, MEMBER_B));
+    }
+
+    @Test
+    @DisplayName("샤딩해도 잔액은 그대로, 해제하면 member row 로 돌아온다")
+    void reshard() {
+        repository.reshard(MEMBER_A, 4);
+        assertThat(repository.getSlotCount(MEMBER_A)).isEqualTo(4);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+
+        repository.reshard(MEMBER_A, 8);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+
+        repository.reshard(MEMBER_A, 1);
+        assertThat(repository.getSlotCount(MEMBER_A)).isZero();
+        assertThat(new MemberRepositoryV5(dataSource).findById(MEMBER_A).getMoney()).isEqualTo(10000);
+
+        assertThatThrownBy(() -> repository.reshard("none", 4))
+                .isInstanceOf(NoSuchElementException.class);
+        assertThatThrownBy(() -> repository.reshard(MEMBER_A, ShardedMemberRepository.MAX_SLOTS + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("입금은 슬롯에, 출금은 한 슬롯 또는 여러 슬롯에서 빌려온다")
+    void addAndWithdraw() {
+        repository.reshard(MEMBER_A, 4); //2500 씩
+        long version = repository.findById(MEMBER_A).getVersion();
+
+        assertThat(repository.addMoney(MEMBER_A, 1000)).isTrue();
+        assertThat(repository.findById(MEMBER_A).getVersion()).isGreaterThan(version);
+
+        assertThat(repository.withdrawIfSufficient(MEMBER_A, 1000)).isTrue(); //한 슬롯에서
+        assertThat(repository.withdrawIfSufficient(MEMBER_A, 6000)).isTrue(); //여러 슬롯에서 빌려온다
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(4000);
+
+        assertThat(repository.withdrawIfSufficient(MEMBER_A, 4001)).isFalse();
+        assertThat(repository.withdrawIfSufficient("none", 1)).isFalse();
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(4000);
+    }
+
+    @Test
+    @DisplayName("동시 입금 - 갱신 손실이 없다")
+    void concurrentAddMoney() {
+        repository.reshard(MEMBER_B, 8);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 200; i++) {
+                executor.execute(() -> repository.addMoney(MEMBER_B, 10));
+            }
+        }
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(2000);
+    }
+
+    @Test
+    @DisplayName("트랜잭션 밖의 동시 출금 - 여러 슬롯에서 빌려와도 잔액이 음수가 되지 않는다")
+    void concurrentWithdrawOutsideTransaction() {
+        repository.reshard(MEMBER_A, 4); //2500 씩, 한 슬롯으로는 3000 을 낼수 없다
+        AtomicInteger succeeded = new AtomicInteger();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 8; i++) {
+                executor.execute(() -> {
+                    if (repository.withdrawIfSufficient(MEMBER_A, 3000)) {
+                        succeeded.incrementAndGet();
+                    }
+                });
+            }
+        }
+
+        assertThat(succeeded.get()).isEqualTo(3);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(1000);
+        assertThat(new JdbcTemplate(dataSource).queryForObject(
+                "select count(*) from member_balance_slot where member_id = ? and money < 0", Integer.class, MEMBER_A)).isZero();
+    }
+
+    @Test
+    @DisplayName("덮어쓰기 - 읽은 후 슬롯에 입금이 있으면 낙관적 락 실패")
+    void updateWithVersion() {
+        repository.reshard(MEMBER_A, 4);
+        Member member = repository.findById(MEMBER_A);
+        member.setMoney(5000);
+        transactionTemplate.executeWithoutResult(status -> repository.updateWithVersion(member));
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(5000);
+        assertThat(repository.findById(MEMBER_A).getVersion()).isEqualTo(member.getVersion());
+
+        Member stale = repository.findById(MEMBER_A);
+        repository.addMoney(MEMBER_A, 100);
+        stale.setMoney(0);
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> repository.updateAllWithVersion(List.of(stale))))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(5100);
+    }
+
+    @Test
+    @DisplayName("여러건 조회, for update 조회도 슬롯을 합산한다")
+    void findAll() {
+        repository.reshard(MEMBER_A, 4);
+        repository.addMoney(MEMBER_A, 1);
+
+        assertThat(repository.findAllById(List.of(MEMBER_A, MEMBER_B)))
+                .extracting(Member::getMoney).containsExactly(10001, 0);
+        List<Member> locked = transactionTemplate.execute(status -> repository.findAllByIdForUpdate(List.of(MEMBER_B, MEMBER_A)));
+        assertThat(locked).extracting(Member::getMoney).containsExactly(10001, 0);
+        try (var stream = repository.streamWhere("member_id = ?", MEMBER_A)) {
+            assertThat(stream.findFirst().orElseThrow().getMoney()).isEqualTo(10001);
+        }
+    }
+
+    @Test
+    @DisplayName("입금으로 슬롯을 잡은 트랜잭션이 member row 를 잠가도 빌려오는 출금과 데드락이 생기지 않는다")
+    void slotThenMemberRow() throws Exception {
+        repository.reshard(MEMBER_A, 2); //5000 씩
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Boolean> withdraw = transactionTemplate.execute(status -> {
+                repository.addMoney(MEMBER_A, 100); //슬롯 하나를 잠근다 (슬롯 -> member row 순서)
+                //한 슬롯으로는 8000 을 낼수 없으므로 member row -> 슬롯 순서로 잠근다
+                Future<Boolean> borrow = executor.submit(() -> repository.withdrawIfSufficient(MEMBER_A, 8000));
+                sleep(20);
+                assertThat(repository.findByIdForUpdate(MEMBER_A).getMoney()).isEqualTo(10100);
+                return borrow;
+            });
+            assertThat(withdraw.get(5, TimeUnit.SECONDS)).isTrue();
+        }
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(2100);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package hello.jdbc.retry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static hello.jdbc.retry.RetryPolicy.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetryPolicyTest {
+
+    private SimpleMeterRegistry registry;
+    private RetryPolicy policy;
+
+    @BeforeEach
+    void beforeEach() {
+        registry = new SimpleMeterRegistry();
+        policy = new RetryPolicy(3, Duration.ofMillis(1), Duration.ofMillis(5),
+                retryOn(OptimisticLockingFailureException.class), registry);
+    }
+
+    @Test
+    @DisplayName("재시도 대상 예외면 성공할때 까지 다시 실행한다")
+    void recovered() {
+        AtomicInteger calls = new AtomicInteger();
+        String result = policy.execute("test", () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new OptimisticLockingFailureException("stale");
+            }
+            return "ok";
+        });
+
+        assertThat(result).isEqualTo("ok");
+        assertThat(calls.get()).isEqualTo(3);
+        assertThat(registry.get(RETRIES).tag("name", "test").counter().count()).isEqualTo(2);
+        assertThat(registry.get(CALLS).tags("name", "test", "outcome", "recovered").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("최대 시도 횟수를 넘으면 마지막 예외를 던진다")
+    void exhausted() {
+        AtomicInteger calls = new AtomicInteger();
+        assertThatThrownBy(() -> policy.execute("test", () -> {
+            calls.incrementAndGet();
+            throw new OptimisticLockingFailureException("stale");
+        })).isInstanceOf(OptimisticLockingFailureException.class);
+
+        assertThat(calls.get()).isEqualTo(3);
+        assertThat(registry.get(CALLS).tags("name", "test", "outcome", "exhausted").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("재시도 대상이 아닌 예외는 바로 던진다")
+    void notRetryable() {
+        AtomicInteger calls = new AtomicInteger();
+        assertThatThrownBy(() -> policy.execute("test", () -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("잔액 부족");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("재시도 예산을 다 쓰면 더 재시도하지 않는다")
+    void budget() {
+        RetryBudget budget = new RetryBudget(0.0, 1); //적립 없이 재시도 1번만 가능
+        policy.setRetryBudget(budget);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> policy.execute("test", () -> {
+            calls.incrementAndGet();
+            throw new OptimisticLockingFailureException("stale");
+        })).isInstanceOf(OptimisticLockingFailureException.class);
+
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(budget.getTokens()).isZero();
+        assertThat(registry.get(CALLS).tags("name", "test", "outcome", "budget_exhausted").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("백오프는 지수적으로 커지고 maxBackoff 를 넘지 않는다")
+    void backoff() {
+        for (int attempt = 1; attempt <= 40; attempt++) {
+            long ceiling = Math.min(Duration.ofMillis(1).toNanos() << Math.min(attempt - 1, 30), Duration.ofMillis(5).toNanos());
+            assertThat(policy.backoffNanos(attempt)).isBetween(0L, ceiling);
+        }
+    }
+}
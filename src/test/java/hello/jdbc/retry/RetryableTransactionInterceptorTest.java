@@ -0,0 +1,138 @@
+package hello.jdbc.retry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static hello.jdbc.retry.RetryPolicy.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class RetryableTransactionInterceptorTest {
+
+    @Autowired
+    private FlakyService flakyService;
+    @Autowired
+    private MeterRegistry registry;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        FlakyService flakyService() {
+            return new FlakyService();
+        }
+    }
+
+    /**
+     * failures 번 실패한 후 성공한다. 시도마다 트랜잭션 안에서 실행되었는지 기록한다
+     */
+    static class FlakyService {
+        int failures;
+        final List<Object> transactions = new ArrayList<>();
+
+        @RetryableTransaction(maxAttempts = 3, initialBackoffMillis = 1, maxBackoffMillis = 5)
+        @Transactional
+        public String lockTimeout() {
+            attempt();
+            if (transactions.size() <= failures) {
+                throw new CannotAcquireLockException("lock timeout");
+            }
+            return "ok";
+        }
+
+        @RetryableTransaction(maxAttempts = 2, initialBackoffMillis = 1, maxBackoffMillis = 5)
+        @Transactional
+        public void h2LockTimeout() throws SQLException {
+            attempt();
+            throw new SQLException("Timeout trying to lock table", "HYT00", TransientFailures.H2_LOCK_TIMEOUT);
+        }
+
+        @RetryableTransaction
+        @Transactional
+        public void notTransient() {
+            attempt();
+            throw new IllegalStateException("잔액 부족");
+        }
+
+        private void attempt() {
+            transactions.add(TransactionSynchronizationManager.isActualTransactionActive()
+                    ? TransactionSynchronizationManager.getCurrentTransactionName() + "#" + transactions.size()
+                    : "none");
+        }
+    }
+
+    @BeforeEach
+    void beforeEach() {
+        flakyService.failures = 0;
+        flakyService.transactions.clear();
+    }
+
+    @Test
+    @DisplayName("일시적인 오류는 시도마다 새 트랜잭션으로 다시 실행한다")
+    void retry() {
+        assertThat(AopUtils.isAopProxy(flakyService)).isTrue();
+        flakyService.failures = 2;
+
+        assertThat(flakyService.lockTimeout()).isEqualTo("ok");
+        assertThat(flakyService.transactions).hasSize(3).doesNotContain("none");
+        assertThat(registry.get(CALLS).tags("name", "FlakyService.lockTimeout", "outcome", "recovered")
+                .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("최대 시도 횟수를 넘으면 마지막 예외를 그대로 던진다")
+    void exhausted() {
+        flakyService.failures = 5;
+
+        assertThatThrownBy(() -> flakyService.lockTimeout()).isInstanceOf(CannotAcquireLockException.class);
+        assertThat(flakyService.transactions).hasSize(3);
+    }
+
+    @Test
+    @DisplayName("H2 락 타임아웃 SQLException(50200) 도 재시도하고, 체크 예외 그대로 던진다")
+    void checkedException() {
+        assertThatThrownBy(() -> flakyService.h2LockTimeout()).isInstanceOf(SQLException.class);
+        assertThat(flakyService.transactions).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("비즈니스 예외는 재시도하지 않는다")
+    void notTransient() {
+        assertThatThrownBy(() -> flakyService.notTransient()).isInstanceOf(IllegalStateException.class);
+        assertThat(flakyService.transactions).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("바깥 RetryPolicy 가 재시도 중이면 한번만 실행한다 (시도 횟수가 곱해지지 않는다)")
+    void outerRetryScope() {
+        flakyService.failures = 3;
+        RetryPolicy outer = new RetryPolicy(2, Duration.ofMillis(1), Duration.ofMillis(5), TransientFailures::isTransient, registry);
+
+        assertThatThrownBy(() -> outer.execute("outer", () -> flakyService.lockTimeout()))
+                .isInstanceOf(CannotAcquireLockException.class);
+        assertThat(flakyService.transactions).hasSize(2).doesNotContain("none");
+        assertThat(RetryPolicy.inRetryScope()).isFalse();
+    }
+}
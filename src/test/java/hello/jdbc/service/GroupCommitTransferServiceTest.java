@@ -0,0 +1,126 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+@SpringBootTest
+class GroupCommitTransferServiceTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+    public static final String MEMBER_EX = "ex";
+
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private MemberServiceV4 memberService;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        private final DataSource dataSource;
+
+        public TestConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepositoryV5() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        MemberServiceV4 memberServiceV4() {
+            return new MemberServiceV4(memberRepositoryV5());
+        }
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_EX);
+    }
+
+    @Test
+    @DisplayName("동시에 들어온 이체를 모아서 커밋한다")
+    void groupCommit() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        try (GroupCommitTransferService groupCommit = new GroupCommitTransferService(memberService, 16, Duration.ofMillis(5))) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(i % 2 == 0
+                        ? groupCommit.accountTransfer(MEMBER_A, MEMBER_B, 10)
+                        : groupCommit.accountTransfer(MEMBER_B, MEMBER_A, 30));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000 + 50 * 20);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000 - 50 * 20);
+    }
+
+    @Test
+    @DisplayName("배치 중 실패한 이체만 실패한다")
+    void partialFailure() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 0));
+        memberRepository.save(new Member(MEMBER_EX, 0));
+
+        CompletableFuture<Void> ok1;
+        CompletableFuture<Void> insufficient;
+        CompletableFuture<Void> ex;
+        CompletableFuture<Void> ok2;
+        //maxWait 을 길게 주어서 네건이 한 배치로 모이도록 한다
+        try (GroupCommitTransferService groupCommit = new GroupCommitTransferService(memberService, 4, Duration.ofSeconds(1))) {
+            ok1 = groupCommit.accountTransfer(MEMBER_A, MEMBER_B, 1000);
+            insufficient = groupCommit.accountTransfer(MEMBER_B, MEMBER_A, 5000);
+            ex = groupCommit.accountTransfer(MEMBER_A, MEMBER_EX, 1000);
+            ok2 = groupCommit.accountTransfer(MEMBER_A, MEMBER_B, 2000);
+            CompletableFuture.allOf(ok1, insufficient, ex, ok2).exceptionally(e -> null).join();
+        }
+
+        assertThat(ok1).isCompleted().isNotCompletedExceptionally();
+        assertThat(ok2).isCompleted().isNotCompletedExceptionally();
+        assertThatThrownBy(insufficient::join).isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(ex::join).isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(7000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(3000);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isZero();
+    }
+
+    @Test
+    @DisplayName("종료 후에는 받지 않는다")
+    void closed() {
+        GroupCommitTransferService groupCommit = new GroupCommitTransferService(memberService, 4, Duration.ZERO);
+        groupCommit.close();
+        assertThatThrownBy(() -> groupCommit.accountTransfer(MEMBER_A, MEMBER_B, 1).join())
+                .hasCauseInstanceOf(RejectedExecutionException.class);
+    }
+}
@@ -0,0 +1,75 @@
+package hello.jdbc.service;
+
+import hello.jdbc.connection.SchemaInitializer;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.LedgerPosting;
+import hello.jdbc.repository.LedgerRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LedgerCompactorTest {
+
+    public static final String MEMBER_A = "compactA";
+    public static final String MEMBER_B = "compactB";
+
+    private DriverManagerDataSource dataSource;
+    private MemberRepositoryV5 memberRepository;
+    private LedgerRepository ledgerRepository;
+
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initializeDefault();
+    }
+
+    @BeforeEach
+    void before() {
+        dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        memberRepository = new MemberRepositoryV5(dataSource);
+        ledgerRepository = new LedgerRepository(dataSource);
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 0));
+    }
+
+    @AfterEach
+    void after() {
+        new JdbcTemplate(dataSource).update("delete from transfer_ledger where from_id in (?,?) or to_id in (?,?)",
+                MEMBER_A, MEMBER_B, MEMBER_A, MEMBER_B);
+        memberRepository.deleteAll(List.of(MEMBER_A, MEMBER_B));
+    }
+
+    @Test
+    @DisplayName("백그라운드에서 주기적으로 원장을 합친다")
+    void background() throws InterruptedException {
+        List<LedgerPosting> postings = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            postings.add(new LedgerPosting(MEMBER_A, MEMBER_B, 10));
+        }
+        ledgerRepository.append(postings);
+
+        try (LedgerCompactor compactor = new LedgerCompactor(ledgerRepository, new DataSourceTransactionManager(dataSource), 100)) {
+            compactor.start(Duration.ofMillis(10));
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (memberRepository.findById(MEMBER_B).getMoney() < 2500 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(7500);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(2500);
+        assertThat(ledgerRepository.balanceOf(MEMBER_B)).isEqualTo(2500);
+    }
+}
@@ -0,0 +1,121 @@
+package hello.jdbc.service;
+
+import hello.jdbc.connection.SchemaInitializer;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.LedgerEntry;
+import hello.jdbc.repository.LedgerRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LedgerTransferServiceTest {
+
+    public static final String MEMBER_A = "ledgerA";
+    public static final String MEMBER_B = "ledgerB";
+
+    private DriverManagerDataSource dataSource;
+    private MemberRepositoryV5 memberRepository;
+    private LedgerRepository ledgerRepository;
+    private LedgerTransferService transferService;
+    private DataSourceTransactionManager transactionManager;
+
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initializeDefault();
+    }
+
+    @BeforeEach
+    void before() {
+        dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        memberRepository = new MemberRepositoryV5(dataSource);
+        ledgerRepository = new LedgerRepository(dataSource);
+        transferService = new LedgerTransferService(ledgerRepository,
+                new StripedLockManager("ledger", 64, new SimpleMeterRegistry()), transactionManager);
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+    }
+
+    @AfterEach
+    void after() {
+        new JdbcTemplate(dataSource).update("delete from transfer_ledger where from_id in (?,?) or to_id in (?,?)",
+                MEMBER_A, MEMBER_B, MEMBER_A, MEMBER_B);
+        memberRepository.deleteAll(List.of(MEMBER_A, MEMBER_B));
+    }
+
+    @Test
+    @DisplayName("이체는 원장에만 쌓이고, 합치면 member.money 에 반영된다. 잔액은 합치기 전후가 같다")
+    void transferAndCompact() {
+        transferService.accountTransfer(MEMBER_A, MEMBER_B, 2000);
+        transferService.transferAll(List.of(new Transfer(MEMBER_B, MEMBER_A, 500), new Transfer(MEMBER_A, MEMBER_B, 100)));
+
+        assertThat(transferService.balanceOf(MEMBER_A)).isEqualTo(8400);
+        assertThat(transferService.balanceOf(MEMBER_B)).isEqualTo(11600);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000); //아직 합치지 않았다
+
+        try (LedgerCompactor compactor = new LedgerCompactor(ledgerRepository, transactionManager, 2)) {
+            assertThat(compactor.compactNow()).isGreaterThanOrEqualTo(3); //2건 + 1건, 두번의 트랜잭션
+        }
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(8400);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(11600);
+        assertThat(transferService.balanceOf(MEMBER_A)).isEqualTo(8400);
+
+        //원장은 이력으로 남는다
+        List<LedgerEntry> entries = ledgerRepository.findEntries(MEMBER_A, 10);
+        assertThat(entries).hasSize(3);
+        assertThat(entries).allMatch(LedgerEntry::isCompacted);
+        assertThat(entries.get(0).getMoney()).isEqualTo(100); //최근 것부터
+    }
+
+    @Test
+    @DisplayName("잔액 부족이나 없는 회원이면 아무것도 추가하지 않는다")
+    void rejected() {
+        assertThatThrownBy(() -> transferService.transferAll(List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 6000),
+                new Transfer(MEMBER_A, MEMBER_B, 6000))))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> transferService.accountTransfer(MEMBER_A, "none", 100))
+                .isInstanceOf(NoSuchElementException.class);
+
+        assertThat(ledgerRepository.findEntries(MEMBER_A, 10)).isEmpty();
+        assertThat(transferService.balanceOf(MEMBER_A)).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("동시 출금 - 잔액을 넘어서 출금되지 않는다")
+    void concurrentWithdraw() {
+        AtomicInteger succeeded = new AtomicInteger();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 150; i++) {
+                executor.execute(() -> {
+                    try {
+                        transferService.accountTransfer(MEMBER_A, MEMBER_B, 100);
+                        succeeded.incrementAndGet();
+                    } catch (IllegalStateException e) {
+                        //잔액 부족
+                    }
+                });
+            }
+        }
+        assertThat(succeeded.get()).isEqualTo(100);
+        assertThat(transferService.balanceOf(MEMBER_A)).isZero();
+        assertThat(transferService.balanceOf(MEMBER_B)).isEqualTo(20000);
+    }
+}
@@ -0,0 +1,165 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.retry.RetryPolicy;
+import hello.jdbc.retry.TransientFailures;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.CannotAcquireLockException;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 인기 계좌 - 여러 회원이 한 계좌로 동시에 이체
+ * 메모리 락으로 줄을 세우므로 낙관적 락 충돌 없이 모두 반영된다
+ */
+@Slf4j
+@SpringBootTest
+class LockingTransferServiceTest {
+
+    public static final String HOT = "hot";
+    public static final int SENDERS = 50;
+
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private LockingTransferService transferService;
+    @Autowired
+    private StripedLockManager lockManager;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        private final DataSource dataSource;
+
+        public TestConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepositoryV5() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        MemberServiceV4 memberServiceV4() {
+            return new MemberServiceV4(memberRepositoryV5());
+        }
+
+        @Bean
+        StripedLockManager stripedLockManager() {
+            return new StripedLockManager("transfer", 256, new SimpleMeterRegistry());
+        }
+
+        @Bean
+        LockingTransferService lockingTransferService(MemberServiceV4 memberServiceV4) {
+            return new LockingTransferService(memberServiceV4, stripedLockManager());
+        }
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(HOT);
+        for (int i = 0; i < SENDERS; i++) {
+            memberRepository.delete(senderId(i));
+        }
+    }
+
+    @Test
+    @DisplayName("인기 계좌로 동시 이체 - 모두 반영된다")
+    void hotAccount() throws Exception {
+        memberRepository.save(new Member(HOT, 0));
+        for (int i = 0; i < SENDERS; i++) {
+            memberRepository.save(new Member(senderId(i), 1000));
+        }
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<TransferResult>> futures = new ArrayList<>();
+            for (int i = 0; i < SENDERS; i++) {
+                String senderId = senderId(i);
+                futures.add(executor.submit(() -> transferService.transferAll(List.of(new Transfer(senderId, HOT, 100)))));
+            }
+            for (Future<TransferResult> future : futures) {
+                assertThat(future.get().getSucceeded()).isEqualTo(1);
+            }
+        }
+
+        assertThat(memberRepository.findById(HOT).getMoney()).isEqualTo(SENDERS * 100);
+        assertThat(memberRepository.findById(senderId(0)).getMoney()).isEqualTo(900);
+        assertThat(lockManager.getWaitingCount()).isZero();
+        log.info("lockManager={}", lockManager);
+    }
+
+    @Test
+    @DisplayName("재시도 백오프는 메모리 락을 푼 다음에 기다린다")
+    void backoffOutsideLocks() {
+        List<Transfer> transfers = List.of(new Transfer(senderId(0), HOT, 100));
+        AtomicInteger attempts = new AtomicInteger();
+        MemberServiceV4 failing = new MemberServiceV4(memberRepository) {
+            @Override
+            public TransferResult transferAll(List<Transfer> transfers) {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new CannotAcquireLockException("lock timeout");
+                }
+                return new TransferResult(transfers.size(), List.of());
+            }
+        };
+        StripedLockManager locks = new StripedLockManager("backoff", 16, new SimpleMeterRegistry());
+        List<Boolean> lockedDuringBackoff = new ArrayList<>();
+        RetryPolicy policy = new RetryPolicy(3, Duration.ZERO, Duration.ZERO, TransientFailures::isTransient) {
+            @Override
+            protected boolean backoff(int attempt) {
+                lockedDuringBackoff.add(isLockedByOtherThread(locks, senderId(0)));
+                return true;
+            }
+        };
+
+        TransferResult result = new LockingTransferService(failing, locks, policy).transferAll(transfers);
+
+        assertThat(result.getSucceeded()).isEqualTo(1);
+        assertThat(attempts.get()).isEqualTo(2);
+        assertThat(lockedDuringBackoff).containsExactly(false);
+    }
+
+    /**
+     * 다른 스레드에서 잡아본다 (같은 스레드는 ReentrantLock 이라 항상 잡힌다)
+     */
+    private static boolean isLockedByOtherThread(StripedLockManager locks, String memberId) {
+        locks.setAcquireTimeout(Duration.ofMillis(10));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            return executor.submit(() -> {
+                try {
+                    locks.withLocks(List.of(memberId), () -> {
+                    });
+                    return false;
+                } catch (CannotAcquireLockException e) {
+                    return true;
+                }
+            }).get();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String senderId(int i) {
+        return "ls" + i;
+    }
+}
@@ -1,11 +1,13 @@
 package hello.jdbc.service;
 
 import hello.jdbc.connection.ConnectionConst;
+import hello.jdbc.connection.SchemaInitializer;
 import hello.jdbc.domain.Member;
 import hello.jdbc.repository.MemberRepositoryV1;
 import net.bytebuddy.asm.MemberSubstitution;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -28,6 +30,11 @@ class MemberServiceV1Test {
     private MemberRepositoryV1 memberRepository;
     private MemberServiceV1 memberService;
     //각각의 테스트가 수행되기 전에 실행
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initializeDefault();
+    }
+
     @BeforeEach
     void before() {
         DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
@@ -1,12 +1,14 @@
 package hello.jdbc.service;
 
 import hello.jdbc.connection.ConnectionConst;
+import hello.jdbc.connection.SchemaInitializer;
 import hello.jdbc.domain.Member;
 import hello.jdbc.repository.MemberRepositoryV1;
 import hello.jdbc.repository.MemberRepositoryV2;
 import net.bytebuddy.asm.MemberSubstitution;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -27,6 +29,11 @@ class MemberServiceV2Test {
     private MemberRepositoryV2 memberRepository;
     private MemberServiceV2 memberService;
     //각각의 테스트가 수행되기 전에 실행
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initializeDefault();
+    }
+
     @BeforeEach
     void before() {
         DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
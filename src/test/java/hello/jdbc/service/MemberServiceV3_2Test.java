@@ -1,8 +1,10 @@
 package hello.jdbc.service;
 
+import hello.jdbc.connection.SchemaInitializer;
 import hello.jdbc.domain.Member;
 import hello.jdbc.repository.MemberRepositoryV3;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -28,6 +30,11 @@ class MemberServiceV3_2Test {
     private MemberRepositoryV3 memberRepository;
     private MemberServiceV3_2 memberService;
     //각각의 테스트가 수행되기 전에 실행
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initializeDefault();
+    }
+
     @BeforeEach
     void before() {
         DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
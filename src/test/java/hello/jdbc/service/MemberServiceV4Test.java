@@ -8,12 +8,18 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
 
 import javax.sql.DataSource;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -36,6 +42,9 @@ class MemberServiceV4Test {
     private MemberRepository memberRepository;
     @Autowired
     private MemberServiceV4 memberService;
+    @Autowired
+    @Qualifier("pessimisticMemberServiceV4")
+    private MemberServiceV4 pessimisticMemberService;
 
     //각각의 테스트가 실행되거 난 이후에 실행
     @AfterEach
@@ -62,10 +71,16 @@ class MemberServiceV4Test {
         }
 
         @Bean
+        @Primary
         MemberServiceV4 memberServiceV4() {
             return new MemberServiceV4(memberRepositoryV5());
         }
 
+        @Bean
+        MemberServiceV4 pessimisticMemberServiceV4() {
+            return new MemberServiceV4(memberRepositoryV5(), true);
+        }
+
     }
 
     @Test
@@ -112,4 +127,150 @@ class MemberServiceV4Test {
         assertThat(findMemberA.getMoney()).isEqualTo(10000);
         assertThat(findMemberB.getMoney()).isEqualTo(10000); //예외가 발생되서 던지기때문에 MemberB의 계좌는 변경되지 않는다.
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("잔액 부족")
+    void accountTransferInsufficient() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 1000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        //when
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000))
+                .isInstanceOf(IllegalStateException.class);
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(1000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("반대 방향 이체가 동시에 실행되어도 두 update 를 member_id 순으로 실행하므로 처리된다")
+    void accountTransferOppositeDirections() throws Exception {
+        transferBothWays(memberService);
+    }
+
+    @Test
+    @DisplayName("비관적 락 모드 - 반대 방향 이체가 동시에 실행되어도 데드락 없이 처리된다")
+    void accountTransferPessimisticLock() throws Exception {
+        transferBothWays(pessimisticMemberService);
+    }
+
+    @Test
+    @DisplayName("입금을 먼저 실행하는 방향(B->A)도 잔액이 부족하면 전체 롤백")
+    void accountTransferInsufficientReversed() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 1000));
+
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_B, MEMBER_A, 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(1000);
+    }
+
+    private void transferBothWays(MemberServiceV4 service) throws Exception {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            //when
+            Future<?> aToB = executor.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    service.accountTransfer(MEMBER_A, MEMBER_B, 10);
+                }
+            });
+            Future<?> bToA = executor.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    service.accountTransfer(MEMBER_B, MEMBER_A, 10);
+                }
+            });
+            aToB.get();
+            bToA.get();
+        } finally {
+            executor.shutdown();
+        }
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("여러건 이체")
+    void transferAll() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        //when
+        TransferResult result = memberService.transferAll(List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 2000),
+                new Transfer(MEMBER_B, MEMBER_A, 500)));
+        //then
+        assertThat(result.getSucceeded()).isEqualTo(2);
+        assertThat(result.hasFailures()).isFalse();
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(8500);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(11500);
+    }
+
+    @Test
+    @DisplayName("여러건 이체중 예외 발생 - 전체 롤백")
+    void transferAllEx() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+        //when
+        assertThatThrownBy(() -> memberService.transferAll(List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 2000),
+                new Transfer(MEMBER_A, MEMBER_EX, 2000))))
+                .isInstanceOf(IllegalStateException.class);
+        //then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("여러건 이체중 예외 발생 - 실패한 이체만 건너뜀")
+    void transferAllSkipFailed() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+        //when
+        TransferResult result = memberService.transferAll(List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 2000),
+                new Transfer(MEMBER_A, MEMBER_EX, 2000),
+                new Transfer(MEMBER_B, MEMBER_A, 1000)), true);
+        //then
+        assertThat(result.getSucceeded()).isEqualTo(2);
+        assertThat(result.getFailures()).extracting(TransferResult.Failure::getIndex).containsExactly(1);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(9000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(11000);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("여러건 이체중 잔액 부족 - accountTransfer 와 같이 거절한다")
+    void transferAllOverdraft() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        //when: 두번째 이체는 첫번째 이체 후의 잔액(2000)을 넘는다
+        assertThatThrownBy(() -> memberService.transferAll(List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 8000),
+                new Transfer(MEMBER_A, MEMBER_B, 3000))))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+
+        //skipFailed 이면 잔액이 부족한 이체만 건너뛴다
+        TransferResult result = memberService.transferAll(List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 8000),
+                new Transfer(MEMBER_A, MEMBER_B, 3000),
+                new Transfer(MEMBER_A, MEMBER_B, 2000)), true);
+        //then
+        assertThat(result.getSucceeded()).isEqualTo(2);
+        assertThat(result.getFailures()).extracting(TransferResult.Failure::getIndex).containsExactly(1);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(0);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(20000);
+    }
+}
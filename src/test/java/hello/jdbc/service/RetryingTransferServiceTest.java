@@ -0,0 +1,114 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.retry.RetryPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 낙관적 락 + 재시도
+ * 같은 계좌를 동시에 이체해도 갱신 손실이 없어야 한다
+ */
+@Slf4j
+@SpringBootTest
+class RetryingTransferServiceTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private RetryingTransferService transferService;
+    @Autowired
+    private SimpleMeterRegistry registry;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        private final DataSource dataSource;
+
+        public TestConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepositoryV5() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        MemberServiceV4 memberServiceV4() {
+            return new MemberServiceV4(memberRepositoryV5());
+        }
+
+        @Bean
+        SimpleMeterRegistry simpleMeterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        RetryingTransferService retryingTransferService(MemberServiceV4 memberServiceV4) {
+            RetryPolicy policy = new RetryPolicy(50, Duration.ofMillis(1), Duration.ofMillis(20),
+                    RetryPolicy.retryOn(OptimisticLockingFailureException.class), simpleMeterRegistry());
+            return new RetryingTransferService(memberServiceV4, policy);
+        }
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+
+    @Test
+    @DisplayName("동시 이체 - 충돌한 이체는 재시도되어 모두 반영된다")
+    void concurrentTransferAll() throws Exception {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        int threads = 4;
+        int transfersPerThread = 25;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < transfersPerThread; i++) {
+                        transferService.transferAll(List.of(new Transfer(MEMBER_A, MEMBER_B, 10)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        int total = threads * transfersPerThread * 10;
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000 - total);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000 + total);
+        log.info("retries={}", registry.find(RetryPolicy.RETRIES).counters().stream().mapToDouble(c -> c.count()).sum());
+    }
+}
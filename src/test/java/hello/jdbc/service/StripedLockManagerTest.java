@@ -0,0 +1,131 @@
+package hello.jdbc.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StripedLockManagerTest {
+
+    private SimpleMeterRegistry registry;
+    private StripedLockManager lockManager;
+
+    @BeforeEach
+    void before() {
+        registry = new SimpleMeterRegistry();
+        lockManager = new StripedLockManager("test", 100, registry);
+    }
+
+    @Test
+    @DisplayName("락 개수는 2의 거듭제곱으로 올림")
+    void stripeCount() {
+        assertThat(lockManager.getStripeCount()).isEqualTo(128);
+        assertThat(new StripedLockManager("one", 1, registry).getStripeCount()).isEqualTo(1);
+        assertThat(new StripedLockManager("sixtyFour", 64, registry).getStripeCount()).isEqualTo(64);
+        assertThatThrownBy(() -> new StripedLockManager("zero", 0, registry))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("반대 순서로 잠가도 데드락이 없다")
+    void canonicalOrder() throws Exception {
+        int loops = 10_000;
+        int[] counter = new int[1];
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> ab = executor.submit(() -> {
+                for (int i = 0; i < loops; i++) {
+                    lockManager.withLocks(List.of("memberA", "memberB"), () -> counter[0]++);
+                }
+            });
+            Future<?> ba = executor.submit(() -> {
+                for (int i = 0; i < loops; i++) {
+                    lockManager.withLocks(List.of("memberB", "memberA"), () -> counter[0]++);
+                }
+            });
+            ab.get(10, TimeUnit.SECONDS);
+            ba.get(10, TimeUnit.SECONDS);
+        }
+        assertThat(counter[0]).isEqualTo(loops * 2);
+        assertThat(lockManager.getWaitingCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("다른 스레드가 잡고 있으면 대기 시간과 경합 수를 기록하고, 시간이 지나면 예외")
+    void contention() throws Exception {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> holder = executor.submit(() -> lockManager.withLocks(List.of("memberA"), () -> {
+                locked.countDown();
+                await(release);
+            }));
+            locked.await();
+
+            lockManager.setAcquireTimeout(Duration.ofMillis(10));
+            assertThatThrownBy(() -> lockManager.withLocks(List.of("memberA"), () -> {
+            })).isInstanceOf(CannotAcquireLockException.class);
+            assertThat(registry.get(StripedLockManager.TIMEOUTS).tag("name", "test").counter().count()).isEqualTo(1);
+
+            lockManager.setAcquireTimeout(Duration.ZERO);
+            Future<?> waiter = executor.submit(() -> lockManager.withLocks(List.of("memberA"), () -> {
+            }));
+            Thread.sleep(50);
+            assertThat(lockManager.getWaitingCount()).isEqualTo(1);
+            assertThat(registry.get(StripedLockManager.WAITING).tag("name", "test").gauge().value()).isEqualTo(1);
+            release.countDown();
+            holder.get();
+            waiter.get();
+        }
+
+        assertThat(registry.get(StripedLockManager.ACQUIRED).tag("name", "test").tag("contended", "true").counter().count()).isEqualTo(1);
+        assertThat(registry.get(StripedLockManager.WAIT).tag("name", "test").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("같은 레지스트리를 쓰는 인스턴스는 name 태그로 메트릭을 나눈다")
+    void metersPerInstance() throws Exception {
+        StripedLockManager other = new StripedLockManager("other", 16, registry);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> holder = executor.submit(() -> other.withLocks(List.of("memberA"), () -> {
+                locked.countDown();
+                await(release);
+            }));
+            locked.await();
+            Future<?> waiter = executor.submit(() -> other.withLocks(List.of("memberA"), () -> {
+            }));
+            Thread.sleep(50);
+
+            //두번째 인스턴스의 대기 스레드는 자신의 게이지에만 보인다
+            assertThat(registry.get(StripedLockManager.WAITING).tag("name", "other").gauge().value()).isEqualTo(1);
+            assertThat(registry.get(StripedLockManager.WAITING).tag("name", "test").gauge().value()).isZero();
+            release.countDown();
+            holder.get();
+            waiter.get();
+        }
+
+        assertThat(registry.get(StripedLockManager.ACQUIRED).tag("name", "other").tag("contended", "false").counter().count()).isEqualTo(1);
+        assertThat(registry.get(StripedLockManager.ACQUIRED).tag("name", "test").tag("contended", "false").counter().count()).isZero();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
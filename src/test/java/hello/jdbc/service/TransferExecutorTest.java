@@ -0,0 +1,125 @@
+package hello.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class TransferExecutorTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private MemberServiceV4 memberService;
+    @Autowired
+    private DataSource dataSource;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        private final DataSource dataSource;
+
+        public TestConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepositoryV5() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        MemberServiceV4 memberServiceV4() {
+            return new MemberServiceV4(memberRepositoryV5());
+        }
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+
+    @Test
+    @DisplayName("커넥션 풀 크기보다 훨씬 많은 이체를 동시에 요청해도 모두 처리된다")
+    void manyTransfers() {
+        memberRepository.save(new Member(MEMBER_A, 100000));
+        memberRepository.save(new Member(MEMBER_B, 0));
+
+        try (TransferExecutor executor = new TransferExecutor(memberService, (HikariDataSource) dataSource)) {
+            assertThat(executor.getMaxConcurrency()).isEqualTo(((HikariDataSource) dataSource).getMaximumPoolSize());
+
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                futures.add(executor.accountTransfer(MEMBER_A, MEMBER_B, 10));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+            assertThat(executor.getActiveCount()).isZero();
+        }
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(90000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("동시 실행 수는 실행중에 바뀐 풀 크기를 따라간다")
+    void resizeWithPool() {
+        memberRepository.save(new Member(MEMBER_A, 100000));
+        memberRepository.save(new Member(MEMBER_B, 0));
+        AtomicInteger poolSize = new AtomicInteger(2);
+
+        try (TransferExecutor executor = new TransferExecutor(memberService, poolSize::get)) {
+            assertThat(executor.getMaxConcurrency()).isEqualTo(2);
+            poolSize.set(5);
+            assertThat(executor.getMaxConcurrency()).isEqualTo(5);
+
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(executor.accountTransfer(MEMBER_A, MEMBER_B, 10));
+                if (i == 50) {
+                    poolSize.set(1); //실행중에 줄인다
+                }
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+            assertThat(executor.getMaxConcurrency()).isEqualTo(1);
+            assertThat(executor.getActiveCount()).isZero();
+        }
+
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(1000);
+    }
+
+    @Test
+    @DisplayName("실패한 이체는 예외로 완료된다")
+    void failure() {
+        memberRepository.save(new Member(MEMBER_A, 0));
+        memberRepository.save(new Member(MEMBER_B, 0));
+
+        try (TransferExecutor executor = new TransferExecutor(memberService, 2)) {
+            CompletableFuture<Void> future = executor.accountTransfer(MEMBER_A, MEMBER_B, 10);
+            assertThatThrownBy(future::join)
+                    .isInstanceOf(CompletionException.class)
+                    .hasCauseInstanceOf(IllegalStateException.class);
+        }
+    }
+}
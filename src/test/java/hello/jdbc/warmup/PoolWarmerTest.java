@@ -0,0 +1,114 @@
+package hello.jdbc.warmup;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.SchemaInitializer;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import java.util.List;
+import java.util.Set;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class PoolWarmerTest {
+
+    static final String MEMBER_WARMUP = "warmup";
+
+    private HikariDataSource hikari;
+    private MemberRepositoryV5 repository;
+
+    @BeforeAll
+    static void schema() {
+        SchemaInitializer.initializeDefault();
+    }
+
+    @BeforeEach
+    void before() {
+        hikari = new HikariDataSource();
+        hikari.setJdbcUrl(URL);
+        hikari.setUsername(USERNAME);
+        hikari.setPassword(PASSWORD);
+        hikari.setMaximumPoolSize(5);
+        hikari.setMinimumIdle(3);
+        repository = new MemberRepositoryV5(hikari);
+        repository.delete(MEMBER_WARMUP);
+    }
+
+    @AfterEach
+    void after() {
+        repository.delete(MEMBER_WARMUP);
+        hikari.close();
+    }
+
+    @Test
+    @DisplayName("풀을 minimumIdle 까지 채우고 쿼리를 실행한다")
+    void warmUp() {
+        PoolWarmer warmer = new PoolWarmer(hikari, repository);
+        warmer.setIterations(10);
+
+        WarmUpReport report = warmer.warmUp();
+        log.info("report={}", report);
+
+        assertThat(report.getConnections()).isEqualTo(3);
+        assertThat(report.getQueries()).isEqualTo(20); //findById 10 + update 10
+        assertThat(hikari.getHikariPoolMXBean().getTotalConnections()).isGreaterThanOrEqualTo(3);
+        assertThat(hikari.getHikariPoolMXBean().getActiveConnections()).isZero();
+        assertThat(warmer.getLastReport()).isEqualTo(report);
+        assertThat(repository.findAllById(List.of(PoolWarmer.WARM_UP_MEMBER_ID))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("LazyConnectionDataSourceProxy 뒤에 있어도 히카리 풀을 채운다")
+    void fillBehindLazyProxy() {
+        LazyConnectionDataSourceProxy lazy = new LazyConnectionDataSourceProxy(hikari);
+        PoolWarmer warmer = new PoolWarmer(lazy, new MemberRepositoryV5(lazy));
+        warmer.setIterations(0);
+
+        WarmUpReport report = warmer.warmUp();
+
+        assertThat(report.getConnections()).isEqualTo(3);
+        assertThat(hikari.getHikariPoolMXBean().getTotalConnections()).isGreaterThanOrEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("같은 이름의 실제 회원이 있어도 데이터를 바꾸지 않는다")
+    void neverWrites() {
+        repository.save(new Member(MEMBER_WARMUP, 10000));
+        PoolWarmer warmer = new PoolWarmer(hikari, repository);
+        warmer.setIterations(4);
+
+        WarmUpReport report = warmer.warmUp();
+
+        assertThat(report.getQueries()).isEqualTo(8);
+        Member member = repository.findById(MEMBER_WARMUP);
+        assertThat(member.getMoney()).isEqualTo(10000);
+        assertThat(member.getVersion()).isZero();
+    }
+
+    @Test
+    @DisplayName("findById 만 실행할수 있다")
+    void findByIdOnly() {
+        PoolWarmer warmer = new PoolWarmer(hikari, repository);
+        warmer.setIterations(4);
+        warmer.setQueries(Set.of(PoolWarmer.FIND_BY_ID));
+
+        assertThat(warmer.warmUp().getQueries()).isEqualTo(4);
+    }
+
+    @Test
+    void unknownQuery() {
+        PoolWarmer warmer = new PoolWarmer(hikari, repository);
+        assertThatThrownBy(() -> warmer.setQueries(Set.of("delete")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}